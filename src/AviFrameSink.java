@@ -0,0 +1,225 @@
+/*
+ * File:       AviFrameSink.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Writes frames as Motion JPEG in an AVI file, which plays in most video players. Each frame is
+ *             encoded and written as soon as it arrives; the header is written up front with the counts and
+ *             sizes left blank, and they are filled in along with the index once the last frame is written,
+ *             so the file is written in a single pass. The sizes and offsets are 32 bits, so files are limited
+ *             to 4 GB; a frame that would go past that is refused, leaving a valid file of the frames before it.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class AviFrameSink implements FrameSink {
+    // flags from the AVI format: the file has an index, and each frame is a key frame
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    // bytes gathered before they are written to the file
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    // the largest file the 32 bit RIFF sizes and index offsets can describe; larger files would need the
+    // OpenDML extensions
+    private static final long MAX_FILE_SIZE = 0xffffffffL;
+
+    private ChannelOutput output;
+
+    // size of the frames
+    private int width, height;
+
+    // positions of the header fields that are only known at the end
+    private long riffSizePosition, totalFramesPosition, maxBytesPerSecondPosition, suggestedBufferSizePosition,
+                 streamLengthPosition, streamBufferSizePosition, moviSizePosition;
+
+    // position of the "movi" list type; index offsets are relative to it
+    private long moviPosition;
+
+    // offset and size of each frame for the index, two ints per frame
+    private int[] index;
+    private int frameCount;
+
+    // size of the largest frame, and frames per second
+    private int largestFrame, frameRate;
+
+    /**
+     * Constructor for AviFrameSink.
+     * @param file The file to write; replaced if it exists.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param frameRate Frames per second.
+     * @throws IOException If the file cannot be created.
+     */
+    public AviFrameSink(File file, int width, int height, int frameRate) throws IOException {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+
+        index = new int[2 * 256];
+
+        output = new ChannelOutput(FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE),
+                                   BUFFER_SIZE);
+
+        writeHeader();
+    }
+
+    /**
+     * Encodes a frame as a JPEG and writes it.
+     * @param frame The frame.
+     * @throws IOException If the frame cannot be written.
+     */
+    @Override
+    public void writeFrame(BufferedImage frame) throws IOException {
+        if (frame.getWidth() != width || frame.getHeight() != height)
+            throw new IOException("Frame is " + frame.getWidth() + "x" + frame.getHeight() + ", not "
+                                  + width + "x" + height);
+
+        byte[] jpeg = FrameExporter.encodeImage(frame);
+
+        // the file with this frame and the whole index must still fit; checked before writing anything, so the
+        // frames written so far still close into a valid file
+        long chunkSize = 8 + jpeg.length + jpeg.length % 2;
+        long indexSize = 8 + 16L * (frameCount + 1);
+        if (output.getPosition() + chunkSize + indexSize > MAX_FILE_SIZE)
+            throw new IOException("AVI files are limited to 4 GB; use y4m");
+
+        if (2 * frameCount == index.length)
+            index = Arrays.copyOf(index, 2 * index.length);
+
+        // the index points at the chunk header, relative to the "movi" list type
+        index[2 * frameCount] = (int) (output.getPosition() - moviPosition);
+        index[2 * frameCount + 1] = jpeg.length;
+        frameCount++;
+
+        largestFrame = Math.max(largestFrame, jpeg.length);
+
+        output.writeAscii("00dc");
+        output.writeInt(jpeg.length);
+        output.write(jpeg, 0, jpeg.length);
+
+        // chunks start on even offsets
+        if (jpeg.length % 2 != 0)
+            output.write(new byte[1], 0, 1);
+    }
+
+    /**
+     * Writes the index and fills in the header.
+     * @throws IOException If the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long moviEnd = output.getPosition();
+
+            output.writeAscii("idx1");
+            output.writeInt(16 * frameCount);
+            for (int i = 0; i < frameCount; i++) {
+                output.writeAscii("00dc");
+                output.writeInt(AVIIF_KEYFRAME);
+                output.writeInt(index[2 * i]);
+                output.writeInt(index[2 * i + 1]);
+            }
+
+            long fileEnd = output.getPosition();
+
+            output.patchInt(riffSizePosition, (int) (fileEnd - 8));
+            output.patchInt(moviSizePosition, (int) (moviEnd - moviPosition));
+            output.patchInt(totalFramesPosition, frameCount);
+            output.patchInt(streamLengthPosition, frameCount);
+            output.patchInt(maxBytesPerSecondPosition, largestFrame * frameRate);
+            output.patchInt(suggestedBufferSizePosition, largestFrame + 8);
+            output.patchInt(streamBufferSizePosition, largestFrame + 8);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Writes the RIFF header, the main and stream headers, and the start of the frame list.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeHeader() throws IOException {
+        output.writeAscii("RIFF");
+        riffSizePosition = output.getPosition();
+        output.writeInt(0);
+        output.writeAscii("AVI ");
+
+        // header list: the main header and one stream list; 4 + (8 + 56) + (12 + (8 + 56) + (8 + 40))
+        output.writeAscii("LIST");
+        output.writeInt(4 + 64 + 12 + 64 + 48);
+        output.writeAscii("hdrl");
+
+        // main header
+        output.writeAscii("avih");
+        output.writeInt(56);
+        output.writeInt(1000000 / frameRate);
+        maxBytesPerSecondPosition = output.getPosition();
+        output.writeInt(0);
+        output.writeInt(0);
+        output.writeInt(AVIF_HASINDEX);
+        totalFramesPosition = output.getPosition();
+        output.writeInt(0);
+        output.writeInt(0);
+        output.writeInt(1);
+        suggestedBufferSizePosition = output.getPosition();
+        output.writeInt(0);
+        output.writeInt(width);
+        output.writeInt(height);
+        for (int i = 0; i < 4; i++)
+            output.writeInt(0);
+
+        // stream list: one Motion JPEG video stream
+        output.writeAscii("LIST");
+        output.writeInt(4 + 64 + 48);
+        output.writeAscii("strl");
+
+        output.writeAscii("strh");
+        output.writeInt(56);
+        output.writeAscii("vids");
+        output.writeAscii("MJPG");
+        output.writeInt(0);
+        output.writeShort(0);
+        output.writeShort(0);
+        output.writeInt(0);
+        output.writeInt(1);
+        output.writeInt(frameRate);
+        output.writeInt(0);
+        streamLengthPosition = output.getPosition();
+        output.writeInt(0);
+        streamBufferSizePosition = output.getPosition();
+        output.writeInt(0);
+        output.writeInt(-1);
+        output.writeInt(0);
+        output.writeShort(0);
+        output.writeShort(0);
+        output.writeShort(width);
+        output.writeShort(height);
+
+        // stream format: a bitmap info header
+        output.writeAscii("strf");
+        output.writeInt(40);
+        output.writeInt(40);
+        output.writeInt(width);
+        output.writeInt(height);
+        output.writeShort(1);
+        output.writeShort(24);
+        output.writeAscii("MJPG");
+        output.writeInt(width * height * 3);
+        for (int i = 0; i < 4; i++)
+            output.writeInt(0);
+
+        // the frame list; its size is filled in at the end
+        output.writeAscii("LIST");
+        moviSizePosition = output.getPosition();
+        output.writeInt(0);
+        moviPosition = output.getPosition();
+        output.writeAscii("movi");
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * File:       ByteBudgetCache.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Keeps values in memory up to a byte budget, evicting them least recently used first once the
+ *             cache holds more than the budget. Subclasses give the bytes each value takes; FrameCache holds
+ *             rendered frames and WarpMapCache holds warp maps.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public abstract class ByteBudgetCache<V> {
+    // name of the cache in its summary, e.g. "cache"
+    private String name;
+
+    // values by key, in order of least to most recently used
+    private LinkedHashMap<String, V> values;
+
+    // the most bytes of values held, and the bytes held now
+    private long budget, size;
+
+    // number of lookups that found a value and that did not
+    private long hits, misses;
+
+    /**
+     * Constructor for ByteBudgetCache.
+     * @param name Name of the cache in its summary.
+     * @param budget The most bytes of values the cache holds.
+     */
+    protected ByteBudgetCache(String name, long budget) {
+        this.name = name;
+        this.budget = budget;
+
+        // access order makes iteration start from the least recently used value
+        values = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param value A value.
+     * @return The bytes the value takes.
+     */
+    protected abstract long sizeOf(V value);
+
+    /**
+     * @return The most bytes of values the cache holds.
+     */
+    public synchronized long getBudget() { return budget; }
+
+    /**
+     * @return The bytes of values held now.
+     */
+    public synchronized long getSize() { return size; }
+
+    /**
+     * @return The number of values held now.
+     */
+    public synchronized int getCount() { return values.size(); }
+
+    /**
+     * @return The number of lookups that found a value.
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * @return The number of lookups that did not find a value.
+     */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Changes the budget, evicting values if the cache now holds too much.
+     * @param budget The most bytes of values the cache holds.
+     */
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * Gets a cached value.
+     * @param key The key of the value.
+     * @return The value, or null if it is not cached.
+     */
+    public synchronized V get(String key) {
+        V value = values.get(key);
+
+        if (value != null)
+            hits++;
+        else
+            misses++;
+
+        return value;
+    }
+
+    /**
+     * Caches a value, evicting the least recently used values if needed. Values larger than the whole
+     * budget are not cached.
+     * @param key The key of the value.
+     * @param value The value.
+     */
+    public synchronized void put(String key, V value) {
+        long valueSize = sizeOf(value);
+
+        if (valueSize > budget)
+            return;
+
+        V replaced = values.put(key, value);
+        if (replaced != null)
+            size -= sizeOf(replaced);
+        size += valueSize;
+
+        evict();
+    }
+
+    /**
+     * Removes all cached values; the hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        values.clear();
+        size = 0;
+    }
+
+    /**
+     * @return Summary of the cache, e.g. "cache 150 hits, 0 misses, 144 MB"
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("%s %d hits, %d misses, %d MB", name, hits, misses, size / (1024 * 1024));
+    }
+
+    /**
+     * Evicts least recently used values until the cache is within its budget.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, V>> iterator = values.entrySet().iterator();
+
+        while (size > budget && iterator.hasNext()) {
+            size -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+        }
+    }
+}
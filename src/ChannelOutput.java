@@ -0,0 +1,158 @@
+/*
+ * File:       ChannelOutput.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Buffered little-endian writer over a channel, for the video file sinks. Writes are gathered in one
+ *             direct buffer and handed to the channel in large blocks; values already written to a file can be
+ *             patched in place, e.g. the sizes in a header that are only known once every frame is written.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+public class ChannelOutput implements Closeable {
+    // the channel written to
+    private WritableByteChannel channel;
+
+    // writes not yet handed to the channel
+    private ByteBuffer buffer;
+
+    // number of bytes written so far, including those still in the buffer
+    private long position;
+
+    /**
+     * Constructor for ChannelOutput.
+     * @param channel The channel to write to; closed with the output.
+     * @param bufferSize The number of bytes gathered before they are written to the channel.
+     */
+    public ChannelOutput(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+
+        buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return The number of bytes written so far, which is the position of the next byte written.
+     */
+    public long getPosition() { return position; }
+
+    /**
+     * Writes a 32 bit little-endian integer.
+     * @param value The value.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void writeInt(int value) throws IOException {
+        ensureSpace(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    /**
+     * Writes a 16 bit little-endian integer.
+     * @param value The value.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void writeShort(int value) throws IOException {
+        ensureSpace(2);
+        buffer.putShort((short) value);
+        position += 2;
+    }
+
+    /**
+     * Writes the characters of a string as ASCII, e.g. a four character code.
+     * @param text The string.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void writeAscii(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes bytes. Blocks larger than the buffer are handed to the channel directly.
+     * @param bytes The bytes.
+     * @param offset Index of the first byte to write.
+     * @param length Number of bytes to write.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (length > buffer.capacity()) {
+            flush();
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        } else {
+            ensureSpace(length);
+            buffer.put(bytes, offset, length);
+        }
+
+        position += length;
+    }
+
+    /**
+     * Overwrites a 32 bit little-endian integer written earlier; only possible when writing to a file.
+     * @param offset The position the integer was written at.
+     * @param value The new value.
+     * @throws IOException If the channel is not a file or cannot be written.
+     */
+    public void patchInt(long offset, int value) throws IOException {
+        if (!(channel instanceof FileChannel))
+            throw new IOException("Cannot patch a stream");
+
+        flush();
+
+        ByteBuffer bytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(value);
+        bytes.flip();
+
+        while (bytes.hasRemaining())
+            ((FileChannel) channel).write(bytes, offset + 4 - bytes.remaining());
+    }
+
+    /**
+     * Hands everything written so far to the channel.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Flushes and closes the channel.
+     * @throws IOException If the channel cannot be written or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Flushes the buffer if it does not have room for a write.
+     * @param length The size of the write.
+     * @throws IOException If the channel cannot be written.
+     */
+    private void ensureSpace(int length) throws IOException {
+        if (buffer.remaining() < length)
+            flush();
+    }
+
+    /**
+     * Writes all of a buffer to the channel; a channel may take only part of it at a time.
+     * @param bytes The bytes to write.
+     * @throws IOException If the channel cannot be written.
+     */
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining())
+            channel.write(bytes);
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * File:       ColorQuantizer.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Reduces full color images to a palette of at most 256 colors, for GIF export. Palettes are chosen
+ *             by median cut over a 15 bit color histogram, and pixels are mapped to them with optional
+ *             Floyd-Steinberg dithering through a lookup table from 15 bit colors to palette indices.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class ColorQuantizer {
+    // at most this many pixels of each image are sampled to choose a palette
+    private static final int MAX_SAMPLES = 128 * 1024;
+
+    // the palette, as RGB ints
+    private int[] palette;
+
+    // nearest palette index for each 15 bit color, or -1 until it is first needed
+    private short[] lookup;
+
+    /**
+     * Constructor for ColorQuantizer.
+     * @param palette The palette pixels are mapped to, as RGB ints; at most 256 colors.
+     */
+    public ColorQuantizer(int[] palette) {
+        this.palette = palette;
+
+        lookup = new short[1 << 15];
+        Arrays.fill(lookup, (short) -1);
+    }
+
+    /**
+     * @return The palette, as RGB ints.
+     */
+    public int[] getPalette() { return palette; }
+
+    /**
+     * Chooses one palette for several images, e.g. the start and end images of a morph, whose frames are
+     * made of the same colors.
+     * @param images The images.
+     * @param maxColors The most colors in the palette.
+     * @return The palette, as RGB ints.
+     */
+    public static int[] medianCut(BufferedImage[] images, int maxColors) {
+        int[][] samples = new int[images.length][];
+        int sampleCount = 0;
+
+        for (int i = 0; i < images.length; i++) {
+            int width = images[i].getWidth();
+            int height = images[i].getHeight();
+
+            samples[i] = sample(images[i].getRGB(0, 0, width, height, null, 0, width));
+            sampleCount += samples[i].length;
+        }
+
+        int[] pixels = new int[sampleCount];
+        int offset = 0;
+        for (int[] imageSamples : samples) {
+            System.arraycopy(imageSamples, 0, pixels, offset, imageSamples.length);
+            offset += imageSamples.length;
+        }
+
+        return medianCut(pixels, maxColors);
+    }
+
+    /**
+     * Chooses a palette for pixels by median cut: starting from a box around every color, the box with the
+     * most pixels that can still be split is cut at the median of its longest side, until there are as many
+     * boxes as colors. Each color is the average of the pixels in its box.
+     * @param pixels The pixels, as RGB ints.
+     * @param maxColors The most colors in the palette.
+     * @return The palette, as RGB ints; fewer colors than asked for if the pixels have fewer.
+     */
+    public static int[] medianCut(int[] pixels, int maxColors) {
+        // histogram of 15 bit colors, with the sums of the full colors in each so averages stay exact
+        int[] counts = new int[1 << 15];
+        long[] redSums = new long[1 << 15], greenSums = new long[1 << 15], blueSums = new long[1 << 15];
+
+        for (int pixel : sample(pixels)) {
+            int color = to15Bit(pixel);
+
+            counts[color]++;
+            redSums[color] += (pixel >> 16) & 0xff;
+            greenSums[color] += (pixel >> 8) & 0xff;
+            blueSums[color] += pixel & 0xff;
+        }
+
+        // the colors present; boxes are ranges of this array
+        int colorCount = 0;
+        for (int count : counts)
+            if (count > 0)
+                colorCount++;
+
+        int[] colors = new int[colorCount];
+        colorCount = 0;
+        for (int color = 0; color < counts.length; color++)
+            if (counts[color] > 0)
+                colors[colorCount++] = color;
+
+        ArrayList<int[]> boxes = new ArrayList<>();
+        if (colorCount > 0)
+            boxes.add(new int[]{0, colorCount});
+
+        while (boxes.size() < maxColors) {
+            // split the box with the most pixels among those with more than one color
+            int[] largest = null;
+            long largestCount = 0;
+
+            for (int[] box : boxes) {
+                if (box[1] - box[0] < 2)
+                    continue;
+
+                long count = 0;
+                for (int i = box[0]; i < box[1]; i++)
+                    count += counts[colors[i]];
+
+                if (count > largestCount) {
+                    largest = box;
+                    largestCount = count;
+                }
+            }
+
+            if (largest == null)
+                break;
+
+            int split = splitBox(colors, counts, largest[0], largest[1], largestCount);
+            boxes.add(new int[]{split, largest[1]});
+            largest[1] = split;
+        }
+
+        int[] palette = new int[boxes.size()];
+        for (int i = 0; i < boxes.size(); i++) {
+            int[] box = boxes.get(i);
+            long count = 0, red = 0, green = 0, blue = 0;
+
+            for (int j = box[0]; j < box[1]; j++) {
+                count += counts[colors[j]];
+                red += redSums[colors[j]];
+                green += greenSums[colors[j]];
+                blue += blueSums[colors[j]];
+            }
+
+            palette[i] = (int) ((red + count / 2) / count) << 16 | (int) ((green + count / 2) / count) << 8
+                         | (int) ((blue + count / 2) / count);
+        }
+
+        return palette;
+    }
+
+    /**
+     * Maps pixels to the palette.
+     * @param pixels The pixels, as RGB ints, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param dither Whether to spread each pixel's error over its neighbours with Floyd-Steinberg dithering.
+     * @return The palette index of each pixel.
+     */
+    public byte[] map(int[] pixels, int width, int height, boolean dither) {
+        byte[] indices = new byte[width * height];
+
+        if (!dither) {
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = (byte) getIndex(to15Bit(pixels[i]));
+
+            return indices;
+        }
+
+        // errors carried to this row and the next, three channels per pixel with a pixel of margin on each side
+        int[] errors = new int[3 * (width + 2)];
+        int[] nextErrors = new int[3 * (width + 2)];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int pixel = pixels[y * width + x];
+                int e = 3 * (x + 1);
+
+                // errors are kept in sixteenths
+                int red = clamp(((pixel >> 16) & 0xff) + (errors[e] + 8 >> 4));
+                int green = clamp(((pixel >> 8) & 0xff) + (errors[e + 1] + 8 >> 4));
+                int blue = clamp((pixel & 0xff) + (errors[e + 2] + 8 >> 4));
+
+                int index = getIndex(((red >> 3) << 10) | ((green >> 3) << 5) | (blue >> 3));
+                indices[y * width + x] = (byte) index;
+
+                int chosen = palette[index];
+                int[] error = { red - ((chosen >> 16) & 0xff), green - ((chosen >> 8) & 0xff), blue - (chosen & 0xff) };
+
+                for (int c = 0; c < 3; c++) {
+                    errors[e + 3 + c] += 7 * error[c];
+                    nextErrors[e - 3 + c] += 3 * error[c];
+                    nextErrors[e + c] += 5 * error[c];
+                    nextErrors[e + 3 + c] += error[c];
+                }
+            }
+
+            int[] swap = errors;
+            errors = nextErrors;
+            nextErrors = swap;
+            Arrays.fill(nextErrors, 0);
+        }
+
+        return indices;
+    }
+
+    /**
+     * Gets the palette index nearest a 15 bit color, finding it the first time the color is seen.
+     * @param color The 15 bit color.
+     * @return The palette index.
+     */
+    private int getIndex(int color) {
+        int index = lookup[color];
+
+        if (index < 0) {
+            // the center of the color's cell
+            int red = ((color >> 10) << 3) + 4;
+            int green = (((color >> 5) & 0x1f) << 3) + 4;
+            int blue = ((color & 0x1f) << 3) + 4;
+
+            int nearestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < palette.length; i++) {
+                int dr = red - ((palette[i] >> 16) & 0xff);
+                int dg = green - ((palette[i] >> 8) & 0xff);
+                int db = blue - (palette[i] & 0xff);
+
+                // weighted toward green, which the eye is most sensitive to
+                int distance = 3 * dr * dr + 4 * dg * dg + 2 * db * db;
+                if (distance < nearestDistance) {
+                    nearestDistance = distance;
+                    index = i;
+                }
+            }
+
+            lookup[color] = (short) index;
+        }
+
+        return index;
+    }
+
+    /**
+     * Sorts the colors of a box along its longest side and finds where to cut it so each half has about
+     * half of its pixels.
+     * @param colors The colors present; the box's range is sorted in place.
+     * @param counts Number of pixels of each 15 bit color.
+     * @param start Start of the box's range.
+     * @param end End of the box's range.
+     * @param count Number of pixels in the box.
+     * @return Index the second half of the box starts at; always leaves a color in each half.
+     */
+    private static int splitBox(int[] colors, int[] counts, int start, int end, long count) {
+        int[] min = { 31, 31, 31 };
+        int[] max = { 0, 0, 0 };
+
+        for (int i = start; i < end; i++) {
+            for (int c = 0; c < 3; c++) {
+                int value = channel(colors[i], c);
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+
+        int axis = 0;
+        for (int c = 1; c < 3; c++)
+            if (max[c] - min[c] > max[axis] - min[axis])
+                axis = c;
+
+        // sort by the chosen channel; the key puts it in the high bits and keeps the color in the low ones
+        int[] keys = new int[end - start];
+        for (int i = start; i < end; i++)
+            keys[i - start] = channel(colors[i], axis) << 15 | colors[i];
+        Arrays.sort(keys);
+        for (int i = start; i < end; i++)
+            colors[i] = keys[i - start] & 0x7fff;
+
+        long seen = 0;
+        for (int i = start; i < end - 1; i++) {
+            seen += counts[colors[i]];
+
+            if (2 * seen >= count)
+                return i + 1;
+        }
+
+        return end - 1;
+    }
+
+    /**
+     * @param pixels Pixels, as RGB ints.
+     * @return Evenly spaced pixels, at most MAX_SAMPLES of them.
+     */
+    private static int[] sample(int[] pixels) {
+        if (pixels.length <= MAX_SAMPLES)
+            return pixels;
+
+        int[] samples = new int[MAX_SAMPLES];
+        for (int i = 0; i < MAX_SAMPLES; i++)
+            samples[i] = pixels[(int) ((long) i * pixels.length / MAX_SAMPLES)];
+
+        return samples;
+    }
+
+    /**
+     * @param color A 15 bit color.
+     * @param c 0 for red, 1 for green, 2 for blue.
+     * @return The 5 bit value of the channel.
+     */
+    private static int channel(int color, int c) {
+        return (color >> (10 - 5 * c)) & 0x1f;
+    }
+
+    /**
+     * @param pixel An RGB int.
+     * @return The 15 bit color, 5 bits per channel.
+     */
+    private static int to15Bit(int pixel) {
+        return ((pixel >> 9) & 0x7c00) | ((pixel >> 6) & 0x3e0) | ((pixel >> 3) & 0x1f);
+    }
+
+    /**
+     * @param value A channel value.
+     * @return The value limited to 0 to 255.
+     */
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+}
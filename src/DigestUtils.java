@@ -0,0 +1,39 @@
+/*
+ * File:       DigestUtils.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Helpers for the SHA-256 digests that fingerprint renderers and name the entries of the disk
+ *             frame cache.
+ *
+ */
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class DigestUtils {
+    /**
+     * @return A new SHA-256 digest.
+     */
+    public static MessageDigest createSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param bytes Bytes, e.g. a digest.
+     * @return The bytes as a lower case hex string, two digits per byte.
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return hex.toString();
+    }
+}
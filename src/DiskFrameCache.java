@@ -0,0 +1,277 @@
+/*
+ * File:       DiskFrameCache.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Content-addressed store of encoded frames on disk, shared between sessions and between programs
+ *             exporting at the same time. Each entry is named by the SHA-256 digest of its key, is written to a
+ *             temporary file and moved into place atomically, and the least recently used entries are deleted
+ *             once the store grows past its size limit. Temporary files left behind by a program that died while
+ *             writing count towards the limit and are deleted once they are old enough that no writer can still
+ *             be using them. The store is measured the first time an entry is added, not when it is opened, so
+ *             opening it is cheap; setting the system property imagemorph.diskCache to "off" turns it off.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+
+public class DiskFrameCache {
+    // extension of entries; temporary files use FileUtils.TEMP_EXTENSION so they are never read as entries
+    private static final String ENTRY_EXTENSION = ".frame";
+
+    // temporary files older than this were left by a program that died while writing them
+    private static final long STALE_TEMP_AGE = 60L * 60 * 1000;
+
+    // directory the entries are stored in
+    private Path directory;
+
+    // the most bytes of entries kept, and an estimate of the bytes stored now; -1 until the store is measured
+    private long budget, size = -1;
+
+    // number of lookups that found an entry and that did not
+    private long hits, misses;
+
+    /**
+     * Constructor for DiskFrameCache. The directory is not scanned until an entry is added.
+     * @param directory The directory entries are stored in; created if it does not exist.
+     * @param budget The most bytes of entries kept.
+     * @throws IOException If the directory cannot be created.
+     */
+    public DiskFrameCache(File directory, long budget) throws IOException {
+        this.directory = directory.toPath();
+        this.budget = budget;
+
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Opens the store shared by every export on this machine, in the user's home directory, with up to 2 GB
+     * of entries.
+     * @return The store, or null if it is turned off with -Dimagemorph.diskCache=off or its directory cannot
+     *         be created.
+     */
+    public static DiskFrameCache openDefault() {
+        if ("off".equals(System.getProperty("imagemorph.diskCache")))
+            return null;
+
+        File directory = new File(System.getProperty("user.home"), ".imagemorph" + File.separator + "frames");
+
+        try {
+            return new DiskFrameCache(directory, 2048L * 1024 * 1024);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of lookups that found an entry.
+     */
+    public synchronized long getHits() { return hits; }
+
+    /**
+     * @return The number of lookups that did not find an entry.
+     */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Copies a stored entry to a file.
+     * @param key The key of the entry, e.g. a frame key with the format of the encoded frame.
+     * @param destination The file to copy the entry to; replaced atomically if it exists.
+     * @return Whether the entry was stored and copied.
+     */
+    public boolean copyTo(String key, File destination) {
+        Path entry = getEntryPath(key);
+
+        try {
+            // read whole, so an entry evicted part way through is never copied partly
+            FileUtils.writeAtomically(destination, Files.readAllBytes(entry));
+
+            // mark the entry as recently used so it is evicted last
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // not stored, or evicted by another program while being copied
+            countLookup(false);
+            return false;
+        }
+
+        countLookup(true);
+        return true;
+    }
+
+    /**
+     * Stores an entry. The entry is written to a temporary file first and moved into place, so other
+     * programs using the store never see a partly written entry.
+     * @param key The key of the entry.
+     * @param data The contents of the entry.
+     */
+    public void put(String key, byte[] data) {
+        Path entry = getEntryPath(key);
+
+        try {
+            Files.createDirectories(entry.getParent());
+            FileUtils.writeAtomically(entry.toFile(), data);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        // the first entry added measures the store, which may be over budget from another session
+        boolean evict;
+        synchronized (this) {
+            evict = size < 0 || size + data.length > budget;
+            if (size >= 0)
+                size += data.length;
+        }
+
+        if (evict)
+            evict();
+    }
+
+    /**
+     * @return Summary of the store, e.g. "disk cache 150 hits, 0 misses"
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("disk cache %d hits, %d misses", hits, misses);
+    }
+
+    /**
+     * Measures the store, deleting stale temporary files, then deletes the least recently used entries until
+     * the store is within its budget. Other programs may be adding and deleting entries too, so the size is
+     * always measured again from the directory.
+     */
+    private void evict() {
+        long storedSize = 0;
+        long staleTime = System.currentTimeMillis() - STALE_TEMP_AGE;
+
+        // temporary files take space like entries until they are moved into place or deleted
+        for (Path temp : listFiles(FileUtils.TEMP_EXTENSION)) {
+            try {
+                if (getLastModified(temp) < staleTime && Files.deleteIfExists(temp))
+                    continue;
+            } catch (IOException e) {
+                // in use by another program; counted below
+            }
+
+            storedSize += getFileSize(temp);
+        }
+
+        ArrayList<Path> entries = listFiles(ENTRY_EXTENSION);
+
+        // read the times once; other programs touching entries during the sort would break its ordering
+        final HashMap<Path, Long> lastModified = new HashMap<>();
+        final HashMap<Path, Long> sizes = new HashMap<>();
+        for (Path entry : entries) {
+            lastModified.put(entry, getLastModified(entry));
+            sizes.put(entry, getFileSize(entry));
+            storedSize += sizes.get(entry);
+        }
+
+        // oldest entries first
+        Collections.sort(entries, new Comparator<Path>() {
+            @Override
+            public int compare(Path a, Path b) {
+                return Long.compare(lastModified.get(a), lastModified.get(b));
+            }
+        });
+
+        // a store within its budget is only measured; one over it is evicted down to 90% of the budget so the
+        // directory is not scanned again on every put
+        long target = storedSize > budget ? budget - budget / 10 : storedSize;
+
+        for (Path entry : entries) {
+            if (storedSize <= target)
+                break;
+
+            try {
+                if (Files.deleteIfExists(entry))
+                    storedSize -= sizes.get(entry);
+            } catch (IOException e) {
+                // in use by another program; try the next one
+            }
+        }
+
+        synchronized (this) {
+            size = storedSize;
+        }
+    }
+
+    /**
+     * @param extension ENTRY_EXTENSION for the entries, or FileUtils.TEMP_EXTENSION for the temporary files.
+     * @return Every file in the store with the extension.
+     */
+    private ArrayList<Path> listFiles(String extension) {
+        ArrayList<Path> entries = new ArrayList<>();
+
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(directory)) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard))
+                    continue;
+
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(shard, "*" + extension)) {
+                    for (Path file : files)
+                        entries.add(file);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            System.err.println(e.getMessage());
+        }
+
+        return entries;
+    }
+
+    /**
+     * Gets the file an entry is stored in: the hex SHA-256 digest of its key, in a subdirectory named by the
+     * first two digits so no single directory gets too large.
+     * @param key The key of the entry.
+     * @return The path of the entry.
+     */
+    private Path getEntryPath(String key) {
+        String hex = DigestUtils.toHex(DigestUtils.createSha256().digest(key.getBytes(StandardCharsets.UTF_8)));
+
+        return directory.resolve(hex.substring(0, 2)).resolve(hex + ENTRY_EXTENSION);
+    }
+
+    /**
+     * Counts a lookup as a hit or a miss.
+     * @param hit Whether the entry was found.
+     */
+    private synchronized void countLookup(boolean hit) {
+        if (hit)
+            hits++;
+        else
+            misses++;
+    }
+
+    /**
+     * @param file A file.
+     * @return The size of the file, or 0 if it no longer exists.
+     */
+    private static long getFileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param file A file.
+     * @return The time the file was last modified, or 0 if it no longer exists.
+     */
+    private static long getLastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
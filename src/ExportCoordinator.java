@@ -0,0 +1,390 @@
+/*
+ * File:       ExportCoordinator.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Exports a saved project from the command line, spread over several worker processes. The frames are
+ *             split into ranges ("shards"), and a local worker JVM is started for each shard, up to a set number at
+ *             a time. Shards whose worker fails are run again, and the export directory is checked for every frame
+ *             at the end. Each worker's frame encoders get an equal share of the processors through the
+ *             imagemorph.encodeThreads property, so the workers do not overload them. Workers can also be started
+ *             by hand with --render, e.g. on other machines writing to a shared directory. A project can also be
+ *             encoded into a single video file with --encode, or to standard output as YUV4MPEG2 with a file of
+ *             "-", or exported at several sizes in one pass with --ladder. Frames are exported as JPEG images
+ *             unless "png" is given, for lossless frames.
+ *
+ *             java ImageMorph --export <project.morph> <directory> [workers [jpg | png]]
+ *             java ImageMorph --render <project.morph> <directory> <first frame> <last frame> [jpg | png]
+ *             java ImageMorph --encode <project.morph> <file.avi | file.y4m | file.gif | ->
+ *             java ImageMorph --ladder <project.morph> <directory> <full,1080p,720p,thumbnail> [jpg | png]
+ *             java ImageMorph --check | --check-frames
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+public class ExportCoordinator {
+    // times a shard is run before the export gives up on it
+    private static final int MAX_ATTEMPTS = 3;
+
+    // shards per worker; more, smaller shards keep every worker busy until the end and make retries cheaper
+    private static final int SHARDS_PER_WORKER = 4;
+
+    // system property giving the number of threads the frame encoders use; set for each worker process so
+    // the workers together use as many threads as there are processors
+    public static final String ENCODE_THREADS_PROPERTY = "imagemorph.encodeThreads";
+
+    // the project being exported and the directory it is exported to
+    private File projectFile, directory;
+
+    // number of worker processes run at the same time
+    private int workers;
+
+    // format of the frames; one of the FrameExporter formats
+    private String format;
+
+    /**
+     * Constructor for ExportCoordinator.
+     * @param projectFile The .morph file to export.
+     * @param directory The directory to export to.
+     * @param workers The number of worker processes run at the same time.
+     * @param format The format of the frames; one of the FrameExporter formats.
+     */
+    public ExportCoordinator(File projectFile, File directory, int workers, String format) {
+        this.projectFile = projectFile;
+        this.directory = directory;
+        this.workers = workers;
+        this.format = format;
+    }
+
+    /**
+     * Runs a command line export.
+     * @param args --export, --render, --encode or --ladder and their arguments, or --check or --check-frames
+     *             to check the pixel kernels; see KernelCheck.
+     * @return The exit status: 0 if every frame was written.
+     */
+    public static int runCommand(String[] args) {
+        try {
+            if (args.length >= 3 && args.length <= 5 && args[0].equals("--export")) {
+                int workers = Runtime.getRuntime().availableProcessors();
+                if (args.length >= 4)
+                    workers = Integer.parseInt(args[3]);
+
+                String format = args.length == 5 ? getFormat(args[4]) : FrameExporter.FORMAT_JPEG;
+                if (format != null)
+                    return new ExportCoordinator(new File(args[1]), new File(args[2]), Math.max(1, workers),
+                                                 format).run();
+            } else if (args.length >= 5 && args.length <= 6 && args[0].equals("--render")) {
+                String format = args.length == 6 ? getFormat(args[5]) : FrameExporter.FORMAT_JPEG;
+                if (format != null)
+                    return renderShard(new File(args[1]), new File(args[2]),
+                                       Integer.parseInt(args[3]), Integer.parseInt(args[4]), format);
+            } else if (args.length == 3 && args[0].equals("--encode")) {
+                return encode(new File(args[1]), args[2]);
+            } else if (args.length >= 4 && args.length <= 5 && args[0].equals("--ladder")) {
+                String format = args.length == 5 ? getFormat(args[4]) : FrameExporter.FORMAT_JPEG;
+                RenditionLadder ladder = RenditionLadder.parse(args[3]);
+                if (format != null && ladder != null)
+                    return exportLadder(new File(args[1]), new File(args[2]), ladder, format);
+            } else if (args.length == 1 && args[0].equals("--check")) {
+                return KernelCheck.run();
+            } else if (args.length == 1 && args[0].equals("--check-frames")) {
+                return KernelCheck.runFrames();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Not a number: " + e.getMessage());
+        }
+
+        System.err.println("Usage: ImageMorph --export <project.morph> <directory> [workers [jpg | png]]");
+        System.err.println("       ImageMorph --render <project.morph> <directory> <first frame> <last frame> "
+                           + "[jpg | png]");
+        System.err.println("       ImageMorph --encode <project.morph> <file.avi | file.y4m | file.gif | ->");
+        System.err.println("       ImageMorph --ladder <project.morph> <directory> <full,1080p,720p,thumbnail> "
+                           + "[jpg | png]");
+        System.err.println("       ImageMorph --check | --check-frames");
+        return 2;
+    }
+
+    /**
+     * @param name A frame format named on the command line.
+     * @return The FrameExporter format, or null if it is not one.
+     */
+    private static String getFormat(String name) {
+        if (name.equals(FrameExporter.FORMAT_JPEG) || name.equals(FrameExporter.FORMAT_PNG))
+            return name;
+
+        System.err.println("Unknown frame format: " + name);
+        return null;
+    }
+
+    /**
+     * Exports every frame of the project not already exported, running the shards in worker processes.
+     * @return The exit status: 0 if every frame was written.
+     */
+    public int run() {
+        MorphRenderer renderer;
+        int frameCount;
+
+        try {
+            MorphProject project = new MorphProject(projectFile);
+            renderer = project.createRenderer();
+            frameCount = project.getFrameCount();
+        } catch (IOException e) {
+            System.err.println("Cannot read project: " + e.getMessage());
+            return 1;
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Cannot create " + directory);
+            return 1;
+        }
+
+        int totalFrames = FrameExporter.getFrameTimes(frameCount).length;
+
+        // frames an interrupted export of the same project already wrote are kept
+        int firstFrame = 1;
+        ExportManifest manifest = ExportManifest.read(directory);
+        if (manifest != null && manifest.isResumableBy(renderer, frameCount, format))
+            firstFrame = manifest.getCompletedFrames() + 1;
+
+        // workers finish out of order, so until every frame is checked only the kept frames count as written
+        ExportManifest exportManifest = new ExportManifest(renderer, frameCount, format, firstFrame - 1);
+        exportManifest.write(directory);
+
+        // split the remaining frames into shards of about the same size
+        ArrayDeque<int[]> pending = new ArrayDeque<>();
+        int remaining = totalFrames - firstFrame + 1;
+        int shardSize = Math.max(1, (remaining + workers * SHARDS_PER_WORKER - 1) / (workers * SHARDS_PER_WORKER));
+
+        for (int first = firstFrame; first <= totalFrames; first += shardSize)
+            pending.add(new int[]{first, Math.min(first + shardSize - 1, totalFrames)});
+
+        if (pending.isEmpty())
+            System.out.println("All " + totalFrames + " frames were already exported");
+        else
+            System.out.println("Exporting frames " + firstFrame + " to " + totalFrames + " in " + pending.size()
+                               + " shards on " + workers + " workers");
+
+        if (!runShards(pending))
+            return 1;
+
+        // every frame is written atomically, so a frame that is there is complete
+        ArrayList<Integer> missing = new ArrayList<>();
+        for (int imageNumber = 1; imageNumber <= totalFrames; imageNumber++)
+            if (FrameExporter.getFrameFile(directory, imageNumber, format).length() == 0)
+                missing.add(imageNumber);
+
+        if (!missing.isEmpty()) {
+            System.err.println("Export incomplete; missing frames " + missing);
+            return 1;
+        }
+
+        exportManifest.setCompletedFrames(totalFrames);
+        exportManifest.write(directory);
+
+        System.out.println("Exported " + totalFrames + " frames to " + directory);
+        return 0;
+    }
+
+    /**
+     * Runs shards in worker processes, no more than the number of workers at a time, running failed shards
+     * again up to MAX_ATTEMPTS times.
+     * @param pending The shards, each the first and last frame number.
+     * @return Whether every shard succeeded.
+     */
+    private boolean runShards(ArrayDeque<int[]> pending) {
+        HashMap<Process, int[]> running = new HashMap<>();
+        HashMap<int[], Integer> attempts = new HashMap<>();
+        boolean failed = false;
+
+        while (!pending.isEmpty() || !running.isEmpty()) {
+            // start workers for waiting shards; no new shards are started once one has failed for good
+            while (!failed && !pending.isEmpty() && running.size() < workers) {
+                int[] shard = pending.poll();
+                attempts.put(shard, attempts.containsKey(shard) ? attempts.get(shard) + 1 : 1);
+
+                try {
+                    running.put(startWorker(shard), shard);
+                } catch (IOException e) {
+                    System.err.println("Cannot start worker: " + e.getMessage());
+                    failed = true;
+                }
+            }
+
+            if (failed && running.isEmpty())
+                break;
+
+            // collect the workers that have finished
+            Iterator<Process> iterator = running.keySet().iterator();
+            while (iterator.hasNext()) {
+                Process process = iterator.next();
+
+                if (process.isAlive())
+                    continue;
+
+                int[] shard = running.get(process);
+                iterator.remove();
+
+                if (process.exitValue() == 0)
+                    continue;
+
+                if (attempts.get(shard) < MAX_ATTEMPTS) {
+                    System.err.println("Frames " + shard[0] + " to " + shard[1] + " failed; retrying");
+                    pending.add(shard);
+                } else {
+                    System.err.println("Frames " + shard[0] + " to " + shard[1] + " failed "
+                                       + MAX_ATTEMPTS + " times; giving up");
+                    failed = true;
+                }
+            }
+
+            // wait a little for a worker to finish before checking again
+            if (!running.isEmpty()) {
+                try {
+                    running.keySet().iterator().next().waitFor(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    for (Process process : running.keySet())
+                        process.destroy();
+
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+
+        return !failed;
+    }
+
+    /**
+     * Gets the number of threads the frame encoders use: the value of the imagemorph.encodeThreads system
+     * property, or the number of processors if it is not set.
+     * @return The number of encode threads, at least 1.
+     */
+    public static int getEncodeThreads() {
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        String value = System.getProperty(ENCODE_THREADS_PROPERTY);
+        if (value != null) {
+            try {
+                threads = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring " + ENCODE_THREADS_PROPERTY + ": not a number: " + value);
+            }
+        }
+
+        return Math.max(1, threads);
+    }
+
+    /**
+     * Starts a worker process for a shard, running this program in the same Java installation with the same
+     * class path. Its output goes to this program's output. Each worker's encoders get an equal share of the
+     * processors, so running several workers does not start a full pool of encode threads in each of them.
+     * @param shard The first and last frame number.
+     * @return The worker process.
+     * @throws IOException If the process cannot be started.
+     */
+    private Process startWorker(int[] shard) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        int encodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+
+        ProcessBuilder builder = new ProcessBuilder(java, "-Djava.awt.headless=true",
+                                                    "-D" + ENCODE_THREADS_PROPERTY + "=" + encodeThreads,
+                                                    "-cp", System.getProperty("java.class.path"),
+                                                    "ImageMorph", "--render",
+                                                    projectFile.getAbsolutePath(), directory.getAbsolutePath(),
+                                                    Integer.toString(shard[0]), Integer.toString(shard[1]),
+                                                    format);
+        builder.inheritIO();
+
+        return builder.start();
+    }
+
+    /**
+     * Exports a range of frames of a project; run in each worker process.
+     * @param projectFile The .morph file to export.
+     * @param directory The directory to export to.
+     * @param first The first frame number, starting from 1.
+     * @param last The last frame number.
+     * @param format The format of the frames; one of the FrameExporter formats.
+     * @return The exit status: 0 if every frame was written.
+     */
+    private static int renderShard(File projectFile, File directory, int first, int last, String format) {
+        try {
+            MorphProject project = new MorphProject(projectFile);
+            MorphRenderer renderer = project.createRenderer();
+            double[] frameTimes = FrameExporter.getFrameTimes(project.getFrameCount());
+
+            if (first < 1 || last > frameTimes.length || first > last) {
+                System.err.println("Frames " + first + " to " + last + " are not in 1 to " + frameTimes.length);
+                return 2;
+            }
+
+            // workers share the disk cache, so frames exported before by any process are copied
+            FrameExporter exporter = new FrameExporter(directory, format, null, DiskFrameCache.openDefault());
+
+            for (int imageNumber = first; imageNumber <= last; imageNumber++) {
+                exporter.exportFrame(renderer, null, frameTimes[imageNumber - 1], imageNumber);
+
+                // the frame writer reports errors rather than throwing them, so check the frame is there
+                if (FrameExporter.getFrameFile(directory, imageNumber, format).length() == 0) {
+                    System.err.println("Frame " + imageNumber + " was not written");
+                    return 1;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Frames " + first + " to " + last + " failed: " + e);
+            return 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Encodes every frame of a project into one video file, in order, in this process.
+     * @param projectFile The .morph file to export.
+     * @param path The video file, or "-" for standard output; see FrameSink.open.
+     * @return The exit status: 0 if every frame was written.
+     */
+    private static int encode(File projectFile, String path) {
+        try {
+            MorphProject project = new MorphProject(projectFile);
+            MorphRenderer renderer = project.createRenderer();
+
+            try (FrameSink sink = FrameSink.open(path, renderer.getWidth(), renderer.getHeight(), 30)) {
+                for (double t : FrameExporter.getFrameTimes(project.getFrameCount()))
+                    sink.writeFrame(renderer.renderFrame(t));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Encoding failed: " + e);
+            return 1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Exports every frame of a project at several sizes in one pass, in this process.
+     * @param projectFile The .morph file to export.
+     * @param directory The directory to export to; each size is written to a subdirectory.
+     * @param ladder The sizes to export.
+     * @param format The format of the frames; one of the FrameExporter formats.
+     * @return The exit status: 0 if every frame was written.
+     */
+    private static int exportLadder(File projectFile, File directory, RenditionLadder ladder, String format) {
+        try {
+            MorphProject project = new MorphProject(projectFile);
+
+            return ladder.export(project.createRenderer(), FrameExporter.getFrameTimes(project.getFrameCount()),
+                                 directory, format);
+        } catch (IOException e) {
+            System.err.println("Cannot read project: " + e.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * File:       ExportManifest.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Records which morph produced the frames in an export directory: its fingerprint, a fingerprint of
+ *             the images and settings, the number of frames and their format, how many of them have been
+ *             written, and both lattices. An interrupted export of the same morph resumes from the first frame
+ *             not written, and exporting again after editing the lattices uses it to find the frames, and the
+ *             parts of frames, that the edit changed. The manifest is replaced atomically, like the frames, so it
+ *             is never seen partly written.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExportManifest {
+    // name of the manifest file in the export directory, and the first line of it
+    private static final String FILE_NAME = ".imagemorph-export";
+    private static final String HEADER = "ImageMorph export 3";
+
+    // fingerprint of the morph, and of just the images and settings; see MorphRenderer
+    private String fingerprint, imageFingerprint;
+
+    // number of frames in the export, and the number written so far, which are always the first ones
+    private int frameCount, completedFrames;
+
+    // format of the frames; one of the FrameExporter formats
+    private String format;
+
+    // the lattices the frames were rendered with
+    private int[][] startXCoords, startYCoords, endXCoords, endYCoords;
+
+    /**
+     * Constructor for ExportManifest.
+     * @param renderer The renderer the frames are exported with.
+     * @param frameCount The number of frames in the export.
+     * @param format The format of the frames; one of the FrameExporter formats.
+     * @param completedFrames The number of frames written so far.
+     */
+    public ExportManifest(MorphRenderer renderer, int frameCount, String format, int completedFrames) {
+        this(renderer.getFingerprint(), renderer.getImageFingerprint(), frameCount, format, completedFrames,
+             renderer.getStartXCoords(), renderer.getStartYCoords(), renderer.getEndXCoords(),
+             renderer.getEndYCoords());
+    }
+
+    /**
+     * Constructor for ExportManifest.
+     * @param fingerprint Fingerprint of the morph.
+     * @param imageFingerprint Fingerprint of the images and settings.
+     * @param frameCount The number of frames in the export.
+     * @param format The format of the frames.
+     * @param completedFrames The number of frames written so far.
+     * @param startXCoords x coordinates of the control points in the start image.
+     * @param startYCoords y coordinates of the control points in the start image.
+     * @param endXCoords x coordinates of the control points in the end image.
+     * @param endYCoords y coordinates of the control points in the end image.
+     */
+    private ExportManifest(String fingerprint, String imageFingerprint, int frameCount, String format,
+                           int completedFrames, int[][] startXCoords, int[][] startYCoords, int[][] endXCoords,
+                           int[][] endYCoords) {
+        this.fingerprint = fingerprint;
+        this.imageFingerprint = imageFingerprint;
+        this.frameCount = frameCount;
+        this.format = format;
+        this.completedFrames = completedFrames;
+        this.startXCoords = startXCoords;
+        this.startYCoords = startYCoords;
+        this.endXCoords = endXCoords;
+        this.endYCoords = endYCoords;
+    }
+
+    /**
+     * Reads the manifest of an export directory.
+     * @param directory The export directory.
+     * @return The manifest, or null if the directory has none or it cannot be read.
+     */
+    public static ExportManifest read(File directory) {
+        File file = new File(directory, FILE_NAME);
+
+        if (!file.isFile())
+            return null;
+
+        try {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER))
+                return null;
+
+            int currIndex = 1;
+
+            String fingerprint = lines.get(currIndex++);
+            String imageFingerprint = lines.get(currIndex++);
+            int frameCount = Integer.parseInt(lines.get(currIndex++));
+            String format = lines.get(currIndex++);
+            int completedFrames = Integer.parseInt(lines.get(currIndex++));
+            int dimension = Integer.parseInt(lines.get(currIndex++));
+
+            // each lattice is stored row by row, one coordinate per line
+            int[][][] coords = new int[4][dimension][dimension];
+            for (int[][] lattice : coords)
+                for (int i = 0; i < dimension; i++)
+                    for (int j = 0; j < dimension; j++)
+                        lattice[i][j] = Integer.parseInt(lines.get(currIndex++));
+
+            return new ExportManifest(fingerprint, imageFingerprint, frameCount, format, completedFrames,
+                                      coords[0], coords[1], coords[2], coords[3]);
+        } catch (IOException | RuntimeException e) {
+            // unreadable or from an older version; the directory is exported from scratch
+            System.err.println("Ignoring export manifest: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return The number of frames written so far.
+     */
+    public int getCompletedFrames() { return completedFrames; }
+
+    /**
+     * @param completedFrames The number of frames written so far.
+     */
+    public void setCompletedFrames(int completedFrames) { this.completedFrames = completedFrames; }
+
+    /**
+     * Checks whether the recorded export is of the same morph as a new export, so the frames it wrote can be
+     * kept and the new export can resume after them.
+     * @param renderer The renderer of the new export.
+     * @param frameCount The number of frames of the new export.
+     * @param format The format of the new export's frames.
+     * @return Whether the new export can resume from the recorded one.
+     */
+    public boolean isResumableBy(MorphRenderer renderer, int frameCount, String format) {
+        return frameCount == this.frameCount && format.equals(this.format)
+               && fingerprint.equals(renderer.getFingerprint());
+    }
+
+    /**
+     * Writes the manifest to an export directory.
+     * @param directory The export directory.
+     */
+    public void write(File directory) {
+        ArrayList<String> lines = new ArrayList<>();
+
+        lines.add(HEADER);
+        lines.add(fingerprint);
+        lines.add(imageFingerprint);
+        lines.add(Integer.toString(frameCount));
+        lines.add(format);
+        lines.add(Integer.toString(completedFrames));
+        lines.add(Integer.toString(startXCoords.length));
+
+        for (int[][] lattice : new int[][][]{startXCoords, startYCoords, endXCoords, endYCoords})
+            for (int[] row : lattice)
+                for (int coord : row)
+                    lines.add(Integer.toString(coord));
+
+        try {
+            FileUtils.writeAtomically(new File(directory, FILE_NAME),
+                            (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a renderer for the morph the recorded frames were exported from, if it used the same images and
+     * settings as a new export and had as many frames in the same format, so the two can be compared frame by
+     * frame. Only the first getCompletedFrames() frames in the directory were rendered by it.
+     * @param renderer The renderer of the new export.
+     * @param frameCount The number of frames of the new export.
+     * @param format The format of the new export's frames.
+     * @return The renderer of the recorded frames, or null if they cannot be reused.
+     */
+    public MorphRenderer getPreviousRenderer(MorphRenderer renderer, int frameCount, String format) {
+        if (frameCount != this.frameCount || !format.equals(this.format) || !imageFingerprint.equals(renderer.getImageFingerprint())
+                || startXCoords.length != renderer.getStartXCoords().length)
+            return null;
+
+        MorphRenderer previous = new MorphRenderer(renderer.getStartImage(), renderer.getEndImage(),
+                                                   startXCoords, startYCoords, endXCoords, endYCoords);
+        previous.setSettings(renderer.getSettings());
+        previous.setWarpMapCache(renderer.getWarpMapCache());
+
+        return previous;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * File:       FileUtils.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Helpers for writing the files the program produces: frames, export manifests, and entries of the
+ *             disk frame cache.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+public class FileUtils {
+    // extension of files being written; renamed to their final names once complete
+    public static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Writes a file by writing a temporary file next to it and renaming it, so that the file is either
+     * complete or not there at all, even if the program dies while writing it.
+     * @param file The file; replaced if it exists.
+     * @param data The contents of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void writeAtomically(File file, byte[] data) throws IOException {
+        Path target = file.toPath();
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), TEMP_EXTENSION);
+
+        try {
+            Files.write(temp, data);
+
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
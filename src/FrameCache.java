@@ -0,0 +1,55 @@
+/*
+ * File:       FrameCache.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Keeps rendered frames in memory so a morph that has not changed is not rendered again. Frames
+ *             are evicted least recently used first once the cache holds more than its byte budget.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+
+public class FrameCache extends ByteBudgetCache<BufferedImage> {
+    /**
+     * Constructor for FrameCache.
+     * @param budget The most bytes of frames the cache holds.
+     */
+    public FrameCache(long budget) {
+        super("cache", budget);
+    }
+
+    /**
+     * Builds the key a frame is cached under.
+     * @param fingerprint Fingerprint of everything the frame depends on other than t; see MorphRenderer.
+     * @param t t of the frame.
+     * @return The key.
+     */
+    public static String getKey(String fingerprint, double t) {
+        // the exact bits of t, so frames of close but different t are never confused
+        return fingerprint + "@" + Long.toHexString(Double.doubleToLongBits(t));
+    }
+
+    /**
+     * @return The number of frames held now.
+     */
+    public int getFrameCount() { return getCount(); }
+
+    /**
+     * Gets a cached frame. Cached frames are shared, so they must not be drawn on.
+     * @param key The key of the frame.
+     * @return The frame, or null if it is not cached.
+     */
+    @Override
+    public BufferedImage get(String key) {
+        return super.get(key);
+    }
+
+    /**
+     * @param frame A frame.
+     * @return The bytes the frame's pixels take; frames are in the packed int layout.
+     */
+    @Override
+    protected long sizeOf(BufferedImage frame) {
+        return (long) frame.getWidth() * frame.getHeight() * 4;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * File:       FrameExporter.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Writes the frames of a morph to an export directory as "image-N.jpg", or "image-N.png" for
+ *             lossless frames, for the export in the window and for export worker processes alike. Frames are
+ *             copied from the disk cache when they were exported before, patched from an exact copy when only
+ *             part of them changed, and otherwise rendered; each is written atomically.
+ *
+ */
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+public class FrameExporter {
+    // formats frames can be written in, as their file extensions
+    public static final String FORMAT_JPEG = "jpg";
+    public static final String FORMAT_PNG = "png";
+
+    // directory the frames are written to, and the format they are written in
+    private File directory;
+    private String format;
+
+    // rendered frames in memory, and encoded frames on disk; either may be null
+    private FrameCache frameCache;
+    private DiskFrameCache diskCache;
+
+    /**
+     * Constructor for FrameExporter.
+     * @param directory The directory the frames are written to.
+     * @param format The format frames are written in; FORMAT_JPEG or FORMAT_PNG.
+     * @param frameCache Rendered frames kept in memory, or null.
+     * @param diskCache Encoded frames kept on disk, or null.
+     */
+    public FrameExporter(File directory, String format, FrameCache frameCache, DiskFrameCache diskCache) {
+        this.directory = directory;
+        this.format = format;
+        this.frameCache = frameCache;
+        this.diskCache = diskCache;
+    }
+
+    /**
+     * Gets t of every frame of an export, the way the export has always stepped through the morph: from 0, in
+     * steps of 1 / frameCount, while t is less than 1. Every process exporting part of a morph must use the
+     * same t, so the frames and their cache keys match.
+     * @param frameCount The number of frames the export should have, e.g. 30 per second of the morph.
+     * @return t of each frame, in order.
+     */
+    public static double[] getFrameTimes(int frameCount) {
+        double deltaT = 1.0 / frameCount;
+        int count = 0;
+
+        for (double t = 0; t < 1.0; t += deltaT)
+            count++;
+
+        double[] times = new double[count];
+        double t = 0;
+
+        for (int i = 0; i < count; i++) {
+            times[i] = t;
+            t += deltaT;
+        }
+
+        return times;
+    }
+
+    /**
+     * @param directory An export directory.
+     * @param imageNumber The number of a frame, starting from 1.
+     * @param format The format of the frame; FORMAT_JPEG or FORMAT_PNG.
+     * @return The file the frame is written to.
+     */
+    public static File getFrameFile(File directory, int imageNumber, String format) {
+        return new File(directory, "image-" + imageNumber + "." + format);
+    }
+
+    /**
+     * Writes the frame at t as "image-${imageNumber}" in the export directory. When re-exporting after a
+     * lattice edit, frames the edit did not change are left as they are and frames it changed a little are
+     * patched. Frames in the disk cache are copied from it; other frames are rendered, encoded, and added to it.
+     * @param renderer Renders the frames of the morph.
+     * @param previousRenderer Renders the frames already in the export directory, or null if there are none.
+     * @param t t of the frame.
+     * @param imageNumber The number to be attached to the image.
+     * @return The frame, to be shown while exporting.
+     */
+    public BufferedImage exportFrame(MorphRenderer renderer, MorphRenderer previousRenderer, double t,
+                                     int imageNumber) {
+        File output = getFrameFile(directory, imageNumber, format);
+
+        // the key includes the format, since the cache holds encoded files
+        String key = FrameCache.getKey(renderer.getFingerprint(), t) + "." + format;
+
+        // the part of the exported frame a lattice edit changed, or null if it has to be exported in full
+        Rectangle region = null;
+        if (previousRenderer != null && output.isFile())
+            region = renderer.getChangedRegion(previousRenderer, t);
+
+        // unchanged frames are not written at all
+        if (region != null && region.isEmpty()) {
+            BufferedImage image = readImage(output);
+
+            if (image != null)
+                return image;
+        }
+
+        if (diskCache != null && diskCache.copyTo(key, output)) {
+            BufferedImage image = readImage(output);
+
+            if (image != null)
+                return image;
+        }
+
+        if (region != null && !region.isEmpty()) {
+            BufferedImage image = patchFrame(renderer, previousRenderer, t, region, output, key);
+
+            if (image != null)
+                return image;
+        }
+
+        BufferedImage image = renderer.renderFrame(t);
+        byte[] encoded = encode(image);
+
+        if (encoded == null)
+            return image;
+
+        try {
+            FileUtils.writeAtomically(output, encoded);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+
+        if (diskCache != null)
+            diskCache.put(key, encoded);
+
+        return image;
+    }
+
+    /**
+     * Brings an exported frame up to date by re-rendering only the region a lattice edit changed. The rest of
+     * the frame comes from the frame cache if the previous frame is still there, or else from the file itself
+     * if it is a PNG. A JPEG is never patched from the file, since the pixels outside the edit would lose
+     * quality again every time it was re-encoded.
+     * @param renderer Renders the frames of the morph.
+     * @param previousRenderer Renders the frames already in the export directory.
+     * @param t t of the frame.
+     * @param region The region the edit changed.
+     * @param output The exported frame.
+     * @param key The disk cache key of the frame.
+     * @return The frame, or null if it has to be exported in full.
+     */
+    private BufferedImage patchFrame(MorphRenderer renderer, MorphRenderer previousRenderer, double t,
+                                     Rectangle region, File output, String key) {
+        BufferedImage previous = null;
+        if (frameCache != null)
+            previous = frameCache.get(FrameCache.getKey(previousRenderer.getFingerprint(), t));
+
+        // a decoded PNG is exact too; a decoded JPEG is not, so the frame is exported in full
+        if (previous == null && format.equals(FORMAT_PNG))
+            previous = readImage(output);
+
+        if (previous == null || previous.getWidth() != renderer.getWidth()
+                || previous.getHeight() != renderer.getHeight())
+            return null;
+
+        BufferedImage image = renderer.renderRegion(t, previous, region);
+        byte[] encoded = encode(image);
+
+        if (encoded == null)
+            return null;
+
+        try {
+            FileUtils.writeAtomically(output, encoded);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+
+        if (diskCache != null)
+            diskCache.put(key, encoded);
+
+        return image;
+    }
+
+    /**
+     * Reads an exported frame.
+     * @param file The frame.
+     * @return The frame, or null if it cannot be read.
+     */
+    private static BufferedImage readImage(File file) {
+        try {
+            return ImageIO.read(file);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encodes a frame in the export's format.
+     * @param image The frame.
+     * @return The file contents, or null if the frame cannot be encoded.
+     */
+    private byte[] encode(BufferedImage image) {
+        if (!format.equals(FORMAT_PNG))
+            return encodeImage(image);
+
+        try {
+            return PngEncoder.encode(image);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encodes an image as a JPEG, straight from its pixels and on several threads.
+     * @param image The image to be encoded.
+     * @return The JPEG file contents; empty if it cannot be encoded.
+     */
+    public static byte[] encodeImage(BufferedImage image) {
+        try {
+            return JpegEncoder.encode(image);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * File:       FrameRingBuffer.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Stores rendered frames off the Java heap in a single direct ByteBuffer, optionally compressed
+ *             with fast lossless deflate. Frames are written one after another around the buffer; once it is
+ *             full, the oldest frames are overwritten.
+ *
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class FrameRingBuffer {
+    // the off-heap memory the frames are stored in
+    private ByteBuffer buffer;
+
+    // whether frames are compressed before being stored
+    private boolean compress;
+
+    // width and height of the stored frames
+    private int width, height;
+
+    // offset and length of each stored frame in the buffer, keyed by frame index
+    private HashMap<Integer, int[]> frames;
+
+    // indices of the stored frames in the order they were stored
+    private ArrayDeque<Integer> storedOrder;
+
+    // where the next frame will be written
+    private int writePosition;
+
+    /**
+     * Constructor for FrameRingBuffer. If the requested amount of direct memory is not available, the
+     * capacity is halved until it is.
+     * @param capacity The number of bytes of off-heap memory to use.
+     * @param compress Whether frames are compressed before being stored.
+     */
+    public FrameRingBuffer(int capacity, boolean compress) {
+        this.compress = compress;
+
+        while (buffer == null) {
+            try {
+                buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+            } catch (OutOfMemoryError e) {
+                if (capacity < 1024 * 1024)
+                    throw e;
+                capacity /= 2;
+            }
+        }
+
+        frames = new HashMap<>();
+        storedOrder = new ArrayDeque<>();
+    }
+
+    /**
+     * @return The number of bytes of off-heap memory the buffer holds.
+     */
+    public int getCapacity() { return buffer.capacity(); }
+
+    /**
+     * @return Whether frames are compressed before being stored.
+     */
+    public boolean getCompress() { return compress; }
+
+    /**
+     * @return The number of frames currently stored.
+     */
+    public synchronized int getFrameCount() { return frames.size(); }
+
+    /**
+     * @return The number of bytes used by the stored frames.
+     */
+    public synchronized long getUsedBytes() {
+        long used = 0;
+
+        for (int[] frame : frames.values())
+            used += frame[1];
+
+        return used;
+    }
+
+    /**
+     * Removes all stored frames.
+     */
+    public synchronized void clear() {
+        frames.clear();
+        storedOrder.clear();
+        writePosition = 0;
+    }
+
+    /**
+     * Checks whether a frame is stored.
+     * @param index The index of the frame.
+     * @return Whether the frame is stored.
+     */
+    public synchronized boolean contains(int index) { return frames.containsKey(index); }
+
+    /**
+     * Stores a frame, overwriting the frames stored longest ago if there is not enough room. All frames must be
+     * the same size.
+     * @param index The index of the frame.
+     * @param frame The frame; must be in the canonical translucent layout (see ImageUtils).
+     * @return Whether the frame was stored; frames larger than the whole buffer are not.
+     */
+    public boolean put(int index, BufferedImage frame) {
+        byte[] data = encode(frame);
+
+        synchronized (this) {
+            if (data.length > buffer.capacity())
+                return false;
+
+            width = frame.getWidth();
+            height = frame.getHeight();
+
+            // wrap around to the start of the buffer if the frame does not fit at the end
+            if (writePosition + data.length > buffer.capacity())
+                writePosition = 0;
+
+            // overwrite any frames in the way
+            Iterator<Integer> stored = storedOrder.iterator();
+            while (stored.hasNext()) {
+                Integer storedIndex = stored.next();
+
+                if (overlaps(frames.get(storedIndex), writePosition, data.length)) {
+                    frames.remove(storedIndex);
+                    stored.remove();
+                }
+            }
+
+            // replace an older copy of the same frame
+            if (frames.remove(index) != null)
+                storedOrder.remove(index);
+
+            ByteBuffer destination = buffer.duplicate();
+            destination.position(writePosition);
+            destination.put(data);
+
+            frames.put(index, new int[]{writePosition, data.length});
+            storedOrder.addLast(index);
+            writePosition += data.length;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets a stored frame.
+     * @param index The index of the frame.
+     * @return The frame, or null if it is not stored.
+     */
+    public BufferedImage get(int index) {
+        byte[] data;
+        int frameWidth, frameHeight;
+
+        // copy the frame's bytes out while holding the lock; decoding can happen without it
+        synchronized (this) {
+            int[] location = frames.get(index);
+            if (location == null)
+                return null;
+
+            data = new byte[location[1]];
+            ByteBuffer source = buffer.duplicate();
+            source.position(location[0]);
+            source.get(data);
+
+            frameWidth = width;
+            frameHeight = height;
+        }
+
+        return decode(data, frameWidth, frameHeight);
+    }
+
+    /**
+     * Encodes the pixels of a frame as bytes, compressing them if compression is on.
+     * @param frame The frame.
+     * @return The encoded frame.
+     */
+    private byte[] encode(BufferedImage frame) {
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+
+        // copy of the packed pixels; getDataElements copies without converting the layout
+        int[] pixels = (int[]) frame.getRaster().getDataElements(0, 0, frameWidth, frameHeight, null);
+
+        if (compress) {
+            // neighbouring pixels are usually alike, so storing each pixel xor its left neighbour leaves
+            // mostly small values, which deflate much better; undone in decode
+            for (int y = 0; y < frameHeight; y++) {
+                int row = y * frameWidth;
+
+                for (int x = frameWidth - 1; x > 0; x--)
+                    pixels[row + x] ^= pixels[row + x - 1];
+            }
+        }
+
+        byte[] bytes = new byte[pixels.length * 4];
+        ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).asIntBuffer().put(pixels);
+
+        if (!compress)
+            return bytes;
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        // deflate can, rarely, make data slightly larger
+        byte[] compressed = new byte[bytes.length + bytes.length / 1000 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        deflater.end();
+
+        return Arrays.copyOf(compressed, length);
+    }
+
+    /**
+     * Decodes a frame stored by encode.
+     * @param data The encoded frame.
+     * @param frameWidth Width of the frame.
+     * @param frameHeight Height of the frame.
+     * @return The frame in the canonical translucent layout.
+     */
+    private BufferedImage decode(byte[] data, int frameWidth, int frameHeight) {
+        byte[] bytes = data;
+
+        if (compress) {
+            bytes = new byte[frameWidth * frameHeight * 4];
+
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(data);
+            try {
+                inflater.inflate(bytes);
+            } catch (DataFormatException e) {
+                System.err.println(e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        }
+
+        int[] pixels = new int[frameWidth * frameHeight];
+        ByteBuffer.wrap(bytes).order(ByteOrder.nativeOrder()).asIntBuffer().get(pixels);
+
+        if (compress) {
+            // undo the xor with the left neighbour
+            for (int y = 0; y < frameHeight; y++) {
+                int row = y * frameWidth;
+
+                for (int x = 1; x < frameWidth; x++)
+                    pixels[row + x] ^= pixels[row + x - 1];
+            }
+        }
+
+        BufferedImage frame = ImageUtils.createCompatibleImage(frameWidth, frameHeight, Transparency.TRANSLUCENT);
+        WritableRaster raster = frame.getRaster();
+        raster.setDataElements(0, 0, frameWidth, frameHeight, pixels);
+
+        return frame;
+    }
+
+    /**
+     * Checks whether a stored frame overlaps a range of the buffer.
+     * @param location Offset and length of the stored frame.
+     * @param offset Start of the range.
+     * @param length Length of the range.
+     * @return Whether they overlap.
+     */
+    private static boolean overlaps(int[] location, int offset, int length) {
+        return location[0] < offset + length && offset < location[0] + location[1];
+    }
+}
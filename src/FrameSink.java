@@ -0,0 +1,57 @@
+/*
+ * File:       FrameSink.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Destination for the frames of an exported morph that takes them one at a time, in order, and
+ *             writes them as they come, e.g. into a single video file, so that no more than one frame is
+ *             held in memory.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+public interface FrameSink extends Closeable {
+    /**
+     * Writes the next frame.
+     * @param frame The frame; must be the size the sink was opened with.
+     * @throws IOException If the frame cannot be written.
+     */
+    void writeFrame(BufferedImage frame) throws IOException;
+
+    /**
+     * Finishes the output, e.g. writing the index of a video file, and closes it.
+     * @throws IOException If the output cannot be finished.
+     */
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Opens a sink for a file, choosing the format from its extension: ".avi" for MJPEG in AVI, ".y4m" for
+     * raw YUV4MPEG2, and ".gif" for an animated GIF with a dithered palette per frame. A path of "-" writes
+     * YUV4MPEG2 to standard output, for piping into an encoder.
+     * @param path The path of the file, or "-".
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param frameRate Frames per second.
+     * @return The sink.
+     * @throws IOException If the file cannot be created or its extension is not a known format.
+     */
+    static FrameSink open(String path, int width, int height, int frameRate) throws IOException {
+        String lowerCasePath = path.toLowerCase();
+
+        if (path.equals("-"))
+            return new Y4mFrameSink(Channels.newChannel(System.out), width, height, frameRate);
+        else if (lowerCasePath.endsWith(".y4m"))
+            return new Y4mFrameSink(new File(path), width, height, frameRate);
+        else if (lowerCasePath.endsWith(".avi"))
+            return new AviFrameSink(new File(path), width, height, frameRate);
+        else if (lowerCasePath.endsWith(".gif"))
+            return new GifFrameSink(new File(path), width, height, frameRate, null, true);
+        else
+            throw new IOException("Unknown video format: " + path);
+    }
+}
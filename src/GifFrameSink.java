@@ -0,0 +1,355 @@
+/*
+ * File:       GifFrameSink.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Writes frames as a looping animated GIF. GIF has at most 256 colors a frame, so each frame is
+ *             quantized, either to its own palette or to one palette for the whole morph, on a pool of threads
+ *             several frames ahead of the one being written; frames are written in order through ImageIO's GIF
+ *             writer. Each frame after the first stores only the rectangle that differs from the frame before
+ *             it, and a frame that does not differ at all, e.g. at the end of a morph, lengthens the one before.
+ *
+ */
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class GifFrameSink implements FrameSink {
+    // the most colors a GIF frame can have
+    public static final int MAX_COLORS = 256;
+
+    // GIF frame delays are in hundredths of a second
+    private static final int DELAY_UNITS = 100;
+
+    private ImageWriter writer;
+    private ImageOutputStream stream;
+
+    // size of the frames, and frames per second
+    private int width, height, frameRate;
+
+    // palette shared by every frame, or null for a palette per frame; and whether frames are dithered
+    private int[] globalPalette;
+    private boolean dither;
+
+    // quantizes frames; frames waiting to be written, oldest first, and the most that may wait
+    private ExecutorService quantizePool;
+    private ArrayDeque<Future<Frame>> pending;
+    private int maxPending;
+
+    // number of frames handed to the sink so far
+    private int frameCount;
+
+    // the last frame quantized, not yet written since the frames after it may lengthen it
+    private Frame held;
+
+    // whether a frame has been written, so the loop extension has been
+    private boolean started;
+
+    /**
+     * A quantized frame, and the part of it that is written.
+     */
+    private static class Frame {
+        // palette of the frame, and the palette index of each pixel
+        int[] palette;
+        byte[] indices;
+
+        // the frames it is shown for, first and last
+        int first, last;
+
+        // the part that differs from the frame before it
+        Rectangle bounds;
+    }
+
+    /**
+     * Constructor for GifFrameSink.
+     * @param file The file to write; replaced if it exists.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param frameRate Frames per second.
+     * @param globalPalette Palette for every frame, as RGB ints, e.g. from ColorQuantizer.medianCut; or null to
+     *                      choose a palette for each frame.
+     * @param dither Whether frames are dithered to their palette.
+     * @throws IOException If the file cannot be created.
+     */
+    public GifFrameSink(File file, int width, int height, int frameRate, int[] globalPalette, boolean dither)
+            throws IOException {
+        this.width = width;
+        this.height = height;
+        this.frameRate = frameRate;
+        this.globalPalette = globalPalette;
+        this.dither = dither;
+
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
+        if (!writers.hasNext())
+            throw new IOException("No GIF writer available");
+        writer = writers.next();
+
+        // replace the file rather than writing over the start of it
+        if (file.exists() && !file.delete())
+            throw new IOException("Cannot replace " + file);
+
+        stream = ImageIO.createImageOutputStream(file);
+        if (stream == null)
+            throw new IOException("Cannot create " + file);
+
+        writer.setOutput(stream);
+        writer.prepareWriteSequence(null);
+
+        // quantize two frames ahead for each thread so none of them waits on the frame being written
+        int threads = Runtime.getRuntime().availableProcessors();
+        quantizePool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "GIF Quantize");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        pending = new ArrayDeque<>();
+        maxPending = 2 * threads;
+    }
+
+    /**
+     * Starts quantizing a frame, writing the oldest waiting frame if too many are waiting.
+     * @param frame The frame.
+     * @throws IOException If a frame cannot be quantized or written.
+     */
+    @Override
+    public void writeFrame(BufferedImage frame) throws IOException {
+        if (frame.getWidth() != width || frame.getHeight() != height)
+            throw new IOException("Frame is " + frame.getWidth() + "x" + frame.getHeight() + ", not "
+                                  + width + "x" + height);
+
+        // copy the pixels now, since the frame may be reused once this returns
+        final int[] pixels = frame.getRGB(0, 0, width, height, null, 0, width);
+        final int index = frameCount++;
+
+        pending.add(quantizePool.submit(new Callable<Frame>() {
+            @Override
+            public Frame call() {
+                return quantize(pixels, index);
+            }
+        }));
+
+        if (pending.size() > maxPending)
+            addFrame(waitFor(pending.poll()));
+    }
+
+    /**
+     * Writes the frames still waiting and finishes the file.
+     * @throws IOException If a frame cannot be quantized or the file cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pending.isEmpty())
+                addFrame(waitFor(pending.poll()));
+
+            if (held != null)
+                writeHeld();
+
+            writer.endWriteSequence();
+        } finally {
+            quantizePool.shutdownNow();
+            writer.dispose();
+            stream.close();
+        }
+    }
+
+    /**
+     * Quantizes a frame; runs on the quantize threads.
+     * @param pixels The frame's pixels, as RGB ints.
+     * @param index Number of the frame, from 0.
+     * @return The quantized frame.
+     */
+    private Frame quantize(int[] pixels, int index) {
+        Frame frame = new Frame();
+
+        frame.palette = globalPalette != null ? globalPalette : ColorQuantizer.medianCut(pixels, MAX_COLORS);
+        frame.indices = new ColorQuantizer(frame.palette).map(pixels, width, height, dither);
+        frame.first = index;
+        frame.last = index;
+
+        return frame;
+    }
+
+    /**
+     * Adds the next quantized frame. The frame before it is written now that it is known how long it is
+     * shown for; if the two do not differ, the frame before is shown longer instead.
+     * @param frame The frame.
+     * @throws IOException If the frame before cannot be written.
+     */
+    private void addFrame(Frame frame) throws IOException {
+        if (held == null) {
+            frame.bounds = new Rectangle(0, 0, width, height);
+            held = frame;
+            return;
+        }
+
+        frame.bounds = getChangedBounds(held, frame);
+
+        if (frame.bounds.isEmpty()) {
+            held.last = frame.last;
+        } else {
+            writeHeld();
+            held = frame;
+        }
+    }
+
+    /**
+     * Finds the pixels of a frame whose color differs from the frame before it. Everything outside the
+     * written part of a frame is unchanged from the frame before, so the whole of the frame before is what is
+     * on screen.
+     * @param previous The frame before.
+     * @param frame The frame.
+     * @return Bounds of the pixels that differ; empty if none do.
+     */
+    private Rectangle getChangedBounds(Frame previous, Frame frame) {
+        int minX = width, minY = height, maxX = -1, maxY = -1;
+
+        // a shared palette means equal indices are equal colors
+        boolean samePalette = previous.palette == frame.palette;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0, i = y * width; x < width; x++, i++) {
+                boolean changed;
+                if (samePalette)
+                    changed = previous.indices[i] != frame.indices[i];
+                else
+                    changed = previous.palette[previous.indices[i] & 0xff] != frame.palette[frame.indices[i] & 0xff];
+
+                if (changed) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    minY = Math.min(minY, y);
+                    maxY = y;
+                }
+            }
+        }
+
+        if (maxX < 0)
+            return new Rectangle();
+
+        return new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+    }
+
+    /**
+     * Writes the changed part of the held frame, shown until the frame after its last one.
+     * @throws IOException If the file cannot be written.
+     */
+    private void writeHeld() throws IOException {
+        Rectangle bounds = held.bounds;
+
+        // palettes have a power of two entries in a GIF; pad with black
+        int bits = 1;
+        while ((1 << bits) < held.palette.length)
+            bits++;
+
+        byte[] reds = new byte[1 << bits], greens = new byte[1 << bits], blues = new byte[1 << bits];
+        for (int i = 0; i < held.palette.length; i++) {
+            reds[i] = (byte) (held.palette[i] >> 16);
+            greens[i] = (byte) (held.palette[i] >> 8);
+            blues[i] = (byte) held.palette[i];
+        }
+
+        BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_INDEXED,
+                                                new IndexColorModel(bits, 1 << bits, reds, greens, blues));
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+
+        for (int y = 0; y < bounds.height; y++)
+            System.arraycopy(held.indices, (bounds.y + y) * width + bounds.x, data, y * bounds.width, bounds.width);
+
+        // shown until the frame after its last, rounded so delays add up to the frame times
+        int delay = Math.round((float) (held.last + 1) * DELAY_UNITS / frameRate)
+                    - Math.round((float) held.first * DELAY_UNITS / frameRate);
+
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        String format = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+
+        // each frame is drawn over the frames before it, so it only needs its changed part
+        IIOMetadataNode control = getChild(root, "GraphicControlExtension");
+        control.setAttribute("disposalMethod", "doNotDispose");
+        control.setAttribute("userInputFlag", "FALSE");
+        control.setAttribute("transparentColorFlag", "FALSE");
+        control.setAttribute("delayTime", Integer.toString(delay));
+        control.setAttribute("transparentColorIndex", "0");
+
+        IIOMetadataNode descriptor = getChild(root, "ImageDescriptor");
+        descriptor.setAttribute("imageLeftPosition", Integer.toString(bounds.x));
+        descriptor.setAttribute("imageTopPosition", Integer.toString(bounds.y));
+        descriptor.setAttribute("imageWidth", Integer.toString(bounds.width));
+        descriptor.setAttribute("imageHeight", Integer.toString(bounds.height));
+        descriptor.setAttribute("interlaceFlag", "FALSE");
+
+        // the first frame carries the extension that loops the animation forever
+        if (!started) {
+            IIOMetadataNode loop = new IIOMetadataNode("ApplicationExtension");
+            loop.setAttribute("applicationID", "NETSCAPE");
+            loop.setAttribute("authenticationCode", "2.0");
+            loop.setUserObject(new byte[]{ 1, 0, 0 });
+            getChild(root, "ApplicationExtensions").appendChild(loop);
+
+            started = true;
+        }
+
+        metadata.setFromTree(format, root);
+        writer.writeToSequence(new IIOImage(image, null, metadata), param);
+    }
+
+    /**
+     * Gets a child of a metadata node, adding it if there is none.
+     * @param node The node.
+     * @param name Name of the child.
+     * @return The child.
+     */
+    private static IIOMetadataNode getChild(IIOMetadataNode node, String name) {
+        for (int i = 0; i < node.getLength(); i++)
+            if (node.item(i).getNodeName().equals(name))
+                return (IIOMetadataNode) node.item(i);
+
+        IIOMetadataNode child = new IIOMetadataNode(name);
+        node.appendChild(child);
+
+        return child;
+    }
+
+    /**
+     * Waits for a frame to be quantized.
+     * @param future The frame.
+     * @return The quantized frame.
+     * @throws IOException If quantizing failed or the wait was interrupted.
+     */
+    private static Frame waitFor(Future<Frame> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while quantizing a frame");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot quantize a frame: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
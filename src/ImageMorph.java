@@ -2,7 +2,8 @@
  * File:       ImageMorph.java
  * Author:     Taylor Ecton
  *
- * Purpose:    Driver for program.
+ * Purpose:    Driver for program. Opens the window, or with command line arguments exports a saved project;
+ *             see ExportCoordinator.
  *
  */
 
@@ -13,6 +14,12 @@ import java.awt.event.WindowEvent;
 public class ImageMorph {
     // Main function
     public static void main(String[] args) {
+        // export a saved project from the command line without opening the window
+        if (args.length > 0) {
+            System.exit(ExportCoordinator.runCommand(args));
+            return;
+        }
+
         // create a new ImageMorphWindow
         ImageMorphWindow window = new ImageMorphWindow();
 
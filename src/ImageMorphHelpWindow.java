@@ -27,8 +27,11 @@ public class ImageMorphHelpWindow extends JFrame {
                 "image; both must be set in order to preview.\n\n" +
                 "Export a morph as a series of JPEGs using the 'Export...' " +
                 "option under the 'File' menu and select the directory where " +
-                "you want to save the images.\n\n" +
+                "you want to save the images. Lossless PNG images, or a single MJPEG AVI, " +
+                "Y4M video or animated GIF file, can be chosen in the Export settings.\n\n" +
                 "Can hide or show settings panel from Options in menu bar.\n\n" +
+                "'Show Live Preview' under Options opens a window showing " +
+                "one frame of the morph that updates as control points are moved.\n\n" +
                 "More features to come!"
         );
 
@@ -11,6 +11,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 public class ImageMorphIO {
@@ -71,7 +72,8 @@ public class ImageMorphIO {
         // try to write the file
         try {
             outputStream = new FileOutputStream(absolutePath);
-            outputStreamWriter = new OutputStreamWriter(outputStream);
+            // UTF-8 rather than the platform default, so image paths survive moving the file between machines
+            outputStreamWriter = new OutputStreamWriter(outputStream, StandardCharsets.UTF_8);
             printWriter = new PrintWriter(outputStreamWriter);
 
             // write the file lines to the file
@@ -107,7 +109,7 @@ public class ImageMorphIO {
      */
     public void read(String absolutePath) {
         // for reading the file
-        FileReader fileReader;
+        InputStreamReader fileReader;
         BufferedReader bufferedReader;
 
         // a line from the file
@@ -118,7 +120,8 @@ public class ImageMorphIO {
 
         // try to read the file
         try {
-            fileReader = new FileReader(absolutePath);
+            // UTF-8, matching write
+            fileReader = new InputStreamReader(new FileInputStream(absolutePath), StandardCharsets.UTF_8);
             bufferedReader = new BufferedReader(fileReader);
 
             // add all the lines to the file lines
@@ -139,12 +142,29 @@ public class ImageMorphIO {
         }
 
         // if reading was successful, process what was read
-        if (!fileLines.isEmpty())
-            processLines();
+        if (!fileLines.isEmpty()) {
+            MorphProjectFile projectFile;
+
+            try {
+                projectFile = new MorphProjectFile(fileLines);
+            } catch (IllegalArgumentException e) {
+                // the file is parsed before anything is changed, so the window keeps the current project
+                message = "Not a project file!";
+                title = "ERROR";
+                JOptionPane.showConfirmDialog(
+                        window, message, title, JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE
+                );
+
+                System.err.println(e.getMessage());
+                return;
+            }
+
+            processLines(projectFile);
+        }
     }
 
     /**
-     * Creates lines for saving file.
+     * Creates lines for saving file, in the layout MorphProjectFile reads.
      */
     private void generateFileLines() {
         // holds the coordinates that are currently being written
@@ -233,66 +253,27 @@ public class ImageMorphIO {
     }
 
     /**
-     * Processes lines from a file that has been read in.
+     * Loads a project that has been read in into the window.
+     * @param projectFile The values read from the file.
      */
-    private void processLines() {
-        // all the coordinates
-        int[][] xCoordsLeft, yCoordsLeft, xCoordsRight, yCoordsRight;
-
-        // integer values in file
-        int imagePanelWidth, imagePanelHeight, numberControlPoints, morphDuration;
-
-        // boolean values in file
-        boolean showEditorSettings, showControlPoints, showLattice;
-
-        // colors in file
-        Color primaryCPColor, highlightCPColor, primaryLColor, highlightLColor;
+    private void processLines(MorphProjectFile projectFile) {
+        // number of control points in each row and column
+        int numberControlPoints = projectFile.getNumberControlPoints();
 
         // paths of images
-        String imagePathLeft, imagePathRight;
-
-        // current index into fileLines
-        int currIndex = 0;
-
-        // check each component of the file in order
-        imagePanelWidth = Integer.parseInt(fileLines.get(currIndex));
-        currIndex++;
-
-        imagePanelHeight = Integer.parseInt(fileLines.get(currIndex));
-        currIndex++;
+        String imagePathLeft = projectFile.getImagePathLeft();
+        String imagePathRight = projectFile.getImagePathRight();
 
         // set the panel widths after loading the information in
-        setPanelWidthAndHeight(imagePanelWidth, imagePanelHeight);
-
-        showEditorSettings = fileLines.get(currIndex).equals("true");
-        currIndex++;
-
-        showControlPoints = fileLines.get(currIndex).equals("true");
-        currIndex++;
-
-        showLattice = fileLines.get(currIndex).equals("true");
-        currIndex++;
+        setPanelWidthAndHeight(projectFile.getPanelWidth(), projectFile.getPanelHeight());
 
         // set all the boolean values after reading them in
-        setBooleanValues(showEditorSettings, showControlPoints, showLattice);
-
-        primaryCPColor = stringToColor(fileLines.get(currIndex));
-        currIndex++;
-
-        highlightCPColor = stringToColor(fileLines.get(currIndex));
-        currIndex++;
-
-        primaryLColor = stringToColor(fileLines.get(currIndex));
-        currIndex++;
-
-        highlightLColor = stringToColor(fileLines.get(currIndex));
-        currIndex++;
+        setBooleanValues(projectFile.getShowEditorSettings(), projectFile.getShowControlPoints(),
+                         projectFile.getShowLattice());
 
         // set all the colors after reading them in
-        setColors(primaryCPColor, highlightCPColor, primaryLColor, highlightLColor);
-
-        numberControlPoints = Integer.parseInt(fileLines.get(currIndex));
-        currIndex++;
+        setColors(stringToColor(projectFile.getPrimaryCPColor()), stringToColor(projectFile.getHighlightCPColor()),
+                  stringToColor(projectFile.getPrimaryLColor()), stringToColor(projectFile.getHighlightLColor()));
 
         // selects the correct index in the settings panel for latticeResolutionSelector
         setLatticeResolutionSelectorIndex(numberControlPoints);
@@ -304,50 +285,6 @@ public class ImageMorphIO {
         leftPanel.initializeLattice();
         rightPanel.initializeLattice();
 
-        imagePathLeft = fileLines.get(currIndex);
-        currIndex++;
-
-        xCoordsLeft = new int[numberControlPoints][numberControlPoints];
-        yCoordsLeft = new int[numberControlPoints][numberControlPoints];
-
-        xCoordsRight = new int[numberControlPoints][numberControlPoints];
-        yCoordsRight = new int[numberControlPoints][numberControlPoints];
-
-        // set left panel x coordinates
-        for (int i = 0; i < numberControlPoints; i++) {
-            for (int j = 0; j < numberControlPoints; j++) {
-                xCoordsLeft[i][j] = Integer.parseInt(fileLines.get(currIndex));
-                currIndex++;
-            }
-        }
-
-        // set left panel y coordinates
-        for (int i = 0; i < numberControlPoints; i++) {
-            for (int j = 0; j < numberControlPoints; j++) {
-                yCoordsLeft[i][j] = Integer.parseInt(fileLines.get(currIndex));
-                currIndex++;
-            }
-        }
-
-        imagePathRight = fileLines.get(currIndex);
-        currIndex++;
-
-        // set right panel x coordinates
-        for (int i = 0; i < numberControlPoints; i++) {
-            for (int j = 0; j < numberControlPoints; j++) {
-                xCoordsRight[i][j] = Integer.parseInt(fileLines.get(currIndex));
-                currIndex++;
-            }
-        }
-
-        // set right panel y coordinates
-        for (int i = 0; i < numberControlPoints; i++) {
-            for (int j = 0; j < numberControlPoints; j++) {
-                yCoordsRight[i][j] = Integer.parseInt(fileLines.get(currIndex));
-                currIndex++;
-            }
-        }
-
         // load left image if there is one
         if (!imagePathLeft.equals("none"))
             loadImage(imagePathLeft, leftPanel, true);
@@ -365,19 +302,20 @@ public class ImageMorphIO {
         }
 
         // set all the coordinates after setting images; setting images can cause lattice to reset
-        leftPanel.setXCoords(xCoordsLeft);
-        leftPanel.setYCoords(yCoordsLeft);
-        rightPanel.setXCoords(xCoordsRight);
-        rightPanel.setYCoords(yCoordsRight);
-
-        morphDuration = Integer.parseInt(fileLines.get(currIndex));
+        leftPanel.setXCoords(projectFile.getStartXCoords());
+        leftPanel.setYCoords(projectFile.getStartYCoords());
+        rightPanel.setXCoords(projectFile.getEndXCoords());
+        rightPanel.setYCoords(projectFile.getEndYCoords());
 
         // set morph duration
-        setMorphDuration(morphDuration);
+        setMorphDuration(projectFile.getMorphDuration());
 
         // repaint the panels
         leftPanel.repaint();
         rightPanel.repaint();
+
+        // show the loaded morph in the live preview if it is open
+        window.getMorphController().scheduleLivePreview();
     }
 
     /**
@@ -14,7 +14,7 @@ public class ImageMorphMenu extends JMenuBar {
     private Color textColor = Color.WHITE;
     private Color backgroundColor = Color.BLACK;
 
-    private JCheckBoxMenuItem showEditorSettings;
+    private JCheckBoxMenuItem showEditorSettings, showLivePreview;
 
     /**
      * Constructor for custom menu bar.
@@ -37,6 +37,8 @@ public class ImageMorphMenu extends JMenuBar {
         // Options Menu Items
         showEditorSettings = new JCheckBoxMenuItem("Show Editor Settings");
         showEditorSettings.setState(true);
+        showLivePreview = new JCheckBoxMenuItem("Show Live Preview");
+        showLivePreview.setState(false);
 
         // Help Menu Items
         JMenuItem helpMenuItem = new JMenuItem("Help");
@@ -49,6 +51,7 @@ public class ImageMorphMenu extends JMenuBar {
         quitMenuItem.setActionCommand("Quit");
 
         showEditorSettings.setActionCommand("Show Editor Settings");
+        showLivePreview.setActionCommand("Show Live Preview");
 
         helpMenuItem.setActionCommand("Help");
 
@@ -60,6 +63,7 @@ public class ImageMorphMenu extends JMenuBar {
         quitMenuItem.addActionListener(menuListener);
 
         showEditorSettings.addActionListener(menuListener);
+        showLivePreview.addActionListener(menuListener);
 
         helpMenuItem.addActionListener(menuListener);
 
@@ -74,6 +78,7 @@ public class ImageMorphMenu extends JMenuBar {
 
         // Populate Options Menu
         optionsMenu.add(showEditorSettings);
+        optionsMenu.add(showLivePreview);
 
         // Populate Help Menu
         helpMenu.add(helpMenuItem);
@@ -85,4 +90,6 @@ public class ImageMorphMenu extends JMenuBar {
     }
 
     public JCheckBoxMenuItem getShowEditorSettings() { return showEditorSettings; }
+
+    public JCheckBoxMenuItem getShowLivePreview() { return showLivePreview; }
 }
@@ -70,6 +70,10 @@ public class ImageMorphMenuController implements ActionListener {
                 JCheckBoxMenuItem source = (JCheckBoxMenuItem) e.getSource();
                 toggleEditorSettings(source.getState());
                 break;
+            case "Show Live Preview":
+                JCheckBoxMenuItem livePreviewItem = (JCheckBoxMenuItem) e.getSource();
+                window.toggleLivePreview(livePreviewItem.getState());
+                break;
             case "Help":
                 // Display help window
                 help();
@@ -148,7 +152,7 @@ public class ImageMorphMenuController implements ActionListener {
     }
 
     /**
-     * Exports a project as a series of JPEG images
+     * Exports a project as a series of JPEG images, or as a video file in the format chosen in the settings
      */
     private void export() {
         int userChoice;
@@ -179,6 +183,21 @@ public class ImageMorphMenuController implements ActionListener {
             return;
         }
 
+        // video formats are saved to a single file rather than a directory
+        int exportFormat = window.getMorphController().getExportFormat();
+        if (!window.getMorphController().getExportsImages()) {
+            String extension;
+            if (exportFormat == MorphController.EXPORT_AVI)
+                extension = ".avi";
+            else if (exportFormat == MorphController.EXPORT_GIF)
+                extension = ".gif";
+            else
+                extension = ".y4m";
+
+            exportVideo(fileChooser, extension);
+            return;
+        }
+
         // supposed to only display directories; my experience has been that this does not work
         fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
         userChoice = fileChooser.showSaveDialog(window);
@@ -199,6 +218,27 @@ public class ImageMorphMenuController implements ActionListener {
         }
     }
 
+    /**
+     * Exports a project as a single video file.
+     * @param fileChooser The file chooser to pick the file with.
+     * @param extension The extension of the video format, e.g. ".avi".
+     */
+    private void exportVideo(JFileChooser fileChooser, String extension) {
+        fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+
+        if (fileChooser.showSaveDialog(window) == JFileChooser.APPROVE_OPTION) {
+            String filePath = fileChooser.getSelectedFile().getAbsolutePath();
+
+            // the format is chosen by the extension, so make sure it has one
+            if (!filePath.toLowerCase().endsWith(extension))
+                filePath += extension;
+
+            window.getMorphController().setExporting(true);
+            window.getMorphController().setExportFile(filePath);
+            window.getMorphController().morph();
+        }
+    }
+
     /**
      * Quits the project.
      */
@@ -52,6 +52,15 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
     // start image label; need reference to change it during preview animation
     private JLabel startImageLabel;
 
+    // surface that replaces the left image panel while a preview is playing
+    private PlaybackCanvas playbackCanvas;
+
+    // slider under the left panel for showing the morph at any point between the images
+    private JSlider scrubber;
+
+    // window showing a frame of the morph while the lattices are edited; null until it is first shown
+    private LivePreviewWindow livePreviewWindow;
+
     /**
      * Constructor for ImageMorphWindow class.
      */
@@ -143,6 +152,16 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
      */
     public JButton getPreviewButton() { return previewButton; }
 
+    /**
+     * @return LivePreviewWindow livePreviewWindow; null if it has never been shown
+     */
+    public LivePreviewWindow getLivePreviewWindow() { return livePreviewWindow; }
+
+    /**
+     * @return JSlider scrubber
+     */
+    public JSlider getScrubber() { return scrubber; }
+
     /**
      * @return the MorphController
      */
@@ -215,6 +234,69 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
         }
     }
 
+    /**
+     * Shows or hides the live preview window.
+     * @param visible Is the window visible?
+     */
+    public void toggleLivePreview(boolean visible) {
+        if (visible) {
+            if (livePreviewWindow == null) {
+                livePreviewWindow = new LivePreviewWindow(imagePanelWidth, imagePanelHeight);
+                livePreviewWindow.setDefaultCloseOperation(WindowConstants.HIDE_ON_CLOSE);
+
+                // keep the menu item in step when the window is closed itself
+                livePreviewWindow.addWindowListener(new WindowAdapter() {
+                    @Override
+                    public void windowClosing(WindowEvent e) {
+                        menu.getShowLivePreview().setState(false);
+                    }
+                });
+            }
+
+            livePreviewWindow.setVisible(true);
+            morphController.scheduleLivePreview();
+        } else if (livePreviewWindow != null) {
+            livePreviewWindow.setVisible(false);
+        }
+    }
+
+    /**
+     * Replaces the left image panel with a playback canvas of the same size for a preview to be played on.
+     * @return The playback canvas, with its buffers created.
+     */
+    public PlaybackCanvas showPlaybackCanvas() {
+        playbackCanvas = new PlaybackCanvas(imagePanelLeft.getWidth(), imagePanelLeft.getHeight());
+
+        // put the canvas in the same place as the image panel
+        int index = outerPanelLeft.getComponentZOrder(imagePanelLeft);
+        outerPanelLeft.remove(imagePanelLeft);
+        outerPanelLeft.add(playbackCanvas, index);
+
+        // lay the canvas out now; it must be displayable and sized before its buffers are created
+        outerPanelLeft.validate();
+        playbackCanvas.createBuffers();
+
+        return playbackCanvas;
+    }
+
+    /**
+     * Puts the left image panel back in place of the playback canvas.
+     */
+    public void hidePlaybackCanvas() {
+        if (playbackCanvas == null)
+            return;
+
+        playbackCanvas.disposeBuffers();
+
+        int index = outerPanelLeft.getComponentZOrder(playbackCanvas);
+        outerPanelLeft.remove(playbackCanvas);
+        outerPanelLeft.add(imagePanelLeft, index);
+        outerPanelLeft.revalidate();
+        outerPanelLeft.repaint();
+
+        playbackCanvas = null;
+    }
+
     /**
      * Create the image panels
      */
@@ -259,6 +341,15 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
         imagePanelRight.addMouseListener(morphController);
         imagePanelRight.addMouseMotionListener(morphController);
 
+        // scrubber positions are thousandths of the way from the start image to the end image
+        scrubber = new JSlider(JSlider.HORIZONTAL, 0, 1000, 0);
+        scrubber.setName("scrubber");
+        scrubber.setToolTipText("Show the morph at any point");
+        scrubber.setBackground(Color.BLACK);
+        scrubber.setOpaque(true);
+        scrubber.setPreferredSize(new Dimension(imagePanelWidth, 30));
+        scrubber.addChangeListener(morphController);
+
         // give the lattice controller references to panels
         morphController.setLeftPanel(imagePanelLeft);
         morphController.setRightPanel(imagePanelRight);
@@ -267,6 +358,7 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
         outerPanelLeft.add(startImageLabel, BorderLayout.NORTH);
         outerPanelLeft.add(imagePanelLeft, BorderLayout.CENTER);
         outerPanelLeft.add(loadImageButtonLeft, BorderLayout.SOUTH);
+        outerPanelLeft.add(scrubber);
 
         outerPanelRight.add(endImageLabel, BorderLayout.NORTH);
         outerPanelRight.add(imagePanelRight, BorderLayout.CENTER);
@@ -441,6 +533,8 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
                 panel.setImage(image, isLeftPanel);
                 panel.setImagePath(filePath);
                 panel.repaint();
+
+                morphController.scheduleLivePreview();
             } catch (IOException exception) {
                 System.err.println(exception.getMessage());
             }
@@ -464,6 +558,7 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
         imagePanelRight.initializeLattice();
 
         outerPanelLeft.setPreferredSize(new Dimension(imagePanelWidth, imagePanelHeight + 175));
+        scrubber.setPreferredSize(new Dimension(imagePanelWidth, 30));
 
         outerPanelRight.setPreferredSize(new Dimension(imagePanelWidth, imagePanelHeight + 175));
 
@@ -479,6 +574,9 @@ public class ImageMorphWindow extends JFrame implements MouseListener, ActionLis
 
         this.setSize(new Dimension(imagePanelWidth*2 + 285, imagePanelHeight + 175));
 
+        if (livePreviewWindow != null)
+            livePreviewWindow.setFrameSize(imagePanelWidth, imagePanelHeight);
+
         imagePanelLeft.repaint();
         imagePanelRight.repaint();
     }
@@ -19,6 +19,9 @@ public class ImagePanel extends JPanel {
     // the buffered image in the panel
     private BufferedImage image;
 
+    // frame of a morph shown in place of the image, scaled to fill the panel; null to show the image
+    private BufferedImage frame;
+
     // x and y coordinates for control points
     private int[][] xCoords, yCoords;
 
@@ -44,6 +47,16 @@ public class ImagePanel extends JPanel {
     private Color primaryCPColor, highlightedCPColor,
                   primaryLColor,  highlightedLColor;
 
+    // cached layer holding the drawn lattice and control points; blitted over the image when painting
+    private BufferedImage overlay;
+
+    // whether the whole overlay is up to date; if it is, only overlayDirtyRegion needs to be redrawn
+    private boolean overlayValid;
+    private Rectangle overlayDirtyRegion;
+
+    // whether the triangles and control points match the current coordinates
+    private boolean latticeValid;
+
     /**
      * Constructor for ImagePanel
      * @param width Width for the panel.
@@ -145,6 +158,7 @@ public class ImagePanel extends JPanel {
      * @return upperTriangles, the 2D array of upper triangles in the image
      */
     public Polygon[][] getUpperTriangles() {
+        updateLattice();
         return  upperTriangles;
     }
 
@@ -152,6 +166,7 @@ public class ImagePanel extends JPanel {
      * @return lowerTriangles, the 2D array of lower triangles in image
      */
     public Polygon[][] getLowerTriangles() {
+        updateLattice();
         return lowerTriangles;
     }
 
@@ -180,17 +195,30 @@ public class ImagePanel extends JPanel {
      */
     public BufferedImage getImage() { return image; }
 
+    /**
+     * @return The frame shown in place of the image, or null if the image is shown.
+     */
+    public BufferedImage getFrame() { return frame; }
+
     /**
      * Sets the width of the panel
      * @param newWidth width of panel
      */
-    public void setWidth(int newWidth) { width = newWidth; }
+    public void setWidth(int newWidth) {
+        width = newWidth;
+        latticeValid = false;
+        invalidateOverlay();
+    }
 
     /**
      * Sets the height of the panel
      * @param newHeight height of panel
      */
-    public void setHeight(int newHeight) { height = newHeight; }
+    public void setHeight(int newHeight) {
+        height = newHeight;
+        latticeValid = false;
+        invalidateOverlay();
+    }
 
     /**
      * Sets number of control points.
@@ -199,7 +227,8 @@ public class ImagePanel extends JPanel {
     public void setNumberControlPoints(int numberControlPoints) { this.numberControlPoints = numberControlPoints; }
 
     /**
-     * Sets the image that will be displayed in the panel.
+     * Sets the image that will be displayed in the panel. The image is converted to the canonical compatible
+     * layout (see ImageUtils) here, once, so that painting and morphing never have to convert it.
      * @param image BufferedImage that will be displayed.
      */
     public void setImage(BufferedImage image, boolean isLeftPanel) {
@@ -213,7 +242,7 @@ public class ImagePanel extends JPanel {
         // keeps aspect ratio of image in tact
         // sets dimensions for left image and then uses left image dimensions for right image
         if ((preScaledW * preScaledH) > (600 * 400) && isLeftPanel) {
-            BufferedImage afterScaling = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage afterScaling = ImageUtils.createCompatibleImage(width, height, image.getTransparency());
 
             double ratio = (double) preScaledW / (double) preScaledH;
 
@@ -229,7 +258,7 @@ public class ImagePanel extends JPanel {
             scaleOp.filter(image, afterScaling);
             this.image = afterScaling;
         } else if (!isLeftPanel && preScaledH != height && preScaledW != width) {
-            BufferedImage afterScaling = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            BufferedImage afterScaling = ImageUtils.createCompatibleImage(width, height, image.getTransparency());
 
             double scaleW = width / (preScaledW + 0.0);
             double scaleH = height / (preScaledH + 0.0);
@@ -243,12 +272,23 @@ public class ImagePanel extends JPanel {
             width = preScaledW;
             height = preScaledH;
 
-            this.image = image;
+            this.image = ImageUtils.toCompatibleImage(image);
         }
 
+        // the lattice border follows the image size
+        latticeValid = false;
+        invalidateOverlay();
+
         this.setPreferredSize(new Dimension(width, height));
     }
 
+    /**
+     * Shows a frame of a morph in place of the image without changing the image or the size of the panel.
+     * Frames smaller than the panel are scaled up to fill it.
+     * @param frame The frame, or null to show the image again.
+     */
+    public void setFrame(BufferedImage frame) { this.frame = frame; }
+
     /**
      * Sets the path of the image used in this panel.
      * Used for saving/loading configuration.
@@ -260,25 +300,39 @@ public class ImagePanel extends JPanel {
      * Sets boolean value showControlPoints
      * @param value The value showControlPoints will be set to.
      */
-    public void setShowControlPoints(boolean value) { showControlPoints = value; }
+    public void setShowControlPoints(boolean value) {
+        showControlPoints = value;
+        invalidateOverlay();
+    }
 
     /**
      * Sets boolean value showLattice
      * @param value The value showLattice will be set to
      */
-    public void setShowLattice(boolean value) { showLattice = value; }
+    public void setShowLattice(boolean value) {
+        showLattice = value;
+        invalidateOverlay();
+    }
 
     /**
      * Sets xCoords.
      * @param newCoords 2D array of updated xCoords
      */
-    public void setXCoords(int[][] newCoords) { xCoords = newCoords; }
+    public void setXCoords(int[][] newCoords) {
+        xCoords = newCoords;
+        latticeValid = false;
+        invalidateOverlay();
+    }
 
     /**
      * Sets yCoords.
      * @param newCoords 2D array of updated yCoords
      */
-    public void setYCoords(int[][] newCoords) { yCoords = newCoords; }
+    public void setYCoords(int[][] newCoords) {
+        yCoords = newCoords;
+        latticeValid = false;
+        invalidateOverlay();
+    }
 
     /**
      * Sets boolean value for isHighlighted[i][j] for single index into the 2D array, isHighlighted
@@ -290,31 +344,120 @@ public class ImagePanel extends JPanel {
         int j = indices[1];
 
         isHighlighted[i][j] = value;
+
+        // only the control point and the triangles around it change color
+        invalidateOverlay(getControlPointRegion(indices));
+    }
+
+    /**
+     * Moves a single control point and invalidates only the part of the overlay that it affects.
+     * @param indices The values i (indices[0]) and j (indices[1]) of the control point
+     * @param x The new x coordinate of the control point
+     * @param y The new y coordinate of the control point
+     * @return The region of the panel that needs to be repainted
+     */
+    public Rectangle moveControlPoint(int[] indices, int x, int y) {
+        int i = indices[0];
+        int j = indices[1];
+
+        // region covered by the control point before moving it
+        Rectangle dirtyRegion = getControlPointRegion(indices);
+
+        xCoords[i][j] = x;
+        yCoords[i][j] = y;
+
+        // recalculate the six triangles that share the control point, and the control point itself
+        lowerTriangles[i][j] = calculateLowerTriangle(i, j);
+        lowerTriangles[i][j+1] = calculateLowerTriangle(i, j+1);
+        lowerTriangles[i+1][j] = calculateLowerTriangle(i+1, j);
+        upperTriangles[i][j+1] = calculateUpperTriangle(i, j+1);
+        upperTriangles[i+1][j+1] = calculateUpperTriangle(i+1, j+1);
+        upperTriangles[i+1][j] = calculateUpperTriangle(i+1, j);
+        controlPoints[i][j] = calculateControlPoint(i, j);
+
+        // add the region covered after moving it
+        dirtyRegion.add(getControlPointRegion(indices));
+        invalidateOverlay(dirtyRegion);
+
+        return dirtyRegion;
+    }
+
+    /**
+     * Gets the region covered by a control point and the six triangles surrounding it.
+     * @param indices The values i (indices[0]) and j (indices[1]) of the control point
+     * @return The bounding rectangle of the control point and its surrounding triangles
+     */
+    public Rectangle getControlPointRegion(int[] indices) {
+        int i = indices[0];
+        int j = indices[1];
+
+        updateLattice();
+
+        Rectangle region = controlPoints[i][j].getBounds();
+        region.add(lowerTriangles[i][j].getBounds());
+        region.add(lowerTriangles[i][j+1].getBounds());
+        region.add(lowerTriangles[i+1][j].getBounds());
+        region.add(upperTriangles[i][j+1].getBounds());
+        region.add(upperTriangles[i+1][j+1].getBounds());
+        region.add(upperTriangles[i+1][j].getBounds());
+
+        // strokes are drawn one pixel past the bounds of the polygons
+        region.grow(1, 1);
+
+        return region;
+    }
+
+    /**
+     * Marks the whole overlay as needing to be redrawn; used when every part of the lattice changes.
+     */
+    public void invalidateOverlay() { overlayValid = false; }
+
+    /**
+     * Marks a region of the overlay as needing to be redrawn.
+     * @param region The region that changed
+     */
+    public void invalidateOverlay(Rectangle region) {
+        if (overlayDirtyRegion == null)
+            overlayDirtyRegion = new Rectangle(region);
+        else
+            overlayDirtyRegion.add(region);
     }
 
     /**
      * Sets color for control points and lattice when unselected
      * @param color The color they will be set to
      */
-    public void setPrimaryCPColor(Color color) { primaryCPColor = color; }
+    public void setPrimaryCPColor(Color color) {
+        primaryCPColor = color;
+        invalidateOverlay();
+    }
 
     /**
      * Sets color for control points and lattice when they are highlighted
      * @param color The color they will be set to when highlighted
      */
-    public void setHighlightedCPColor(Color color) { highlightedCPColor = color; }
+    public void setHighlightedCPColor(Color color) {
+        highlightedCPColor = color;
+        invalidateOverlay();
+    }
 
     /**
      * Sets the primary color for the lattice
      * @param color The color the lattice lines will be when not selected
      */
-    public void setPrimaryLColor(Color color) { primaryLColor = color; }
+    public void setPrimaryLColor(Color color) {
+        primaryLColor = color;
+        invalidateOverlay();
+    }
 
     /**
      * Sets the highlight color for the lattice lines.
      * @param color The color the lattice lines will be when selected.
      */
-    public void setHighlightedLColor(Color color) { highlightedLColor = color; }
+    public void setHighlightedLColor(Color color) {
+        highlightedLColor = color;
+        invalidateOverlay();
+    }
 
     /**
      * Used to get the width of the panel after adjusting for a new image; called before
@@ -372,6 +515,8 @@ public class ImagePanel extends JPanel {
      * @return An int[2] consisting of the indices of the controlPoint clicked or null if outside a control point
      */
     public int[] getControlPoint(Point click) {
+        updateLattice();
+
         for (int i = 0; i < numberControlPoints; i++) {
             for (int j = 0; j < numberControlPoints; j++) {
                 if (controlPoints[i][j].contains(click))
@@ -411,6 +556,8 @@ public class ImagePanel extends JPanel {
         int i = indices[0];
         int j = indices[1];
 
+        updateLattice();
+
         // check all the surrounding triangles
         return (lowerTriangles[i][j].contains(mouse) || lowerTriangles[i][j+1].contains(mouse)
                 || lowerTriangles[i+1][j].contains(mouse) || upperTriangles[i][j+1].contains(mouse)
@@ -419,37 +566,86 @@ public class ImagePanel extends JPanel {
 
     /**
      * Overrides the paintComponent method to allow for adding image and drawing
-     * control points and lattice.
+     * control points and lattice. The lattice and control points are kept in a cached overlay,
+     * so painting only blits the image and the overlay within the clip.
      * @param g The graphics context
      */
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        Graphics2D g2 = (Graphics2D) g;
-
-        // paint the image if there is one
-        if (image != null) {
+        // paint the frame in place of the image if there is one, otherwise the image if there is one
+        if (frame != null) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(frame, 0, 0, width, height, this);
+            g2.dispose();
+        } else if (image != null) {
             g.drawImage(image, 0, 0, this);
         }
 
-        // paint the lattice if it is visible
-        drawLowerTriangles(g2);
-        drawUpperTriangles(g2);
+        // redraw whatever changed in the overlay and paint it over the image
+        updateOverlay();
+        g.drawImage(overlay, 0, 0, this);
+    }
 
-        // update the control points and paint them if they're visible
-        updateControlPoints();
+    /**
+     * Redraws the parts of the overlay that have been invalidated since it was last painted.
+     */
+    private void updateOverlay() {
+        Rectangle region;
+
+        // the overlay has to be recreated if the panel has been resized
+        if (overlay == null || overlay.getWidth() != Math.max(width, 1) || overlay.getHeight() != Math.max(height, 1)) {
+            overlay = ImageUtils.createCompatibleImage(Math.max(width, 1), Math.max(height, 1),
+                                                       Transparency.TRANSLUCENT);
+            overlayValid = false;
+        }
+
+        // redraw the whole overlay or just the dirty region of it
+        if (!overlayValid)
+            region = new Rectangle(0, 0, overlay.getWidth(), overlay.getHeight());
+        else if (overlayDirtyRegion != null)
+            region = overlayDirtyRegion;
+        else
+            return;
+
+        updateLattice();
+
+        Graphics2D g2 = overlay.createGraphics();
+        g2.setClip(region);
+
+        // clear the region being redrawn
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(region.x, region.y, region.width, region.height);
+        g2.setComposite(AlphaComposite.SrcOver);
+
+        // draw the lattice if it is visible
+        if (showLattice) {
+            drawLowerTriangles(g2, region);
+            drawUpperTriangles(g2, region);
+        }
+
+        // draw the control points if they're visible
         if (showControlPoints)
-            drawControlPoints(g2);
+            drawControlPoints(g2, region);
+
+        g2.dispose();
+
+        overlayValid = true;
+        overlayDirtyRegion = null;
     }
 
     /**
-     * Draws the control points
+     * Draws the control points that fall within a region
      * @param g2 The graphics context
+     * @param region The region being redrawn
      */
-    private void drawControlPoints(Graphics2D g2) {
+    private void drawControlPoints(Graphics2D g2, Rectangle region) {
         for (int i = 0; i < numberControlPoints; i++) {
             for (int j = 0; j < numberControlPoints; j++) {
+                if (!intersects(controlPoints[i][j], region))
+                    continue;
 
                 if (!isHighlighted[i][j])
                     g2.setColor(primaryCPColor);
@@ -462,177 +658,241 @@ public class ImagePanel extends JPanel {
         }
     }
 
+    /**
+     * Recalculates the triangles and control points if the coordinates have changed since they were last calculated.
+     */
+    private void updateLattice() {
+        if (latticeValid)
+            return;
+
+        for (int i = 0; i < numberControlPoints+1; i++) {
+            for (int j = 0; j < numberControlPoints+1; j++) {
+                lowerTriangles[i][j] = calculateLowerTriangle(i, j);
+                upperTriangles[i][j] = calculateUpperTriangle(i, j);
+            }
+        }
+
+        updateControlPoints();
+
+        latticeValid = true;
+    }
+
     /**
      * Updates the control points positions (needed in case they aren't visible so they can be updated without drawing)
      */
     public void updateControlPoints() {
         for (int i = 0; i < numberControlPoints; i++) {
             for (int j = 0; j < numberControlPoints; j++) {
-                int currX = xCoords[i][j];
-                int currY = yCoords[i][j];
-
-                int[] controlPointXCoords = {currX, currX+5, currX, currX-5};
-                int[] controlPointYCoords = {currY-5, currY, currY+5, currY};
-
-                controlPoints[i][j] = new Polygon(controlPointXCoords, controlPointYCoords, 4);
+                controlPoints[i][j] = calculateControlPoint(i, j);
             }
         }
     }
 
     /**
-     * Draws lower triangles in lattice. Need to have references to both upper and lower triangles to check positions.
+     * Calculates the diamond drawn for a single control point.
+     * @param i The row of the control point
+     * @param j The column of the control point
+     * @return The polygon for the control point
+     */
+    private Polygon calculateControlPoint(int i, int j) {
+        int currX = xCoords[i][j];
+        int currY = yCoords[i][j];
+
+        int[] controlPointXCoords = {currX, currX+5, currX, currX-5};
+        int[] controlPointYCoords = {currY-5, currY, currY+5, currY};
+
+        return new Polygon(controlPointXCoords, controlPointYCoords, 4);
+    }
+
+    /**
+     * Draws lower triangles in lattice that fall within a region.
+     * @param g2 The graphics context
+     * @param region The region being redrawn
      */
-    private void drawLowerTriangles(Graphics2D g2) {
+    private void drawLowerTriangles(Graphics2D g2, Rectangle region) {
+        g2.setColor(primaryLColor);
+
         for (int i = 0; i < numberControlPoints+1; i++) {
             for (int j = 0; j < numberControlPoints+1; j++) {
-                // coordinates for the triangle
-                int[] triangleXCoords;
-                int[] triangleYCoords;
-
-                // coordinates for each corner of the triangle
-                int aX, aY, bX, bY, cX, cY;
-
-                g2.setColor(primaryLColor);
-
-                // set the coordinates of first corner
-                if (i == 0 && j == numberControlPoints) {
-                    aX = width;
-                    aY = 0;
-                } else if (i == 0) {
-                    aX = (int) widthOffset * (j + 1);
-                    aY = 0;
-                } else if (j == numberControlPoints) {
-                    aX = width;
-                    aY = (int) heightOffset * i;
-                } else {
-                    aX = xCoords[i-1][j];
-                    aY = yCoords[i-1][j];
-                }
-
-                // set coordinates of second corner
-                if (i == numberControlPoints && j == numberControlPoints) {
-                    bX = width;
-                    bY = height;
-                } else if (j == numberControlPoints) {
-                    bX = width;
-                    bY = (int) heightOffset * (i+1);
-                } else if (i == numberControlPoints) {
-                    bX = (int) widthOffset * (j+1);
-                    bY = height;
-                } else {
-                    bX = xCoords[i][j];
-                    bY = yCoords[i][j];
-                }
-
-                // set coordinates of third corner
-                if (j == 0 && i == numberControlPoints) {
-                    cX = 0;
-                    cY = height;
-                } else if (j == 0) {
-                    cX = 0;
-                    cY = (int) heightOffset * (i+1);
-                } else if (i == numberControlPoints) {
-                    cX = (int) widthOffset * j;
-                    cY = height;
-                } else {
-                    cX = xCoords[i][j-1];
-                    cY = yCoords[i][j-1];
-                }
-
-                // create coordinate arrays
-                triangleXCoords = new int[]{aX, bX, cX};
-                triangleYCoords = new int[]{aY, bY, cY};
-
-                // create triangle and draw it if it's visible
-                lowerTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
-                if (showLattice)
+                if (intersects(lowerTriangles[i][j], region))
                     g2.drawPolygon(lowerTriangles[i][j]);
             }
         }
     }
 
     /**
-     * Draws upper triangles in lattice
+     * Draws upper triangles in lattice that fall within a region; upper triangles touching a highlighted
+     * control point are drawn in the highlight color.
+     * @param g2 The graphics context
+     * @param region The region being redrawn
      */
-    private void drawUpperTriangles(Graphics2D g2) {
+    private void drawUpperTriangles(Graphics2D g2, Rectangle region) {
         for (int i = 0; i < numberControlPoints+1; i++) {
             for (int j = 0; j < numberControlPoints+1; j++) {
-                // coordinates for the triangle
-                int[] triangleXCoords;
-                int[] triangleYCoords;
-
-                // coordinates for each corner of the triangle
-                int aX, aY, bX, bY, cX, cY;
-
-                g2.setColor(primaryLColor);
-
-                // get coordinates for first corner
-                if (i == 0 && j == 0) {
-                    aX = 0;
-                    aY = 0;
-                } else if (i == 0) {
-                    aX = (int) widthOffset * j;
-                    aY = 0;
-                } else if (j == 0) {
-                    aX = 0;
-                    aY =(int) heightOffset * i;
-                } else {
-                    aX = xCoords[i-1][j-1];
-                    aY = yCoords[i-1][j-1];
-
-                    if (isHighlighted[i-1][j-1])
-                        g2.setColor(highlightedLColor);
-                }
-
-                // get coordinates for second corner
-                if (i == 0 && j == numberControlPoints) {
-                    bX = width;
-                    bY = 0;
-                } else if (j == numberControlPoints) {
-                    bX = width;
-                    bY = (int) heightOffset * i;
-                } else if (i == 0) {
-                    bX = (int) widthOffset * (j+1);
-                    bY = 0;
-                } else {
-                    bX = xCoords[i-1][j];
-                    bY = yCoords[i-1][j];
-
-                    if (isHighlighted[i-1][j])
-                        g2.setColor(highlightedLColor);
-                }
-
-                // get coordinates for third corner
-                if (j == 0 && i == numberControlPoints) {
-                    cX = 0;
-                    cY = height;
-                } else if (j == 0) {
-                    cX = 0;
-                    cY = (int) heightOffset * (i+1);
-                } else if (i == numberControlPoints) {
-                    cX = (int) widthOffset * j;
-                    cY = height;
-                } else {
-                    cX = xCoords[i][j-1];
-                    cY = yCoords[i][j-1];
-
-                    if (isHighlighted[i][j-1])
-                        g2.setColor(highlightedLColor);
-                }
-
-                // initialize coordinate arrays for this triangle
-                triangleXCoords = new int[]{aX, bX, cX};
-                triangleYCoords = new int[]{aY, bY, cY};
-
-                // create the triangle and draw it if it is visible
-                upperTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
-
-                if (showLattice)
-                    g2.drawPolygon(upperTriangles[i][j]);
+                if (!intersects(upperTriangles[i][j], region))
+                    continue;
+
+                // check each corner of the triangle that is a control point
+                if ((i > 0 && j > 0 && isHighlighted[i-1][j-1])
+                        || (i > 0 && j < numberControlPoints && isHighlighted[i-1][j])
+                        || (j > 0 && i < numberControlPoints && isHighlighted[i][j-1]))
+                    g2.setColor(highlightedLColor);
+                else
+                    g2.setColor(primaryLColor);
+
+                g2.drawPolygon(upperTriangles[i][j]);
             }
         }
     }
 
+    /**
+     * Checks if the outline of a polygon touches a region.
+     * @param polygon The polygon to check
+     * @param region The region being redrawn
+     * @return boolean indicating whether the polygon needs to be redrawn for the region
+     */
+    private boolean intersects(Polygon polygon, Rectangle region) {
+        Rectangle bounds = polygon.getBounds();
+
+        // strokes are drawn one pixel past the bounds of the polygons
+        bounds.grow(1, 1);
+
+        return bounds.intersects(region);
+    }
+
+    /**
+     * Calculates a lower triangle in the lattice. Need to have references to both upper and lower triangles to
+     * check positions.
+     * @param i The row of the triangle
+     * @param j The column of the triangle
+     * @return The lower triangle at the given indices
+     */
+    private Polygon calculateLowerTriangle(int i, int j) {
+        // coordinates for the triangle
+        int[] triangleXCoords;
+        int[] triangleYCoords;
+
+        // coordinates for each corner of the triangle
+        int aX, aY, bX, bY, cX, cY;
+
+        // set the coordinates of first corner
+        if (i == 0 && j == numberControlPoints) {
+            aX = width;
+            aY = 0;
+        } else if (i == 0) {
+            aX = (int) widthOffset * (j + 1);
+            aY = 0;
+        } else if (j == numberControlPoints) {
+            aX = width;
+            aY = (int) heightOffset * i;
+        } else {
+            aX = xCoords[i-1][j];
+            aY = yCoords[i-1][j];
+        }
+
+        // set coordinates of second corner
+        if (i == numberControlPoints && j == numberControlPoints) {
+            bX = width;
+            bY = height;
+        } else if (j == numberControlPoints) {
+            bX = width;
+            bY = (int) heightOffset * (i+1);
+        } else if (i == numberControlPoints) {
+            bX = (int) widthOffset * (j+1);
+            bY = height;
+        } else {
+            bX = xCoords[i][j];
+            bY = yCoords[i][j];
+        }
+
+        // set coordinates of third corner
+        if (j == 0 && i == numberControlPoints) {
+            cX = 0;
+            cY = height;
+        } else if (j == 0) {
+            cX = 0;
+            cY = (int) heightOffset * (i+1);
+        } else if (i == numberControlPoints) {
+            cX = (int) widthOffset * j;
+            cY = height;
+        } else {
+            cX = xCoords[i][j-1];
+            cY = yCoords[i][j-1];
+        }
+
+        // create coordinate arrays
+        triangleXCoords = new int[]{aX, bX, cX};
+        triangleYCoords = new int[]{aY, bY, cY};
+
+        return new Polygon(triangleXCoords, triangleYCoords, 3);
+    }
+
+    /**
+     * Calculates an upper triangle in the lattice.
+     * @param i The row of the triangle
+     * @param j The column of the triangle
+     * @return The upper triangle at the given indices
+     */
+    private Polygon calculateUpperTriangle(int i, int j) {
+        // coordinates for the triangle
+        int[] triangleXCoords;
+        int[] triangleYCoords;
+
+        // coordinates for each corner of the triangle
+        int aX, aY, bX, bY, cX, cY;
+
+        // get coordinates for first corner
+        if (i == 0 && j == 0) {
+            aX = 0;
+            aY = 0;
+        } else if (i == 0) {
+            aX = (int) widthOffset * j;
+            aY = 0;
+        } else if (j == 0) {
+            aX = 0;
+            aY =(int) heightOffset * i;
+        } else {
+            aX = xCoords[i-1][j-1];
+            aY = yCoords[i-1][j-1];
+        }
+
+        // get coordinates for second corner
+        if (i == 0 && j == numberControlPoints) {
+            bX = width;
+            bY = 0;
+        } else if (j == numberControlPoints) {
+            bX = width;
+            bY = (int) heightOffset * i;
+        } else if (i == 0) {
+            bX = (int) widthOffset * (j+1);
+            bY = 0;
+        } else {
+            bX = xCoords[i-1][j];
+            bY = yCoords[i-1][j];
+        }
+
+        // get coordinates for third corner
+        if (j == 0 && i == numberControlPoints) {
+            cX = 0;
+            cY = height;
+        } else if (j == 0) {
+            cX = 0;
+            cY = (int) heightOffset * (i+1);
+        } else if (i == numberControlPoints) {
+            cX = (int) widthOffset * j;
+            cY = height;
+        } else {
+            cX = xCoords[i][j-1];
+            cY = yCoords[i][j-1];
+        }
+
+        // initialize coordinate arrays for this triangle
+        triangleXCoords = new int[]{aX, bX, cX};
+        triangleYCoords = new int[]{aY, bY, cY};
+
+        return new Polygon(triangleXCoords, triangleYCoords, 3);
+    }
+
     /**
      * Sets initial control point coordinates based on size of panel and number of control points
      */
@@ -665,5 +925,9 @@ public class ImagePanel extends JPanel {
             }
             currY += heightOffset;
         }
+
+        // triangles and overlay have to be rebuilt for the new coordinates
+        latticeValid = false;
+        invalidateOverlay();
     }
 }
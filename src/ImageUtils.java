@@ -0,0 +1,84 @@
+/*
+ * File:       ImageUtils.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Helpers for creating images in the layout used for all working images in the program.
+ *
+ */
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class ImageUtils {
+    /**
+     * Creates an image compatible with the screen in the canonical packed int layout: TYPE_INT_RGB for opaque
+     * images and premultiplied TYPE_INT_ARGB_PRE for everything else. Images in these layouts are drawn and
+     * composited by Java2D's fast loops and can be cached on the graphics card as managed images.
+     * @param width The width of the image.
+     * @param height The height of the image.
+     * @param transparency Transparency.OPAQUE, BITMASK, or TRANSLUCENT.
+     * @return The new image.
+     */
+    public static BufferedImage createCompatibleImage(int width, int height, int transparency) {
+        BufferedImage image = null;
+
+        // let the screen create the image so its color model matches the screen exactly
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+
+            image = configuration.createCompatibleImage(width, height, getCanonicalTransparency(transparency));
+        }
+
+        // fall back to the canonical layout if there is no screen or its layout is something else
+        if (image == null || image.getType() != getCanonicalType(transparency))
+            image = new BufferedImage(width, height, getCanonicalType(transparency));
+
+        return image;
+    }
+
+    /**
+     * Converts an image to the canonical layout. Images already in the layout are returned as they are.
+     * @param image The image to convert.
+     * @return The image in the canonical layout.
+     */
+    public static BufferedImage toCompatibleImage(BufferedImage image) {
+        int transparency = image.getTransparency();
+
+        if (image.getType() == getCanonicalType(transparency))
+            return image;
+
+        BufferedImage converted = createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+
+        // copy the pixels over as they are rather than blending them onto the empty image
+        Graphics2D g2 = converted.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+
+        return converted;
+    }
+
+    /**
+     * @param transparency Transparency.OPAQUE, BITMASK, or TRANSLUCENT.
+     * @return The BufferedImage type used for images with the given transparency.
+     */
+    public static int getCanonicalType(int transparency) {
+        if (transparency == Transparency.OPAQUE)
+            return BufferedImage.TYPE_INT_RGB;
+        else
+            return BufferedImage.TYPE_INT_ARGB_PRE;
+    }
+
+    /**
+     * Bitmask images are stored as translucent images, since both use the premultiplied layout.
+     * @param transparency Transparency.OPAQUE, BITMASK, or TRANSLUCENT.
+     * @return Transparency.OPAQUE or Transparency.TRANSLUCENT.
+     */
+    private static int getCanonicalTransparency(int transparency) {
+        if (transparency == Transparency.OPAQUE)
+            return Transparency.OPAQUE;
+        else
+            return Transparency.TRANSLUCENT;
+    }
+}
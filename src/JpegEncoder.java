@@ -0,0 +1,594 @@
+/*
+ * File:       JpegEncoder.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Encodes frames as baseline JFIF JPEGs on several threads, in place of ImageIO's encoder. Pixels are
+ *             read straight from packed int rasters; color conversion, 4:2:0 subsampling, the DCT, quantization
+ *             and Huffman coding run in parallel over bands of MCU rows. A restart marker ends every MCU row, so
+ *             each band can be entropy coded on its own and the bands joined in order. The quantization and
+ *             Huffman tables are the standard ones, the same as ImageIO's at its default quality, built once
+ *             and shared by every frame.
+ *
+ */
+
+import javax.imageio.plugins.jpeg.JPEGHuffmanTable;
+import javax.imageio.plugins.jpeg.JPEGQTable;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class JpegEncoder {
+    // JPEG markers
+    private static final int SOI = 0xd8, EOI = 0xd9, APP0 = 0xe0, DQT = 0xdb, SOF0 = 0xc0, DHT = 0xc4,
+                             DRI = 0xdd, SOS = 0xda, RST0 = 0xd0;
+
+    // natural index of each coefficient in zigzag order
+    private static final int[] ZIGZAG = {
+             0,  1,  8, 16,  9,  2,  3, 10, 17, 24, 32, 25, 18, 11,  4,  5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13,  6,  7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    // scale factors of the AAN DCT, folded into the quantization divisors
+    private static final double[] AAN_SCALE = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    // quantization tables in natural order: the standard tables halved, ImageIO's default quality of 0.75
+    private static final int[] LUMA_QUANT = JPEGQTable.K1Div2Luminance.getTable();
+    private static final int[] CHROMA_QUANT = JPEGQTable.K2Div2Chrominance.getTable();
+
+    // reciprocals of the quantization divisors, with the DCT's scaling
+    private static final float[] LUMA_DIVISORS = getDivisors(LUMA_QUANT);
+    private static final float[] CHROMA_DIVISORS = getDivisors(CHROMA_QUANT);
+
+    // Huffman codes and their lengths for each symbol, from the standard tables
+    private static final HuffmanCode LUMA_DC = new HuffmanCode(JPEGHuffmanTable.StdDCLuminance);
+    private static final HuffmanCode LUMA_AC = new HuffmanCode(JPEGHuffmanTable.StdACLuminance);
+    private static final HuffmanCode CHROMA_DC = new HuffmanCode(JPEGHuffmanTable.StdDCChrominance);
+    private static final HuffmanCode CHROMA_AC = new HuffmanCode(JPEGHuffmanTable.StdACChrominance);
+
+    // the header up to the frame size, which is the same for every frame
+    private static final byte[] TABLES = createTables();
+
+    // MCU rows in a band; enough work per task to be worth handing to a thread
+    private static final int ROWS_PER_BAND = 4;
+
+    // threads bands are encoded on, shared by every encode
+    private static ExecutorService encodePool;
+
+    /**
+     * The code and code length of each symbol of a Huffman table.
+     */
+    private static class HuffmanCode {
+        // the table, for the file header
+        JPEGHuffmanTable table;
+
+        int[] codes = new int[256];
+        int[] lengths = new int[256];
+
+        /**
+         * Constructor for HuffmanCode; assigns codes to the symbols of a table in the canonical order.
+         * @param table The table.
+         */
+        HuffmanCode(JPEGHuffmanTable table) {
+            this.table = table;
+
+            short[] counts = table.getLengths();
+            short[] symbols = table.getValues();
+
+            int code = 0, symbol = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < counts[length - 1]; i++) {
+                    codes[symbols[symbol]] = code++;
+                    lengths[symbols[symbol]] = length;
+                    symbol++;
+                }
+
+                code <<= 1;
+            }
+        }
+    }
+
+    /**
+     * Entropy coded data of a band, with the stuffing of 0xff bytes that JPEG requires.
+     */
+    private static class BitWriter {
+        byte[] data = new byte[64 * 1024];
+        int length;
+
+        // bits not yet written, high bits first
+        int bits, bitCount;
+
+        /**
+         * Writes the low bits of a value, high bit first.
+         * @param value The value.
+         * @param count Number of bits.
+         */
+        void writeBits(int value, int count) {
+            bits = (bits << count) | (value & ((1 << count) - 1));
+            bitCount += count;
+
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                writeByte((bits >> bitCount) & 0xff);
+
+                // a data 0xff is followed by a zero so it is not read as a marker
+                if (((bits >> bitCount) & 0xff) == 0xff)
+                    writeByte(0);
+            }
+        }
+
+        /**
+         * Pads the last byte with ones, as the format requires before a marker.
+         */
+        void padToByte() {
+            if (bitCount > 0)
+                writeBits(0x7f, 8 - bitCount);
+        }
+
+        /**
+         * Writes a marker; the data must be padded first.
+         * @param marker The marker.
+         */
+        void writeMarker(int marker) {
+            writeByte(0xff);
+            writeByte(marker);
+        }
+
+        /**
+         * @param value The byte.
+         */
+        void writeByte(int value) {
+            if (length == data.length)
+                data = Arrays.copyOf(data, 2 * data.length);
+
+            data[length++] = (byte) value;
+        }
+    }
+
+    /**
+     * Encodes an image as a baseline JPEG. Alpha is dropped; premultiplied pixels are used as they are, which is
+     * the image drawn over black.
+     * @param image The image to be encoded.
+     * @return The JPEG file contents.
+     * @throws IOException If a band cannot be encoded.
+     */
+    public static byte[] encode(BufferedImage image) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int mcusPerRow = (width + 15) / 16;
+        int mcuRows = (height + 15) / 16;
+
+        ExecutorService pool = getEncodePool();
+        ArrayList<Future<BitWriter>> bands = new ArrayList<>();
+
+        for (int first = 0; first < mcuRows; first += ROWS_PER_BAND) {
+            final int start = first;
+            final int end = Math.min(first + ROWS_PER_BAND, mcuRows);
+            final boolean last = end == mcuRows;
+
+            bands.add(pool.submit(new Callable<BitWriter>() {
+                @Override
+                public BitWriter call() {
+                    return encodeBand(image, start, end, last);
+                }
+            }));
+        }
+
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream(width * height / 4);
+        jpeg.write(TABLES, 0, TABLES.length);
+
+        // frame header: 8 bit samples, the size, and three components with luma sampled twice as often
+        writeMarker(jpeg, SOF0, 17);
+        jpeg.write(8);
+        writeShort(jpeg, height);
+        writeShort(jpeg, width);
+        jpeg.write(3);
+        jpeg.write(new byte[]{ 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1 }, 0, 9);
+
+        // a restart after every MCU row
+        writeMarker(jpeg, DRI, 4);
+        writeShort(jpeg, mcusPerRow);
+
+        // scan header: all three components, luma with tables 0 and chroma with tables 1
+        writeMarker(jpeg, SOS, 12);
+        jpeg.write(new byte[]{ 3, 1, 0x00, 2, 0x11, 3, 0x11, 0, 63, 0 }, 0, 10);
+
+        for (Future<BitWriter> band : bands) {
+            BitWriter data = waitFor(band);
+            jpeg.write(data.data, 0, data.length);
+        }
+
+        jpeg.write(0xff);
+        jpeg.write(EOI);
+
+        return jpeg.toByteArray();
+    }
+
+    /**
+     * Encodes a band of MCU rows, each 16 pixel rows with four luma blocks and one block of each chroma
+     * component per MCU; runs on the encode threads.
+     * @param image The image.
+     * @param start The first MCU row.
+     * @param end The MCU row after the last.
+     * @param last Whether the band ends the image, so its last row has no restart marker after it.
+     * @return The entropy coded band.
+     */
+    private static BitWriter encodeBand(BufferedImage image, int start, int end, boolean last) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int mcusPerRow = (width + 15) / 16;
+        int paddedWidth = 16 * mcusPerRow;
+
+        // pixels of an MCU row, and its planes; edges past the image repeat the last column and row
+        int[] pixels = new int[16 * paddedWidth];
+        float[] luma = new float[16 * paddedWidth];
+        float[] cb = new float[8 * (paddedWidth / 2)];
+        float[] cr = new float[8 * (paddedWidth / 2)];
+
+        float[] block = new float[64];
+        int[] coefficients = new int[64];
+        BitWriter writer = new BitWriter();
+
+        for (int mcuRow = start; mcuRow < end; mcuRow++) {
+            readRows(image, 16 * mcuRow, pixels, paddedWidth);
+
+            // convert to Y'CbCr, shifted to be centered on 0 for the DCT
+            for (int i = 0; i < pixels.length; i++) {
+                int r = (pixels[i] >> 16) & 0xff, g = (pixels[i] >> 8) & 0xff, b = pixels[i] & 0xff;
+                luma[i] = 0.299f * r + 0.587f * g + 0.114f * b - 128;
+            }
+
+            for (int y = 0; y < 8; y++) {
+                for (int x = 0; x < paddedWidth / 2; x++) {
+                    int i = 2 * y * paddedWidth + 2 * x;
+                    int p0 = pixels[i], p1 = pixels[i + 1], p2 = pixels[i + paddedWidth], p3 = pixels[i + paddedWidth + 1];
+
+                    // the average of the 2x2 block
+                    float r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff)) / 4f;
+                    float g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff)) / 4f;
+                    float b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff)) / 4f;
+
+                    cb[y * (paddedWidth / 2) + x] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                    cr[y * (paddedWidth / 2) + x] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+                }
+            }
+
+            // predictions of the DC coefficients restart with each row
+            int lumaDc = 0, cbDc = 0, crDc = 0;
+
+            for (int mcu = 0; mcu < mcusPerRow; mcu++) {
+                for (int blockY = 0; blockY < 2; blockY++) {
+                    for (int blockX = 0; blockX < 2; blockX++) {
+                        copyBlock(luma, paddedWidth, 16 * mcu + 8 * blockX, 8 * blockY, block);
+                        lumaDc = encodeBlock(writer, block, coefficients, LUMA_DIVISORS, lumaDc, LUMA_DC, LUMA_AC);
+                    }
+                }
+
+                copyBlock(cb, paddedWidth / 2, 8 * mcu, 0, block);
+                cbDc = encodeBlock(writer, block, coefficients, CHROMA_DIVISORS, cbDc, CHROMA_DC, CHROMA_AC);
+
+                copyBlock(cr, paddedWidth / 2, 8 * mcu, 0, block);
+                crDc = encodeBlock(writer, block, coefficients, CHROMA_DIVISORS, crDc, CHROMA_DC, CHROMA_AC);
+            }
+
+            writer.padToByte();
+
+            if (!(last && mcuRow == end - 1))
+                writer.writeMarker(RST0 + mcuRow % 8);
+        }
+
+        return writer;
+    }
+
+    /**
+     * Reads 16 rows of pixels, straight from the raster when the image is in a packed int RGB layout.
+     * Rows and columns past the edge of the image repeat the last ones.
+     * @param image The image.
+     * @param top The first row.
+     * @param pixels The pixels, written as RGB ints.
+     * @param paddedWidth Width of the rows in pixels.
+     */
+    private static void readRows(BufferedImage image, int top, int[] pixels, int paddedWidth) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        int[] data = null;
+        int offset = 0, stride = 0;
+
+        // opaque and premultiplied packed layouts can be read as they are
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt
+                && image.getSampleModel() instanceof SinglePixelPackedSampleModel
+                && image.getColorModel() instanceof DirectColorModel
+                && (!image.getColorModel().hasAlpha() || image.getColorModel().isAlphaPremultiplied())) {
+            DirectColorModel colorModel = (DirectColorModel) image.getColorModel();
+
+            if (colorModel.getRedMask() == 0xff0000 && colorModel.getGreenMask() == 0xff00
+                    && colorModel.getBlueMask() == 0xff && image.getRaster().getParent() == null) {
+                SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) image.getSampleModel();
+
+                data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                offset = image.getRaster().getDataBuffer().getOffset();
+                stride = sampleModel.getScanlineStride();
+            }
+        }
+
+        for (int y = 0; y < 16; y++) {
+            int row = Math.min(top + y, height - 1);
+            int rowStart = y * paddedWidth;
+
+            if (data != null) {
+                System.arraycopy(data, offset + row * stride, pixels, rowStart, width);
+            } else {
+                image.getRGB(0, row, width, 1, pixels, rowStart, width);
+
+                // non-premultiplied alpha is drawn over black, as for the other layouts
+                if (image.getColorModel().hasAlpha()) {
+                    for (int x = rowStart; x < rowStart + width; x++) {
+                        int alpha = pixels[x] >>> 24;
+
+                        if (alpha != 0xff)
+                            pixels[x] = (((pixels[x] >> 16) & 0xff) * alpha / 255) << 16
+                                        | (((pixels[x] >> 8) & 0xff) * alpha / 255) << 8
+                                        | (pixels[x] & 0xff) * alpha / 255;
+                    }
+                }
+            }
+
+            Arrays.fill(pixels, rowStart + width, rowStart + paddedWidth, pixels[rowStart + width - 1]);
+        }
+    }
+
+    /**
+     * Copies an 8x8 block out of a plane.
+     * @param plane The plane.
+     * @param planeWidth Width of the plane.
+     * @param left Left of the block.
+     * @param top Top of the block.
+     * @param block The block, written.
+     */
+    private static void copyBlock(float[] plane, int planeWidth, int left, int top, float[] block) {
+        for (int y = 0; y < 8; y++)
+            System.arraycopy(plane, (top + y) * planeWidth + left, block, 8 * y, 8);
+    }
+
+    /**
+     * Transforms, quantizes and Huffman codes a block.
+     * @param writer The band's data.
+     * @param block The block's samples, centered on 0; overwritten.
+     * @param coefficients Space for the quantized coefficients.
+     * @param divisors The quantization divisors.
+     * @param previousDc The DC coefficient of the last block of the same component, which it is coded from.
+     * @param dcCode Huffman code for DC coefficients.
+     * @param acCode Huffman code for AC coefficients.
+     * @return The block's DC coefficient.
+     */
+    private static int encodeBlock(BitWriter writer, float[] block, int[] coefficients, float[] divisors,
+                                   int previousDc, HuffmanCode dcCode, HuffmanCode acCode) {
+        forwardDct(block);
+
+        for (int i = 0; i < 64; i++)
+            coefficients[i] = Math.round(block[ZIGZAG[i]] * divisors[ZIGZAG[i]]);
+
+        int difference = coefficients[0] - previousDc;
+        int size = bitLength(difference);
+        writer.writeBits(dcCode.codes[size], dcCode.lengths[size]);
+        if (size > 0)
+            writer.writeBits(difference < 0 ? difference - 1 : difference, size);
+
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int coefficient = coefficients[i];
+
+            if (coefficient == 0) {
+                run++;
+                continue;
+            }
+
+            // runs of sixteen zeros have their own symbol
+            while (run > 15) {
+                writer.writeBits(acCode.codes[0xf0], acCode.lengths[0xf0]);
+                run -= 16;
+            }
+
+            size = bitLength(coefficient);
+            int symbol = (run << 4) | size;
+            writer.writeBits(acCode.codes[symbol], acCode.lengths[symbol]);
+            writer.writeBits(coefficient < 0 ? coefficient - 1 : coefficient, size);
+
+            run = 0;
+        }
+
+        // end of block, unless the last coefficient was not zero
+        if (run > 0)
+            writer.writeBits(acCode.codes[0], acCode.lengths[0]);
+
+        return coefficients[0];
+    }
+
+    /**
+     * The AAN forward DCT in place, rows then columns; its output is scaled by the factors in AAN_SCALE, which
+     * the quantization divisors undo.
+     * @param data The block, row by row.
+     */
+    private static void forwardDct(float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            // rows in the first pass, columns in the second
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+
+            for (int line = 0, base = 0; line < 8; line++, base += next) {
+                float d0 = data[base], d1 = data[base + step], d2 = data[base + 2 * step], d3 = data[base + 3 * step];
+                float d4 = data[base + 4 * step], d5 = data[base + 5 * step], d6 = data[base + 6 * step];
+                float d7 = data[base + 7 * step];
+
+                float tmp0 = d0 + d7, tmp7 = d0 - d7, tmp1 = d1 + d6, tmp6 = d1 - d6;
+                float tmp2 = d2 + d5, tmp5 = d2 - d5, tmp3 = d3 + d4, tmp4 = d3 - d4;
+
+                // even part
+                float tmp10 = tmp0 + tmp3, tmp13 = tmp0 - tmp3, tmp11 = tmp1 + tmp2, tmp12 = tmp1 - tmp2;
+
+                data[base] = tmp10 + tmp11;
+                data[base + 4 * step] = tmp10 - tmp11;
+
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[base + 2 * step] = tmp13 + z1;
+                data[base + 6 * step] = tmp13 - z1;
+
+                // odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+
+                float z11 = tmp7 + z3, z13 = tmp7 - z3;
+
+                data[base + 5 * step] = z13 + z2;
+                data[base + 3 * step] = z13 - z2;
+                data[base + step] = z11 + z4;
+                data[base + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    /**
+     * @param value A coefficient or difference.
+     * @return The number of bits of its magnitude, its JPEG size category.
+     */
+    private static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    /**
+     * @param table A quantization table, in natural order.
+     * @return What each DCT output is multiplied by to quantize it.
+     */
+    private static float[] getDivisors(int[] table) {
+        float[] divisors = new float[64];
+
+        for (int row = 0; row < 8; row++)
+            for (int column = 0; column < 8; column++)
+                divisors[8 * row + column] = (float) (1.0 / (table[8 * row + column] * AAN_SCALE[row]
+                                                             * AAN_SCALE[column] * 8.0));
+
+        return divisors;
+    }
+
+    /**
+     * Creates the start of every file: the JFIF header, and the quantization and Huffman tables.
+     * @return The bytes.
+     */
+    private static byte[] createTables() {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+        header.write(0xff);
+        header.write(SOI);
+
+        // JFIF 1.01, square pixels
+        writeMarker(header, APP0, 16);
+        header.write(new byte[]{ 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0 }, 0, 14);
+
+        // quantization tables in zigzag order
+        writeMarker(header, DQT, 2 + 2 * 65);
+        int[][] tables = { LUMA_QUANT, CHROMA_QUANT };
+        for (int id = 0; id < 2; id++) {
+            header.write(id);
+            for (int i = 0; i < 64; i++)
+                header.write(tables[id][ZIGZAG[i]]);
+        }
+
+        // Huffman tables: class 0 for DC, 1 for AC, in the upper half of the id
+        HuffmanCode[] codes = { LUMA_DC, LUMA_AC, CHROMA_DC, CHROMA_AC };
+        int[] ids = { 0x00, 0x10, 0x01, 0x11 };
+
+        int length = 2;
+        for (HuffmanCode code : codes)
+            length += 17 + code.table.getValues().length;
+
+        writeMarker(header, DHT, length);
+        for (int i = 0; i < codes.length; i++) {
+            header.write(ids[i]);
+            for (short count : codes[i].table.getLengths())
+                header.write(count);
+            for (short symbol : codes[i].table.getValues())
+                header.write(symbol);
+        }
+
+        return header.toByteArray();
+    }
+
+    /**
+     * Writes a marker and the length of the segment after it.
+     * @param output The file being written.
+     * @param marker The marker.
+     * @param length Length of the segment, including the length itself.
+     */
+    private static void writeMarker(ByteArrayOutputStream output, int marker, int length) {
+        output.write(0xff);
+        output.write(marker);
+        writeShort(output, length);
+    }
+
+    /**
+     * @param output The file being written.
+     * @param value A 16 bit big-endian value to write.
+     */
+    private static void writeShort(ByteArrayOutputStream output, int value) {
+        output.write(value >> 8);
+        output.write(value);
+    }
+
+    /**
+     * @return The threads bands are encoded on, started the first time they are needed.
+     */
+    private static synchronized ExecutorService getEncodePool() {
+        if (encodePool == null) {
+            encodePool = Executors.newFixedThreadPool(ExportCoordinator.getEncodeThreads(),
+                                                      new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "JPEG Encode");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return encodePool;
+    }
+
+    /**
+     * Waits for a band to be encoded.
+     * @param future The task.
+     * @return The band.
+     * @throws IOException If the task failed or the wait was interrupted.
+     */
+    private static BitWriter waitFor(Future<BitWriter> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding a JPEG");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot encode a JPEG: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
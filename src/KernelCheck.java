@@ -0,0 +1,386 @@
+/*
+ * File:       KernelCheck.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Checks the pixel kernels from the command line. The packed and per-channel PixelKernels are run
+ *             on the same random pixels, points, and weights and must give the same colour to the bit, and each
+ *             kernel's speed is measured on both paths. Then frames of a fixed test morph are rendered from warp
+ *             maps by two separate renderers, on both kernel paths, and must match each other and a golden
+ *             SHA-256 of their pixels recorded when the kernels were written; since everything after the
+ *             lattice is integer arithmetic, any JVM on any CPU gives the same frames. How far the frames are
+ *             from Java2D's floating point ones is printed too. Run with --check; the exit status is 0 if every
+ *             result matched. --check-frames checks just the frames, with the kernels this JVM uses.
+ *
+ *             java ImageMorph --check
+ *             java ImageMorph --check-frames
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+public class KernelCheck {
+    // random points sampled and colours blended when comparing the two paths
+    private static final int COMPARED_SAMPLES = 2000000;
+
+    // size of the image the kernels are timed on, the samples in each timed pass, and the passes on each
+    // path; the fastest pass is reported so warm-up and other programs count as little as possible
+    private static final int TIMED_WIDTH = 640, TIMED_HEIGHT = 480;
+    private static final int TIMED_SAMPLES = TIMED_WIDTH * TIMED_HEIGHT;
+    private static final int TIMED_PASSES = 15;
+
+    // the kernels
+    private static final int BILINEAR = 0, BICUBIC = 1, BLEND = 2;
+    private static final String[] KERNEL_NAMES = { "bilinear", "bicubic", "blend" };
+
+    // size of the test morph's images, its control points in each row and column, and the frames checked
+    private static final int FRAME_WIDTH = 120, FRAME_HEIGHT = 90;
+    private static final int FRAME_CONTROL_POINTS = 5;
+    private static final double[] FRAME_TIMES = { 0.25, 0.5, 0.8 };
+
+    // SHA-256 of the ARGB pixels of the test frames, in order
+    private static final String FRAMES_GOLDEN = "47768fd2a950ae49625658e02c973dcddc4a3af6aeb72068cab1727ba7fedc20";
+
+    // keeps the timed results in use so the JIT cannot drop the work
+    private static int sink;
+
+    /**
+     * Runs the check and prints what it found.
+     * @return The exit status: 0 if the packed and per-channel kernels agree.
+     */
+    public static int run() {
+        Random random = new Random(1);
+        int mismatches = compareKernels(random);
+
+        System.out.println("Compared " + COMPARED_SAMPLES + " bilinear and bicubic samples and blends: "
+                           + (mismatches == 0 ? "identical" : mismatches + " differ"));
+
+        timeKernels(random);
+
+        // the frames on this JVM's kernels, then on the other kernels in a JVM of their own
+        int status = runFrames();
+        if (status == 0)
+            status = runFramesOnOtherKernels();
+
+        return mismatches == 0 ? status : 1;
+    }
+
+    /**
+     * Renders the test frames twice from warp maps, each time with a new renderer and warp map cache, and
+     * checks that they match each other and the golden digest.
+     * @return The exit status: 0 if the frames are the same every time and match the golden digest.
+     */
+    public static int runFrames() {
+        String kernels = PixelKernels.isPacked() ? "packed" : "scalar";
+        MessageDigest digest = DigestUtils.createSha256();
+        boolean repeatable = true;
+
+        MorphRenderer first = createTestRenderer(true), second = createTestRenderer(true);
+        MorphRenderer java2D = createTestRenderer(false);
+
+        for (double t : FRAME_TIMES) {
+            int[] pixels = getPixels(first.renderFrame(t));
+
+            if (!Arrays.equals(pixels, getPixels(second.renderFrame(t)))) {
+                System.err.println("Frame at t = " + t + " differs between renders on the " + kernels + " kernels");
+                repeatable = false;
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate(pixels.length * 4);
+            bytes.asIntBuffer().put(pixels);
+            digest.update(bytes.array());
+
+            System.out.println(String.format("Frame at t = %.2f is %.1f dB PSNR from the Java2D frame", t,
+                                             getPsnr(pixels, getPixels(java2D.renderFrame(t)))));
+        }
+
+        String hash = DigestUtils.toHex(digest.digest());
+        boolean golden = hash.equals(FRAMES_GOLDEN);
+
+        System.out.println("Frames on the " + kernels + " kernels: " + (repeatable ? "repeatable" : "not repeatable")
+                           + ", " + (golden ? "match the golden digest" : "digest " + hash + " is not the golden one"));
+
+        return repeatable && golden ? 0 : 1;
+    }
+
+    /**
+     * Runs --check-frames in another JVM with the kernels this one does not use, so both paths are checked
+     * against the golden digest.
+     * @return The exit status of the other JVM.
+     */
+    private static int runFramesOnOtherKernels() {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String kernels = PixelKernels.isPacked() ? "scalar" : "packed";
+
+        ProcessBuilder builder = new ProcessBuilder(java, "-Djava.awt.headless=true",
+                                                    "-Dimagemorph.kernels=" + kernels,
+                                                    "-cp", System.getProperty("java.class.path"),
+                                                    "ImageMorph", "--check-frames");
+        builder.inheritIO();
+
+        try {
+            return builder.start().waitFor();
+        } catch (IOException e) {
+            System.err.println("Cannot check the " + kernels + " kernels: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+    }
+
+    /**
+     * Runs the packed and per-channel kernels on random inputs, including the edges of the image, where
+     * pixels are repeated, and transparent and opaque extremes.
+     * @param random Source of the inputs.
+     * @return The number of inputs the two paths gave different results for.
+     */
+    private static int compareKernels(Random random) {
+        // an odd size, so rows do not line up with anything
+        int width = 37, height = 23;
+        int[] pixels = createPixels(random, width, height);
+        pixels[0] = 0xffffffff;
+        pixels[1] = 0;
+
+        int mismatches = 0;
+
+        for (int i = 0; i < COMPARED_SAMPLES; i++) {
+            int coords = randomCoords(random, width, height);
+            int start = pixels[random.nextInt(pixels.length)], end = pixels[random.nextInt(pixels.length)];
+            int endWeight = random.nextInt(257);
+
+            int[] packed = {
+                    PixelKernels.sample(pixels, width, height, coords, true),
+                    PixelKernels.sampleBicubic(pixels, width, height, coords, true),
+                    PixelKernels.blend(start, end, endWeight, true)
+            };
+            int[] scalar = {
+                    PixelKernels.sample(pixels, width, height, coords, false),
+                    PixelKernels.sampleBicubic(pixels, width, height, coords, false),
+                    PixelKernels.blend(start, end, endWeight, false)
+            };
+
+            for (int kernel = 0; kernel < packed.length; kernel++) {
+                if (packed[kernel] != scalar[kernel]) {
+                    // the first few are enough to find the bug
+                    if (mismatches < 10)
+                        System.err.println(KERNEL_NAMES[kernel] + " differs at " + Integer.toHexString(coords)
+                                           + ": packed " + Integer.toHexString(packed[kernel]) + ", scalar "
+                                           + Integer.toHexString(scalar[kernel]));
+                    mismatches++;
+                }
+            }
+        }
+
+        return mismatches;
+    }
+
+    /**
+     * Times each kernel on both paths and prints the time per sample and how much faster the packed path is.
+     * @param random Source of the inputs.
+     */
+    private static void timeKernels(Random random) {
+        int[] pixels = createPixels(random, TIMED_WIDTH, TIMED_HEIGHT);
+
+        // points along rows of the image, a little over a pixel apart, as a warp map samples them
+        int[] coords = new int[TIMED_SAMPLES];
+        int one = 1 << PixelKernels.SUBPIXEL_BITS;
+        for (int i = 0; i < coords.length; i++) {
+            int x = (i * (one + 3)) % ((TIMED_WIDTH - 1) * one);
+            int y = (i / TIMED_WIDTH * one + random.nextInt(one)) % ((TIMED_HEIGHT - 1) * one);
+            coords[i] = (x << 16) | y;
+        }
+
+        for (int kernel = BILINEAR; kernel <= BLEND; kernel++) {
+            // passes alternate between the paths, so both are warmed up and compiled alike, and anything else
+            // running slows both down
+            long packed = Long.MAX_VALUE, scalar = Long.MAX_VALUE;
+            for (int pass = 0; pass < TIMED_PASSES; pass++) {
+                packed = Math.min(packed, timePass(kernel, true, pixels, coords));
+                scalar = Math.min(scalar, timePass(kernel, false, pixels, coords));
+            }
+
+            System.out.println(String.format("%-8s packed %6.2f ns, scalar %6.2f ns per sample, %.2fx",
+                                             KERNEL_NAMES[kernel], (double) packed / coords.length,
+                                             (double) scalar / coords.length, (double) scalar / packed));
+        }
+    }
+
+    /**
+     * Runs a kernel once over every sample.
+     * @param kernel BILINEAR, BICUBIC, or BLEND.
+     * @param packed Whether to time the packed kernel.
+     * @param pixels Pixels of a TIMED_WIDTH x TIMED_HEIGHT image.
+     * @param coords Points to sample, one for each pixel; for blending, the colours blended with the pixels.
+     * @return The time taken in nanoseconds.
+     */
+    private static long timePass(int kernel, boolean packed, int[] pixels, int[] coords) {
+        long startTime = System.nanoTime();
+
+        if (kernel == BILINEAR)
+            sink += passBilinear(packed, pixels, coords);
+        else if (kernel == BICUBIC)
+            sink += passBicubic(packed, pixels, coords);
+        else
+            sink += passBlend(packed, pixels, coords);
+
+        return System.nanoTime() - startTime;
+    }
+
+    /**
+     * @param packed Whether to use the packed kernel.
+     * @param pixels Pixels of a TIMED_WIDTH x TIMED_HEIGHT image.
+     * @param coords Points to sample.
+     * @return The sum of the samples, so they are not optimised away.
+     */
+    private static int passBilinear(boolean packed, int[] pixels, int[] coords) {
+        int result = 0;
+        for (int coord : coords)
+            result += PixelKernels.sample(pixels, TIMED_WIDTH, TIMED_HEIGHT, coord, packed);
+
+        return result;
+    }
+
+    /**
+     * @param packed Whether to use the packed kernel.
+     * @param pixels Pixels of a TIMED_WIDTH x TIMED_HEIGHT image.
+     * @param coords Points to sample.
+     * @return The sum of the samples, so they are not optimised away.
+     */
+    private static int passBicubic(boolean packed, int[] pixels, int[] coords) {
+        int result = 0;
+        for (int coord : coords)
+            result += PixelKernels.sampleBicubic(pixels, TIMED_WIDTH, TIMED_HEIGHT, coord, packed);
+
+        return result;
+    }
+
+    /**
+     * @param packed Whether to use the packed kernel.
+     * @param pixels Pixels of a TIMED_WIDTH x TIMED_HEIGHT image.
+     * @param colors Colours blended with the pixels.
+     * @return The sum of the blends, so they are not optimised away.
+     */
+    private static int passBlend(boolean packed, int[] pixels, int[] colors) {
+        int result = 0;
+        for (int i = 0; i < colors.length; i++)
+            result += PixelKernels.blend(pixels[i], colors[i], i & 0xff, packed);
+
+        return result;
+    }
+
+    /**
+     * @param random Source of the pixels.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return Random premultiplied ARGB pixels; a quarter of them are partly transparent.
+     */
+    private static int[] createPixels(Random random, int width, int height) {
+        int[] pixels = new int[width * height];
+
+        for (int i = 0; i < pixels.length; i++) {
+            int alpha = random.nextInt(4) == 0 ? random.nextInt(256) : 255;
+            int color = random.nextInt();
+
+            pixels[i] = (alpha << 24) | (Math.min(alpha, (color >> 16) & 0xff) << 16)
+                        | (Math.min(alpha, (color >> 8) & 0xff) << 8) | Math.min(alpha, color & 0xff);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * @param random Source of the point.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @return A random point in the image, packed as in warp maps; whole pixels and the last row and column
+     *         come up often enough to be covered.
+     */
+    private static int randomCoords(Random random, int width, int height) {
+        int one = 1 << PixelKernels.SUBPIXEL_BITS;
+        int x = random.nextInt((width - 1) * one + 1), y = random.nextInt((height - 1) * one + 1);
+
+        // one point in eight is on a whole pixel
+        if (random.nextInt(8) == 0) {
+            x &= ~(one - 1);
+            y &= ~(one - 1);
+        }
+
+        return (x << 16) | y;
+    }
+
+    /**
+     * Creates the test morph: two patterned images and a lattice whose points move by different amounts in
+     * each direction, with the corner points left where they are so some triangles stay still.
+     * @param warpMaps Whether frames are rendered from warp maps rather than by Java2D.
+     * @return The renderer.
+     */
+    private static MorphRenderer createTestRenderer(boolean warpMaps) {
+        BufferedImage start = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        BufferedImage end = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+
+        for (int y = 0; y < FRAME_HEIGHT; y++) {
+            for (int x = 0; x < FRAME_WIDTH; x++) {
+                // smooth gradients with sharp stripes and checks, so both flat and detailed areas are sampled
+                start.setRGB(x, y, (x * 2 << 16) | (y * 2 << 8) | ((x / 4 + y / 4) % 2 == 0 ? 0x20 : 0xe0));
+                end.setRGB(x, y, ((x ^ y) & 0xff) << 16 | ((x + y) % 7 == 0 ? 0xff00 : 0x4000) | (255 - y * 2));
+            }
+        }
+
+        int n = FRAME_CONTROL_POINTS;
+        int[][] startX = new int[n][n], startY = new int[n][n], endX = new int[n][n], endY = new int[n][n];
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                startX[i][j] = endX[i][j] = (int) (FRAME_WIDTH / (n + 1.0)) * (j + 1);
+                startY[i][j] = endY[i][j] = (int) (FRAME_HEIGHT / (n + 1.0)) * (i + 1);
+
+                boolean corner = (i == 0 || i == n - 1) && (j == 0 || j == n - 1);
+                if (!corner) {
+                    endX[i][j] += (i * 3 + j * 5) % 9 - 4;
+                    endY[i][j] += (i * 7 + j * 2) % 7 - 3;
+                }
+            }
+        }
+
+        MorphRenderer renderer = new MorphRenderer(start, end, startX, startY, endX, endY);
+        renderer.setSettings("brightness 0 0");
+
+        if (warpMaps)
+            renderer.setWarpMapCache(new WarpMapCache(64L * 1024 * 1024));
+
+        return renderer;
+    }
+
+    /**
+     * @param frame A frame.
+     * @return Its pixels as non-premultiplied ARGB, row by row, whatever layout the frame is in.
+     */
+    private static int[] getPixels(BufferedImage frame) {
+        return frame.getRGB(0, 0, frame.getWidth(), frame.getHeight(), null, 0, frame.getWidth());
+    }
+
+    /**
+     * @param pixels ARGB pixels of a frame.
+     * @param reference ARGB pixels of the frame it is compared with.
+     * @return The peak signal to noise ratio of the frame over all four channels, in dB.
+     */
+    private static double getPsnr(int[] pixels, int[] reference) {
+        double squaredError = 0;
+
+        for (int i = 0; i < pixels.length; i++) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                int difference = ((pixels[i] >>> shift) & 0xff) - ((reference[i] >>> shift) & 0xff);
+                squaredError += difference * difference;
+            }
+        }
+
+        double meanSquaredError = squaredError / (pixels.length * 4.0);
+        return meanSquaredError == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / meanSquaredError);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * File:       LivePreviewWindow.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    A window continuously showing one frame of the morph, by default the midpoint, which is rendered
+ *             again in the background whenever the lattices change. Lets the user see the effect of an edit
+ *             without playing the whole preview.
+ *
+ */
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+public class LivePreviewWindow extends JFrame implements ProgressiveRenderer.Listener, ChangeListener {
+    // renders the frame coarse to fine, skipping frames for edits that have been superseded
+    private ProgressiveRenderer progressiveRenderer;
+
+    // renders the morph as it is now; null until both images are set
+    private MorphRenderer renderer;
+
+    // the frame being shown; scaled to fill the frame panel
+    private BufferedImage frame;
+
+    // panel the frame is drawn on
+    private JPanel framePanel;
+
+    // slider choosing which frame of the morph is shown, and the label describing it
+    private JSlider tSlider;
+    private JLabel frameLabel;
+
+    /**
+     * Constructor for LivePreviewWindow.
+     * @param width Width of the frame shown.
+     * @param height Height of the frame shown.
+     */
+    public LivePreviewWindow(int width, int height) {
+        // sets the title for the window
+        super("Live Preview");
+
+        // the full frame is rendered once edits have stopped for 100 ms
+        progressiveRenderer = new ProgressiveRenderer(100, this);
+
+        // panel the frame is drawn on
+        framePanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+
+                if (frame != null) {
+                    Graphics2D g2 = (Graphics2D) g.create();
+                    g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                    g2.drawImage(frame, 0, 0, getWidth(), getHeight(), null);
+                    g2.dispose();
+                }
+            }
+        };
+        framePanel.setBackground(Color.DARK_GRAY);
+        framePanel.setPreferredSize(new Dimension(width, height));
+
+        // label for the frame being shown
+        frameLabel = new JLabel("Morph at 50%");
+        frameLabel.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 18));
+        frameLabel.setForeground(Color.WHITE);
+
+        // slider for the frame being shown, in percent of the way from the start image to the end image
+        tSlider = new JSlider(JSlider.HORIZONTAL, 0, 100, 50);
+        tSlider.setBackground(Color.BLACK);
+        tSlider.setMajorTickSpacing(25);
+        tSlider.setPaintTicks(true);
+        tSlider.addChangeListener(this);
+
+        // panels to organize the components
+        JPanel labelPanel = new JPanel();
+        labelPanel.setBackground(Color.BLACK);
+        labelPanel.add(frameLabel);
+
+        Container container = this.getContentPane();
+        container.setBackground(Color.BLACK);
+        container.add(labelPanel, BorderLayout.NORTH);
+        container.add(framePanel, BorderLayout.CENTER);
+        container.add(tSlider, BorderLayout.SOUTH);
+
+        this.pack();
+        this.setResizable(false);
+    }
+
+    /**
+     * @return The t of the frame being shown.
+     */
+    public double getT() { return tSlider.getValue() / 100.0; }
+
+    /**
+     * Changes the size the frame is shown at, e.g. when a new start image is loaded.
+     * @param width Width of the frame shown.
+     * @param height Height of the frame shown.
+     */
+    public void setFrameSize(int width, int height) {
+        framePanel.setPreferredSize(new Dimension(width, height));
+        this.pack();
+    }
+
+    /**
+     * Shows the morph from a new renderer, e.g. after an edit to the lattices.
+     * @param renderer Renders the morph as it is now, or null to show nothing.
+     */
+    public void setRenderer(MorphRenderer renderer) {
+        this.renderer = renderer;
+
+        if (renderer == null) {
+            progressiveRenderer.cancel();
+            frame = null;
+            framePanel.repaint();
+        } else {
+            progressiveRenderer.request(renderer, getT());
+        }
+    }
+
+    /**
+     * Stops rendering when the window is hidden.
+     * @param visible Whether the window is shown.
+     */
+    @Override
+    public void setVisible(boolean visible) {
+        super.setVisible(visible);
+
+        if (!visible)
+            progressiveRenderer.cancel();
+    }
+
+    /**
+     * Shows the frame at the slider's position.
+     * @param e The slider changing.
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        frameLabel.setText("Morph at " + tSlider.getValue() + "%");
+
+        if (renderer != null) {
+            progressiveRenderer.request(renderer, getT());
+
+            // no need to wait for the idle delay once the slider has been let go
+            if (!tSlider.getValueIsAdjusting())
+                progressiveRenderer.refine();
+        }
+    }
+
+    /**
+     * Shows a rendered frame.
+     * @param progressiveRenderer The progressive renderer.
+     * @param frame The frame.
+     * @param scale The scale the frame was rendered at.
+     */
+    @Override
+    public void frameRendered(ProgressiveRenderer progressiveRenderer, BufferedImage frame, double scale) {
+        this.frame = frame;
+        framePanel.repaint();
+
+        // let the user know when they are looking at a reduced frame
+        String label = "Morph at " + tSlider.getValue() + "%";
+        if (scale < 1.0)
+            label += " | " + (int) Math.round(scale * 100) + "% scale";
+
+        frameLabel.setText(label);
+    }
+}
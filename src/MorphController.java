@@ -6,23 +6,26 @@
  *
  */
 
-import Jama.Matrix;
-
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.border.LineBorder;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.GeneralPath;
 import java.awt.image.BufferedImage;
 import java.awt.image.RescaleOp;
 import java.io.File;
 import java.io.IOException;
 
-public class MorphController implements ActionListener, ChangeListener, MouseListener, MouseMotionListener {
+public class MorphController implements ActionListener, ChangeListener, MouseListener, MouseMotionListener,
+                                        MorphPlayer.Listener, ProgressiveRenderer.Listener {
+    // formats the morph can be exported in: a series of JPEG or PNG images, or a single video file
+    public static final int EXPORT_IMAGES = 0;
+    public static final int EXPORT_AVI = 1;
+    public static final int EXPORT_Y4M = 2;
+    public static final int EXPORT_GIF = 3;
+    public static final int EXPORT_PNG = 4;
+
     // References to the left and right ImagePanel objects and the ImageMorphWindow
     private ImagePanel leftPanel, rightPanel;
     private ImageMorphWindow window;
@@ -33,14 +36,11 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
     // The indices of the currently dragged control point
     private int[] controlPointIndices;
 
-    private int dimension;
-
     // x and y coordinates of points in panel that is being manipulated
     private int[][] xCoords, yCoords;
 
     // Coordinates of left panel before a morph preview takes place
     private int[][] startXCoords, startYCoords;
-    private Polygon[][] startUpperTriangles, startLowerTriangles, endUpperTriangles, endLowerTriangles;
 
     private BufferedImage startImage, endImage;
 
@@ -52,13 +52,76 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
     private int imageNumber;
     private String exportDirectory;
 
-    // t is t in equation X(t) = ((1-t) * X_start) + (t * X_end)
-    // deltaT is increase in t each time morphTimer goes off
-    private double t, deltaT;
+    // format the morph is exported in, and the video file it is exported to if it is not a series of images
+    private int exportFormat;
+    private String exportFile;
+
+    // whether an exported GIF has one palette for every frame rather than one each, and whether it is dithered
+    private boolean gifGlobalPalette, gifDither;
+
+    // t is t in equation X(t) = ((1-t) * X_start) + (t * X_end) of the frame being exported
+    private double t;
 
-    // timer that controls the morph preview
+    // timer that controls the morph export
     private Timer morphTimer;
 
+    // plays the morph preview
+    private MorphPlayer player;
+
+    // how the preview is played; one of the MorphPlayer playback modes
+    private int playbackMode;
+
+    // whether all frames are rendered before the preview plays, and whether they are compressed when stored
+    private boolean prerenderFrames, compressFrames;
+
+    // whether previews lower their render scale to keep up with the frame rate
+    private boolean dynamicResolution;
+
+    // megabytes of off-heap memory prerendered frames are stored in, and the amount the current store was created with
+    private int frameMemory, frameStoreMemory;
+
+    // off-heap store for prerendered frames; kept between previews so the memory is only allocated once
+    private FrameRingBuffer frameStore;
+
+    // frames rendered for previews and exports, so an unchanged morph is not rendered again
+    private FrameCache frameCache;
+
+    // warp maps of frames, so frames of unchanged lattices are rendered by gathering pixels; null if off
+    private WarpMapCache warpMapCache;
+
+    // exported frames kept on disk between sessions, so unchanged frames are copied instead of rendered;
+    // null if the cache directory could not be created
+    private DiskFrameCache diskCache;
+
+    // brightness slider values of the start and end images; part of what the cached frames depend on
+    private int startBrightness, endBrightness;
+
+    // renderer for the current morph; used by the scrubber until the morph is reset
+    private MorphRenderer renderer;
+
+    // renders frames for the scrubber coarse to fine, and the t the scrubber is at
+    private ProgressiveRenderer scrubRenderer;
+    private double scrubT;
+
+    // updates the live preview once edits pause
+    private Timer livePreviewTimer;
+
+    // set when the morph is reset while a looping preview is still playing
+    private boolean resetRequested;
+
+    // latest position of a control point drag that has not been applied yet, and the panel it is in
+    private Point pendingDragPoint;
+    private ImagePanel pendingDragPanel;
+
+    // time the oldest drag event that has not been applied was received
+    private long pendingDragTime;
+
+    // timer that applies at most one drag update per display frame
+    private Timer dragTimer;
+
+    // time from a drag event being received to the control point being painted in its new position
+    private TimingStats dragLatency;
+
     /**
      * Constructor for MorphController.
      * @param window The ImageMorphWindow.
@@ -73,8 +136,44 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
 
         morphDuration = 5;
 
+        playbackMode = MorphPlayer.PLAY_ONCE;
+        prerenderFrames = false;
+        compressFrames = true;
+        dynamicResolution = true;
+        frameMemory = 256;
+
+        gifGlobalPalette = false;
+        gifDither = true;
+
+        frameCache = new FrameCache(256L * 1024 * 1024);
+        warpMapCache = null;
+
+        // exported frames are cached in the user's home directory
+        diskCache = DiskFrameCache.openDefault();
+
         imageNumber = 1;
         exportDirectory = "./";
+
+        // coalesces drag events; the delay is set to the display's frame time when a drag starts
+        dragTimer = new Timer(1000/60, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyPendingDrag();
+            }
+        });
+        dragLatency = new TimingStats();
+
+        // edits coming in faster than every 40 ms only update the live preview once
+        livePreviewTimer = new Timer(40, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateLivePreview();
+            }
+        });
+        livePreviewTimer.setRepeats(false);
+
+        // the full frame is rendered once the scrubber has been still for 150 ms
+        scrubRenderer = new ProgressiveRenderer(150, this);
     }
 
     /**
@@ -107,6 +206,11 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
      */
     public boolean getExporting() { return exporting; }
 
+    /**
+     * @return FrameCache frameCache; null if frame caching is off
+     */
+    public FrameCache getFrameCache() { return frameCache; }
+
     /**
      * Sets the duration of the morph.
      * @param duration The duration to be set.
@@ -125,6 +229,22 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
      */
     public void setExportDirectory(String directory) { exportDirectory = directory; }
 
+    /**
+     * @return int exportFormat; one of the export format constants
+     */
+    public int getExportFormat() { return exportFormat; }
+
+    /**
+     * @return boolean; whether the export format is a series of images in a directory rather than one file
+     */
+    public boolean getExportsImages() { return exportFormat == EXPORT_IMAGES || exportFormat == EXPORT_PNG; }
+
+    /**
+     * Sets the video file an exported morph will be saved to when it is not exported as a series of images.
+     * @param file The path of the file.
+     */
+    public void setExportFile(String file) { exportFile = file; }
+
     /**
      * Setter for leftPanel.
      * @param leftPanel The left ImagePanel.
@@ -162,6 +282,9 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
             // If click is in control point, set isDragging to true
             isDragging = true;
 
+            // Each drag reports its own latency
+            dragLatency.reset();
+
             // Set edits made to true
             window.setEditsMade(true);
 
@@ -169,8 +292,12 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
             leftPanel.setIsHighlighted(controlPointIndices, true);
             rightPanel.setIsHighlighted(controlPointIndices, true);
 
-            // Repaint the panels
-            repaintPanels();
+            // Repaint the highlighted region of the panels
+            repaintControlPointRegions(controlPointIndices);
+
+            // Apply drag updates once per frame of the display the panel is on
+            dragTimer.setDelay(1000 / getRefreshRate(panel));
+            dragTimer.start();
         }
     }
 
@@ -182,6 +309,10 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
     public void mouseReleased(MouseEvent e) {
         // Check isDragging; controlPointIndices is null until isDragging has been set true at least once
         if (isDragging) {
+            // Apply the last position of the drag and stop updating once per frame
+            applyPendingDrag();
+            dragTimer.stop();
+
             // Set isDragging to false
             isDragging = false;
 
@@ -189,8 +320,12 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
             leftPanel.setIsHighlighted(controlPointIndices, false);
             rightPanel.setIsHighlighted(controlPointIndices, false);
 
-            // Repaint the panels
-            repaintPanels();
+            // Repaint the highlighted region of the panels
+            repaintControlPointRegions(controlPointIndices);
+
+            // report the drag-to-paint latency of this drag, unless the label is showing the progress of a morph
+            if (!isMorphing)
+                window.getStartImageLabel().setText("Start Image | drag " + dragLatency);
         }
     }
 
@@ -201,7 +336,8 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
     public void mouseExited(MouseEvent e) {}
 
     /**
-     * Override the mouseDragged method to handle control points being dragged.
+     * Override the mouseDragged method to handle control points being dragged. Only the latest position is
+     * kept; dragTimer applies it once per display frame, so fast mice do not queue more updates than can be shown.
      * @param e The mouseDragged event.
      */
     @Override
@@ -210,27 +346,40 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
         ImagePanel panel = (ImagePanel) e.getSource();
 
         if (isDragging) {
-            // Get the indices of the control point
-            int i = controlPointIndices[0];
-            int j = controlPointIndices[1];
-
             if (!panel.inSurroundingTriangles(e.getPoint(), controlPointIndices))
                 return;
 
-            // Set the coordinates at the control point indices to the x and y of the
-            // mouse position
-            xCoords[i][j] = e.getX();
-            yCoords[i][j] = e.getY();
-
-            // Update the x and y coordinates in the panel
-            panel.setXCoords(xCoords);
-            panel.setYCoords(yCoords);
+            // Latency is measured from the oldest event that has not been applied yet
+            if (pendingDragPoint == null)
+                pendingDragTime = System.nanoTime();
 
-            // Repaint the panels
-            panel.repaint();
+            pendingDragPoint = e.getPoint();
+            pendingDragPanel = panel;
         }
     }
 
+    /**
+     * Moves the dragged control point to the latest drag position and paints it; called once per display frame.
+     */
+    private void applyPendingDrag() {
+        if (pendingDragPoint == null)
+            return;
+
+        // Move the control point to the x and y of the mouse position
+        Rectangle dirtyRegion = pendingDragPanel.moveControlPoint(controlPointIndices,
+                                                                  pendingDragPoint.x, pendingDragPoint.y);
+
+        // Paint only the part of the panel the control point affected, within this frame
+        pendingDragPanel.paintImmediately(dirtyRegion);
+
+        dragLatency.record(System.nanoTime() - pendingDragTime);
+
+        pendingDragPoint = null;
+        pendingDragPanel = null;
+
+        scheduleLivePreview();
+    }
+
     @Override
     public void mouseMoved(MouseEvent e) {}
 
@@ -260,6 +409,14 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
                 rightPanel.setShowLattice(source.isSelected());
 
                 repaintPanels();
+            } else if (source.getName().equals("prerenderFrames")) {
+                prerenderFrames = source.isSelected();
+            } else if (source.getName().equals("compressFrames")) {
+                compressFrames = source.isSelected();
+            } else if (source.getName().equals("dynamicResolution")) {
+                dynamicResolution = source.isSelected();
+            } else if (source.getName().equals("gifDither")) {
+                gifDither = source.isSelected();
             }
         } else if (e.getSource() instanceof  JComboBox) {
             // If the source is a JComboBox, get the source
@@ -311,6 +468,61 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
                 } catch (NumberFormatException ex) {
                     System.err.println(ex.getMessage());
                 }
+            } else if (source.getName().equals("exportFormat")) {
+                // the options are in the order of the export format constants
+                exportFormat = source.getSelectedIndex();
+            } else if (source.getName().equals("gifPalette")) {
+                gifGlobalPalette = source.getSelectedItem().equals("Global");
+            } else if (source.getName().equals("playbackMode")) {
+                // the options are in the order of the playback mode constants
+                playbackMode = source.getSelectedIndex();
+            } else if (source.getName().equals("frameMemory")) {
+                String memoryString = (String) source.getSelectedItem();
+                String[] memoryStringSplit = memoryString.split(" ");
+
+                try {
+                    frameMemory = Integer.parseInt(memoryStringSplit[0]);
+                } catch (NumberFormatException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            } else if (source.getName().equals("frameCache")) {
+                String cacheString = (String) source.getSelectedItem();
+                String[] cacheStringSplit = cacheString.split(" ");
+
+                if (cacheString.equals("Off")) {
+                    frameCache = null;
+                    return;
+                }
+
+                try {
+                    long budget = Long.parseLong(cacheStringSplit[0]) * 1024 * 1024;
+
+                    if (frameCache == null)
+                        frameCache = new FrameCache(budget);
+                    else
+                        frameCache.setBudget(budget);
+                } catch (NumberFormatException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            } else if (source.getName().equals("warpMapCache")) {
+                String cacheString = (String) source.getSelectedItem();
+                String[] cacheStringSplit = cacheString.split(" ");
+
+                if (cacheString.equals("Off")) {
+                    warpMapCache = null;
+                    return;
+                }
+
+                try {
+                    long budget = Long.parseLong(cacheStringSplit[0]) * 1024 * 1024;
+
+                    if (warpMapCache == null)
+                        warpMapCache = new WarpMapCache(budget);
+                    else
+                        warpMapCache.setBudget(budget);
+                } catch (NumberFormatException ex) {
+                    System.err.println(ex.getMessage());
+                }
             } else if (source.getName().equals("latticeResolution")) {
                 String resolutionString = (String) source.getSelectedItem();
                 String[] resStringSplit = resolutionString.split("x");
@@ -325,6 +537,7 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
                     rightPanel.initializeLattice();
 
                     repaintPanels();
+                    scheduleLivePreview();
                 } catch (NumberFormatException ex) {
                     System.err.println(ex.getMessage());
                 }
@@ -360,31 +573,59 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
                 exporting = false;
 
                 morph();
-            } else if (source.getActionCommand().equals("reset") && !isMorphing) {
-                // reset button text and action
-                source.setText("   Preview Morph   ");
-                source.setActionCommand("preview");
+            } else if (source.getActionCommand().equals("reset")) {
+                if (!isMorphing) {
+                    resetMorph();
+                } else if (player != null) {
+                    // looping previews never finish on their own; reset once the player has stopped
+                    resetRequested = true;
+                    player.stop();
+                }
+            }
+        }
+    }
 
-                leftPanel.setShowLattice(showingLattice);
-                leftPanel.setShowControlPoints(showingControlPoints);
+    /**
+     * Puts the left panel back to how it was before the morph preview.
+     */
+    private void resetMorph() {
+        JButton previewButton = window.getPreviewButton();
+        JLabel imageLabel = window.getStartImageLabel();
 
+        // reset button text and action
+        previewButton.setText("   Preview Morph   ");
+        previewButton.setActionCommand("preview");
 
-                // reset left image label
-                imageLabel.setText("Start Image");
-                imageLabel.setForeground(Color.WHITE);
+        leftPanel.setShowLattice(showingLattice);
+        leftPanel.setShowControlPoints(showingControlPoints);
 
-                // reset coordinates to pre-morph coordinates
-                leftPanel.setImage(startImage, true);
-                leftPanel.setXCoords(startXCoords);
-                leftPanel.setYCoords(startYCoords);
+        // reset left image label
+        imageLabel.setText("Start Image");
+        imageLabel.setForeground(Color.WHITE);
 
-                // repaint the panel
-                leftPanel.repaint();
+        // drop the scrubber's frame and skip any frames still being rendered for it
+        scrubRenderer.cancel();
+        renderer = null;
+        leftPanel.setFrame(null);
 
-                // re-allow interaction with lattice
-                hasMorphed = false;
-            }
-        }
+        // move the scrubber back to the start without it scrubbing
+        JSlider scrubber = window.getScrubber();
+        scrubber.removeChangeListener(this);
+        scrubber.setValue(0);
+        scrubber.addChangeListener(this);
+
+        // reset coordinates to pre-morph coordinates
+        leftPanel.setImage(startImage, true);
+        leftPanel.setXCoords(startXCoords);
+        leftPanel.setYCoords(startYCoords);
+
+        // repaint the panel
+        leftPanel.repaint();
+
+        // re-allow interaction with lattice
+        hasMorphed = false;
+
+        scheduleLivePreview();
     }
 
     /**
@@ -399,6 +640,11 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
         RescaleOp op;
         BufferedImage bim;
 
+        if (source.getName().equals("scrubber")) {
+            scrub(source);
+            return;
+        }
+
         // Scale factor used to brighten the image
         scaleFactor = (source.getValue() / 100.f) + 1.f;
 
@@ -407,54 +653,77 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
 
         // scale the appropriate image
         if (source.getName().equals("start")) {
+            startBrightness = source.getValue();
+
             if (startImage == null && leftPanel.getImage() != null)
                 startImage = leftPanel.getImage();
             else if (leftPanel.getImage() == null)
                 return;
 
-            bim = new BufferedImage(startImage.getWidth(), startImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            bim.getGraphics().drawImage(startImage, 0, 0, null);
-            bim = op.filter(bim, bim);
+            bim = brighten(startImage, op);
             leftPanel.setImage(bim, true);
         } else if (source.getName().equals("end")) {
+            endBrightness = source.getValue();
+
             if (endImage == null && rightPanel.getImage() != null)
                 endImage = rightPanel.getImage();
             else if (rightPanel.getImage() == null)
                 return;
 
-            bim = new BufferedImage(endImage.getWidth(), endImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-            bim.getGraphics().drawImage(endImage, 0, 0, null);
-            bim = op.filter(bim, bim);
+            bim = brighten(endImage, op);
             rightPanel.setImage(bim, false);
         }
         repaintPanels();
+        scheduleLivePreview();
 
     }
 
     /**
-     * Runs morph, either as a preview or for an export.
+     * Applies a brightness operation to a copy of an image.
+     * @param image The image to brighten.
+     * @param op The operation scaling the color components of the image.
+     * @return The brightened image in the canonical compatible layout.
      */
-    public void morph() {
-        String labelText;
+    private BufferedImage brighten(BufferedImage image, RescaleOp op) {
+        BufferedImage bim;
 
-        // coordinates the preview will have at the end of the animation
-        int[][] endXCoords = rightPanel.getXCoords();
-        int[][] endYCoords = rightPanel.getYCoords();
+        // RescaleOp does not handle premultiplied alpha, so images with alpha are scaled before premultiplying
+        if (image.getTransparency() == Transparency.OPAQUE)
+            bim = ImageUtils.createCompatibleImage(image.getWidth(), image.getHeight(), Transparency.OPAQUE);
+        else
+            bim = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
 
-        // get the image label and the preview button to make updates
-        JLabel imageLabel = window.getStartImageLabel();
-        JButton previewButton = window.getPreviewButton();
+        Graphics2D g2 = bim.createGraphics();
+        g2.drawImage(image, 0, 0, null);
+        g2.dispose();
+
+        bim = op.filter(bim, bim);
+
+        return ImageUtils.toCompatibleImage(bim);
+    }
 
+    /**
+     * Runs morph, either as a preview or for an export.
+     */
+    public void morph() {
         // set isMorphing to prevent interaction with certain buttons
         isMorphing = true;
 
-        // text that will appear above the left image while morphing
-        if (exporting) {
-            labelText = "Exporting... ";
-        } else {
-            labelText = "Morphing... ";
-        }
+        renderer = createRenderer();
+
+        if (exporting && !getExportsImages())
+            exportVideo(renderer);
+        else if (exporting)
+            export(renderer);
+        else
+            preview(renderer);
+    }
 
+    /**
+     * Hides the lattice in the left panel and creates a renderer for the morph between the panels as they are now.
+     * @return The renderer.
+     */
+    private MorphRenderer createRenderer() {
         // get value of showLattice and showControlPoints to reset them after morph
         showingLattice = leftPanel.getShowLattice();
         showingControlPoints = leftPanel.getShowControlPoints();
@@ -464,399 +733,413 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
         leftPanel.setShowLattice(false);
 
         // update all of the initial values that will be needed to calculate the morph
-        dimension = leftPanel.getNumberControlPoints();
         startImage = leftPanel.getImage();
         endImage = rightPanel.getImage();
         startXCoords = leftPanel.getXCoords();
         startYCoords = leftPanel.getYCoords();
-        startLowerTriangles = leftPanel.getLowerTriangles();
-        startUpperTriangles = leftPanel.getUpperTriangles();
-        endLowerTriangles = rightPanel.getLowerTriangles();
-        endUpperTriangles = rightPanel.getUpperTriangles();
 
-        // initialize t to zero
-        t = 0;
+        MorphRenderer renderer = new MorphRenderer(startImage, endImage, startXCoords, startYCoords,
+                                                   rightPanel.getXCoords(), rightPanel.getYCoords());
+
+        // unchanged morphs are played and exported from the cache
+        renderer.setSettings("brightness " + startBrightness + " " + endBrightness);
+        renderer.setFrameCache(frameCache);
+        renderer.setWarpMapCache(warpMapCache);
+
+        return renderer;
+    }
+
+    /**
+     * Updates the live preview after a short delay, if it is showing; called whenever the lattices or images
+     * change. Further changes within the delay are folded into the same update.
+     */
+    public void scheduleLivePreview() {
+        LivePreviewWindow livePreview = window.getLivePreviewWindow();
+
+        if (livePreview != null && livePreview.isVisible())
+            livePreviewTimer.restart();
+    }
+
+    /**
+     * Gives the live preview a renderer for the morph as it is now.
+     */
+    private void updateLivePreview() {
+        LivePreviewWindow livePreview = window.getLivePreviewWindow();
+        MorphRenderer liveRenderer;
+
+        if (livePreview == null || !livePreview.isVisible())
+            return;
+
+        if (renderer != null && (hasMorphed || isMorphing)) {
+            // the left panel is showing the morph, so its lattice is not the start lattice
+            liveRenderer = renderer;
+        } else if (leftPanel.getImage() == null || rightPanel.getImage() == null) {
+            liveRenderer = null;
+        } else {
+            // not cached; the lattices are usually mid-edit and the frames would not be seen again
+            liveRenderer = new MorphRenderer(leftPanel.getImage(), rightPanel.getImage(),
+                                             leftPanel.getXCoords(), leftPanel.getYCoords(),
+                                             rightPanel.getXCoords(), rightPanel.getYCoords());
+        }
+
+        livePreview.setRenderer(liveRenderer);
+    }
+
+    /**
+     * Shows the frame of the morph at the scrubber's position in the left panel. Coarse frames are shown
+     * while the scrubber moves; the full frame follows once it stops.
+     * @param scrubber The scrubber.
+     */
+    private void scrub(JSlider scrubber) {
+        if (isMorphing || leftPanel.getImage() == null || rightPanel.getImage() == null)
+            return;
+
+        // scrubbing enters the same state as a preview; the morph is reset with the preview button
+        if (!hasMorphed) {
+            JButton previewButton = window.getPreviewButton();
+            previewButton.setText("   Reset Morph   ");
+            previewButton.setActionCommand("reset");
+
+            window.getStartImageLabel().setForeground(Color.GREEN);
+
+            renderer = createRenderer();
+            hasMorphed = true;
+        }
+
+        scrubT = scrubber.getValue() / (double) scrubber.getMaximum();
+
+        scrubRenderer.request(renderer, scrubT);
+
+        // no need to wait for the idle delay once the scrubber has been let go
+        if (!scrubber.getValueIsAdjusting())
+            scrubRenderer.refine();
+    }
+
+    /**
+     * Shows a frame rendered for the scrubber in the left panel.
+     * @param renderer The progressive renderer.
+     * @param frame The frame.
+     * @param scale The scale the frame was rendered at.
+     */
+    @Override
+    public void frameRendered(ProgressiveRenderer renderer, BufferedImage frame, double scale) {
+        if (!hasMorphed)
+            return;
+
+        leftPanel.setFrame(frame);
+        leftPanel.repaint();
+
+        // let the user know when they are looking at a reduced frame
+        String label = "Morph at " + (int) (scrubT * 100) + "%";
+        if (scale < 1.0)
+            label += " | " + (int) Math.round(scale * 100) + "% scale";
+
+        window.getStartImageLabel().setText(label);
+    }
+
+    /**
+     * Plays the morph preview on a playback canvas in place of the left panel.
+     * @param renderer Renders the frames of the morph.
+     */
+    private void preview(MorphRenderer renderer) {
+        PlaybackCanvas canvas = window.showPlaybackCanvas();
+
+        // 30 frames per second for the duration of the morph, at the same t as exported frames
+        player = new MorphPlayer(renderer, canvas, FrameExporter.getFrameTimes(30 * morphDuration), 30, this);
+        player.setPlaybackMode(playbackMode);
+        player.setDynamicResolution(dynamicResolution);
+
+        if (prerenderFrames)
+            player.setFrameStore(getFrameStore());
+
+        player.start();
+    }
+
+    /**
+     * Gets the store for prerendered frames, replacing it if the frame settings have changed since it was created.
+     * @return The frame store.
+     */
+    private FrameRingBuffer getFrameStore() {
+        // compared with the requested memory, since the store may have been given less if direct memory ran out
+        if (frameStore == null || frameStore.getCompress() != compressFrames || frameStoreMemory != frameMemory) {
+            // drop the old store first so its memory can be freed for the new one
+            frameStore = null;
+            frameStore = new FrameRingBuffer(frameMemory * 1024 * 1024, compressFrames);
+            frameStoreMemory = frameMemory;
+        }
+
+        return frameStore;
+    }
+
+    /**
+     * Updates the preview label while frames are being rendered before the preview plays.
+     * @param player The player rendering the frames.
+     * @param framesRendered The number of frames rendered so far.
+     */
+    @Override
+    public void prerenderProgress(MorphPlayer player, int framesRendered) {
+        int percentComplete = framesRendered * 100 / player.getFrameCount();
 
-        // deltaT is 1 divided by the total number of frames the animation should have
-        deltaT = 1.0 / (30 * morphDuration);
+        window.getStartImageLabel().setText("Rendering... " + percentComplete + "%");
+    }
+
+    /**
+     * Updates the preview label after a frame of the preview has been shown.
+     * @param player The player showing the preview.
+     * @param frame The index of the frame.
+     */
+    @Override
+    public void frameShown(MorphPlayer player, int frame) {
+        int percentComplete = frame * 100 / player.getFrameCount();
+
+        window.getStartImageLabel().setText("Morphing... " + percentComplete + "% | " + player.getStatistics());
+    }
+
+    /**
+     * Puts the left panel back, showing the last frame of the preview, once the preview has finished.
+     * @param player The player that showed the preview.
+     * @param lastFrame The last frame of the preview.
+     */
+    @Override
+    public void playbackFinished(MorphPlayer player, BufferedImage lastFrame) {
+        window.hidePlaybackCanvas();
+
+        if (lastFrame != null)
+            leftPanel.setImage(lastFrame, true);
+        leftPanel.repaint();
+
+        String statistics = player.getStatistics();
+        if (frameCache != null)
+            statistics += ", " + frameCache;
+        if (warpMapCache != null)
+            statistics += ", " + warpMapCache;
+
+        window.getStartImageLabel().setText("Morphing... 100% | " + statistics);
+
+        isMorphing = false;
+        this.player = null;
+
+        resetPreviewButton();
+
+        if (resetRequested) {
+            resetRequested = false;
+            resetMorph();
+        }
+    }
+
+    /**
+     * Plays the morph in the left panel, writing each frame to the export directory. An interrupted export of
+     * the same morph into the same directory is resumed from the first frame it did not write.
+     * @param renderer Renders the frames of the morph.
+     */
+    private void export(MorphRenderer renderer) {
+        String labelText = "Exporting... ";
+
+        // get the image label to make updates
+        JLabel imageLabel = window.getStartImageLabel();
+
+        // 30 frames for each second of the morph, and t of each of them
+        int frameCount = 30 * morphDuration;
+        double[] frameTimes = FrameExporter.getFrameTimes(frameCount);
+
+        // PNG frames are lossless, for compositing
+        String format = exportFormat == EXPORT_PNG ? FrameExporter.FORMAT_PNG : FrameExporter.FORMAT_JPEG;
+
+        File directory = new File(exportDirectory);
+        FrameExporter exporter = new FrameExporter(directory, format, frameCache, diskCache);
+        ExportManifest manifest = ExportManifest.read(directory);
+
+        // frames written by the previous export into this directory, and the renderer they came from if only
+        // what the lattice edits changed needs to be rendered again
+        int previousFrames = 0;
+        MorphRenderer previousRenderer = null;
+
+        // an interrupted export of the same morph continues from the first frame it did not write
+        imageNumber = 1;
+        if (manifest != null && manifest.isResumableBy(renderer, frameCount, format)) {
+            imageNumber = manifest.getCompletedFrames() + 1;
+        } else if (manifest != null) {
+            previousFrames = manifest.getCompletedFrames();
+            previousRenderer = manifest.getPreviousRenderer(renderer, frameCount, format);
+        }
+
+        // written after every frame, so an export that is interrupted can be resumed
+        ExportManifest exportManifest = new ExportManifest(renderer, frameCount, format, imageNumber - 1);
+        exportManifest.write(directory);
+
+        final int patchableFrames = previousFrames;
+        final MorphRenderer patchableRenderer = previousRenderer;
 
         // delay for timer is set to 1000/30 which should give 30 frames per second
         morphTimer = new Timer(1000/30, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
+                t = frameTimes[imageNumber - 1];
+
                 // used for label of preview
                 int percentComplete = (int) (t * 100);
 
                 // update preview label
                 imageLabel.setText(labelText + percentComplete + "%");
 
-                // temporary x and y coordinates
-                int[][] currentXCoords = new int[dimension][dimension];
-                int[][] currentYCoords = new int[dimension][dimension];
-
-                // Calculate the next positions to draw
-                for (int i = 0; i < dimension; i++) {
-                    for (int j = 0; j < dimension; j++) {
-                        // If coordinates are already in right position, don't do calculation
-                        // Prevents shakiness in fixed points that results from rounding
-                        if ((currentXCoords[i][j] == endXCoords[i][j] && currentYCoords[i][j] == endYCoords[i][j]))
-                            continue;
-
-                        // Update current x and y coordinates
-                        currentXCoords[i][j] = (int) ((1 - t)*startXCoords[i][j] + t*endXCoords[i][j]);
-                        currentYCoords[i][j] = (int) ((1 - t)*startYCoords[i][j] + t*endYCoords[i][j]);
-                    }
-                }
+                // write the image, copying it from the disk cache if it was exported before
+                BufferedImage destImage = exporter.exportFrame(renderer,
+                                                               imageNumber <= patchableFrames ? patchableRenderer : null,
+                                                               t, imageNumber);
 
-                // calculate the values for the current lower and upper triangles
-                // they are calculated in this class rather than the image panel;
-                // If you try to set the triangles in the image panels and then use the getUpper/getLowerTriangles
-                // methods of the ImagePanel class, they do not return the correct values; I suspect it has something
-                // to do with the timer.
-                Polygon[][] currentLowerTriangles = getLowerTriangles(currentXCoords, currentYCoords);
-                Polygon[][] currentUpperTriangles = getUpperTriangles(currentXCoords, currentYCoords);
-
-                // Image where warped start image will be placed
-                BufferedImage destImage1 = new BufferedImage(startImage.getWidth(),
-                        startImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-
-                // Image where warped endImage will be placed
-                BufferedImage destImage2 = new BufferedImage(startImage.getWidth(),
-                        startImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-
-                // Warp the images according the to triangles
-                calculateAndApplyAffineTransforms(startImage, destImage1, startLowerTriangles, currentLowerTriangles);
-                calculateAndApplyAffineTransforms(startImage, destImage1, startUpperTriangles, currentUpperTriangles);
-                calculateAndApplyAffineTransforms(endImage, destImage2, endLowerTriangles, currentLowerTriangles);
-                calculateAndApplyAffineTransforms(endImage, destImage2, endUpperTriangles, currentUpperTriangles);
-
-                // set the alpha for the images
-                float alpha;
-                if (t <= 1.0)
-                    alpha = (float) t;
-                else
-                    alpha = 1.f;
-
-                // draw the two images together in a single image, setting alphas appropriately
-                BufferedImage destImage = new BufferedImage(endImage.getWidth(), endImage.getHeight(), BufferedImage.TYPE_INT_ARGB);
-                Graphics2D g2 = destImage.createGraphics();
-                AlphaComposite ac = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 1 - alpha);
-                g2.setComposite(ac);
-                g2.drawImage(destImage1, 0, 0, null);
-
-                ac = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha);
-                g2.setComposite(ac);
-                g2.drawImage(destImage2, 0, 0, null);
-                g2.dispose();
+                exportManifest.setCompletedFrames(imageNumber);
+                exportManifest.write(directory);
+                imageNumber++;
 
                 // update the image in the left panel
                 leftPanel.setImage(destImage, true);
                 leftPanel.repaint();
 
-                // write the image if exporting
-                if (exporting) {
-                    writeImage(destImage, imageNumber);
-                    imageNumber++;
-                }
+                // check if we have reached the end of the animation
+                if (imageNumber > frameTimes.length)
+                    finishExport();
+            }
+        });
 
-                // increment t by deltaT
-                t += deltaT;
+        // a resumed export may have nothing left to write
+        if (imageNumber > frameTimes.length)
+            finishExport();
+        else
+            morphTimer.start();
+    }
 
-                // check if we have reached the end of the animation
-                if (t >= 1.0) {
-                    // stop the timer and update the label
-                    morphTimer.stop();
+    /**
+     * Plays the morph in the left panel, writing each frame to the export file as one video. Frames are
+     * written as they are rendered, so the file is complete once the morph has played.
+     * @param renderer Renders the frames of the morph.
+     */
+    private void exportVideo(MorphRenderer renderer) {
+        String labelText = "Exporting... ";
 
-                    imageLabel.setText(labelText + "100%");
+        // get the image label to make updates
+        JLabel imageLabel = window.getStartImageLabel();
+
+        // 30 frames for each second of the morph, and t of each of them
+        double[] frameTimes = FrameExporter.getFrameTimes(30 * morphDuration);
 
-                    // reset values if exporting
-                    if (exporting) {
-                        imageLabel.setText("Start Image");
-                        leftPanel.setImage(startImage, true);
-                        leftPanel.setShowControlPoints(showingControlPoints);
-                        leftPanel.setShowLattice(showingLattice);
-                        leftPanel.repaint();
-                    }
+        FrameSink sink;
+        try {
+            if (exportFormat == EXPORT_GIF) {
+                // a global palette is chosen from the start and end images, which every frame is blended from
+                int[] palette = null;
+                if (gifGlobalPalette)
+                    palette = ColorQuantizer.medianCut(new BufferedImage[]{ renderer.getStartImage(),
+                                                                            renderer.getEndImage() },
+                                                       GifFrameSink.MAX_COLORS);
+
+                sink = new GifFrameSink(new File(exportFile), renderer.getWidth(), renderer.getHeight(), 30,
+                                        palette, gifDither);
+            } else {
+                sink = FrameSink.open(exportFile, renderer.getWidth(), renderer.getHeight(), 30);
+            }
+        } catch (IOException e) {
+            showExportError(e);
+            finishExport();
+            return;
+        }
 
-                    isMorphing = false;
-                    exporting = false;
+        imageNumber = 1;
+
+        // delay for timer is set to 1000/30 which should give 30 frames per second
+        morphTimer = new Timer(1000/30, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                t = frameTimes[imageNumber - 1];
 
-                    // reset imageNumber
-                    imageNumber = 1;
+                // update preview label
+                imageLabel.setText(labelText + (int) (t * 100) + "%");
 
-                    // reset the preview button colors so button does not stay highlighted after animation
-                    previewButton.setBackground(Color.BLACK);
-                    previewButton.setForeground(Color.WHITE);
-                    previewButton.setBorder(new LineBorder(Color.WHITE));
+                BufferedImage destImage = renderer.renderFrame(t);
+                imageNumber++;
 
+                try {
+                    sink.writeFrame(destImage);
+
+                    // the index and header are written once the last frame is
+                    if (imageNumber > frameTimes.length)
+                        sink.close();
+                } catch (IOException ex) {
+                    showExportError(ex);
+                    closeQuietly(sink);
+                    finishExport();
+                    return;
                 }
+
+                // update the image in the left panel
+                leftPanel.setImage(destImage, true);
+                leftPanel.repaint();
+
+                // check if we have reached the end of the animation
+                if (imageNumber > frameTimes.length)
+                    finishExport();
             }
         });
 
-
         morphTimer.start();
     }
 
     /**
-     * Writes an image with name "image-${imageNumber}.jpg" in the specified export directory.
-     * @param image The image to be written.
-     * @param imageNumber The number to be attached to the image.
+     * Tells the user an export failed.
+     * @param e The error.
      */
-    private void writeImage(BufferedImage image, int imageNumber) {
-        BufferedImage typeConverted = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
-        String imageName = exportDirectory + "/image-" + imageNumber + ".jpg";
-        typeConverted.getGraphics().drawImage(image, 0, 0, null);
+    private void showExportError(IOException e) {
+        System.err.println(e.getMessage());
 
-        try {
-            File output = new File(imageName);
-            ImageIO.write(typeConverted, "jpg", output);
-        } catch (IOException e1) {
-            System.err.println(e1.getMessage());
-        }
+        JOptionPane.showConfirmDialog(
+                window, "Error exporting: " + e.getMessage(), "Error Exporting",
+                JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE
+        );
     }
 
     /**
-     * Calculates and applies affine transforms to all of the source triangles based on destination triangles.
-     * @param src Source image.
-     * @param dest Destination image.
-     * @param srcTriangles Source triangles.
-     * @param destTriangles The destination triangles where the source triangles will be mapped.
-     */
-    private void calculateAndApplyAffineTransforms(BufferedImage src,
-                                                   BufferedImage dest,
-                                                   Polygon[][] srcTriangles,
-                                                   Polygon[][] destTriangles) {
-
-        /*
-         * The following two matrix equations will be solved:
-         *
-         *     A * x1 = bX
-         *     A * x2 = bY
-         *
-         * where A is a 3x3 matrix composed of the (x, y) coordinates of the source triangles (and a row of ones in the
-         * third column), bX is a 3x1 matrix consisting of the x-coordinates of the destination triangles, and
-         * bY is a 3x1 matrix consisting of the y-coordinates of the destination triangles.
-         *
-         * x1 and x2 are used to create the affine transform to be applied to create the destination image.
-         */
-        Matrix A;
-        Matrix x1;
-        Matrix x2;
-        Matrix bX;
-        Matrix bY;
-
-        double[][] AVals;
-        double[][] bXVals;
-        double[][] bYVals;
-
-        for (int i = 0; i < dimension+1; i++) {
-            for (int j = 0; j < dimension+1; j++) {
-                AVals = new double[][]{
-                        {(double) srcTriangles[i][j].xpoints[0], (double) srcTriangles[i][j].ypoints[0], 1.d},
-                        {(double) srcTriangles[i][j].xpoints[1], (double) srcTriangles[i][j].ypoints[1], 1.d},
-                        {(double) srcTriangles[i][j].xpoints[2], (double) srcTriangles[i][j].ypoints[2], 1.d}
-                };
-
-                bXVals = new double[][] {
-                        {(double) destTriangles[i][j].xpoints[0]},
-                        {(double) destTriangles[i][j].xpoints[1]},
-                        {(double) destTriangles[i][j].xpoints[2]}
-                };
-
-                bYVals = new double[][] {
-                        {(double) destTriangles[i][j].ypoints[0]},
-                        {(double) destTriangles[i][j].ypoints[1]},
-                        {(double) destTriangles[i][j].ypoints[2]}
-                };
-
-                A = new Matrix(AVals);
-                bX = new Matrix(bXVals);
-                bY = new Matrix(bYVals);
-
-                x1 = A.solve(bX);
-                x2 = A.solve(bY);
-
-                // everything below in this function is based on the code from Dr. Seales' slides on morphing
-                AffineTransform affineTransform = new AffineTransform(x1.get(0, 0), x2.get(0,0),
-                                                                      x1.get(1, 0), x2.get(1 , 0),
-                                                                      x1.get(2, 0), x2.get(2, 0));
-
-                GeneralPath destPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-
-                destPath.moveTo((float) bX.get(0, 0), (float) bY.get(0, 0));
-                destPath.lineTo((float) bX.get(1, 0), (float) bY.get(1, 0));
-                destPath.lineTo((float) bX.get(2, 0), (float) bY.get(2, 0));
-                destPath.lineTo((float) bX.get(0, 0), (float) bY.get(0, 0));
-
-                Graphics2D g2 = dest.createGraphics();
-                g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                g2.clip(destPath);
-                g2.setTransform(affineTransform);
-                g2.drawImage(src, 0, 0, null);
-                g2.dispose();
-            }
+     * Closes a sink after an error, when a further error is of no use.
+     * @param sink The sink.
+     */
+    private void closeQuietly(FrameSink sink) {
+        try {
+            sink.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
         }
     }
 
     /**
-     * Calculates upperTriangles for in between images.
-     * @param xCoords current x coordinates
-     * @param yCoords current y coordinates
-     * @return 2D polygon array consisting of upper triangles for in between images of morph
-     */
-    private Polygon[][] getUpperTriangles(int[][] xCoords, int[][] yCoords) {
-        Polygon[][] upperTriangles = new Polygon[dimension+1][dimension+1];
-
-        int width = leftPanel.getWidth();
-        int height = leftPanel.getHeight();
-        double widthOffset = leftPanel.getWidthOffset();
-        double heightOffset = leftPanel.getHeightOffset();
-
-        for (int i = 0; i < dimension+1; i++) {
-            for (int j = 0; j < dimension+1; j++) {
-                // coordinates for the triangle
-                int[] triangleXCoords;
-                int[] triangleYCoords;
-
-                // coordinates for each corner of the triangle
-                int aX, aY, bX, bY, cX, cY;
-
-                // get coordinates for first corner
-                if (i == 0 && j == 0) {
-                    aX = 0;
-                    aY = 0;
-                } else if (i == 0) {
-                    aX = (int) widthOffset * j;
-                    aY = 0;
-                } else if (j == 0) {
-                    aX = 0;
-                    aY =(int) heightOffset * i;
-                } else {
-                    aX = xCoords[i-1][j-1];
-                    aY = yCoords[i-1][j-1];
-                }
-
-                // get coordinates for second corner
-                if (i == 0 && j == dimension) {
-                    bX = width;
-                    bY = 0;
-                } else if (j == dimension) {
-                    bX = width;
-                    bY = (int) heightOffset * i;
-                } else if (i == 0) {
-                    bX = (int) widthOffset * (j+1);
-                    bY = 0;
-                } else {
-                    bX = xCoords[i-1][j];
-                    bY = yCoords[i-1][j];
-                }
-
-                // get coordinates for third corner
-                if (j == 0 && i == dimension) {
-                    cX = 0;
-                    cY = height;
-                } else if (j == 0) {
-                    cX = 0;
-                    cY = (int) heightOffset * (i+1);
-                } else if (i == dimension) {
-                    cX = (int) widthOffset * j;
-                    cY = height;
-                } else {
-                    cX = xCoords[i][j-1];
-                    cY = yCoords[i][j-1];
-                }
-
-                // initialize coordinate arrays for this triangle
-                triangleXCoords = new int[]{aX, bX, cX};
-                triangleYCoords = new int[]{aY, bY, cY};
-
-                // create the triangle and draw it if it is visible
-                upperTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
-            }
-        }
-
-        return upperTriangles;
-    }
-
-    /**
-     * Calculates lowerTriangles for in between images.
-     * @param xCoords current x coordinates
-     * @param yCoords current y coordinates
-     * @return 2D polygon array consisting of lower triangles for in between images of morph
-     */
-    private Polygon[][] getLowerTriangles(int[][] xCoords, int[][] yCoords) {
-        Polygon[][] lowerTriangles = new Polygon[dimension+1][dimension+1];
-
-        int width = leftPanel.getWidth();
-        int height = leftPanel.getHeight();
-        double widthOffset = leftPanel.getWidthOffset();
-        double heightOffset = leftPanel.getHeightOffset();
-
-        for (int i = 0; i < dimension+1; i++) {
-            for (int j = 0; j < dimension+1; j++) {
-                // coordinates for the triangle
-                int[] triangleXCoords;
-                int[] triangleYCoords;
-
-                // coordinates for each corner of the triangle
-                int aX, aY, bX, bY, cX, cY;
-
-                // set the coordinates of first corner
-                if (i == 0 && j == dimension) {
-                    aX = width;
-                    aY = 0;
-                } else if (i == 0) {
-                    aX = (int) widthOffset * (j + 1);
-                    aY = 0;
-                } else if (j == dimension) {
-                    aX = width;
-                    aY = (int) heightOffset * i;
-                } else {
-                    aX = xCoords[i-1][j];
-                    aY = yCoords[i-1][j];
-                }
+     * Stops the export and restores the left panel.
+     */
+    private void finishExport() {
+        // stop the timer and reset values; there is no timer if the export failed to start
+        if (morphTimer != null)
+            morphTimer.stop();
+
+        window.getStartImageLabel().setText("Start Image");
+        leftPanel.setImage(startImage, true);
+        leftPanel.setShowControlPoints(showingControlPoints);
+        leftPanel.setShowLattice(showingLattice);
+        leftPanel.repaint();
 
-                // set coordinates of second corner
-                if (i == dimension && j == dimension) {
-                    bX = width;
-                    bY = height;
-                } else if (j == dimension) {
-                    bX = width;
-                    bY = (int) heightOffset * (i+1);
-                } else if (i == dimension) {
-                    bX = (int) widthOffset * (j+1);
-                    bY = height;
-                } else {
-                    bX = xCoords[i][j];
-                    bY = yCoords[i][j];
-                }
+        isMorphing = false;
+        exporting = false;
 
-                // set coordinates of third corner
-                if (j == 0 && i == dimension) {
-                    cX = 0;
-                    cY = height;
-                } else if (j == 0) {
-                    cX = 0;
-                    cY = (int) heightOffset * (i+1);
-                } else if (i == dimension) {
-                    cX = (int) widthOffset * j;
-                    cY = height;
-                } else {
-                    cX = xCoords[i][j-1];
-                    cY = yCoords[i][j-1];
-                }
+        // reset imageNumber
+        imageNumber = 1;
 
-                // create coordinate arrays
-                triangleXCoords = new int[]{aX, bX, cX};
-                triangleYCoords = new int[]{aY, bY, cY};
+        resetPreviewButton();
+    }
 
-                // create triangle and draw it if it's visible
-                lowerTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
-            }
-        }
+    /**
+     * Resets the preview button colors so button does not stay highlighted after animation.
+     */
+    private void resetPreviewButton() {
+        JButton previewButton = window.getPreviewButton();
 
-        return lowerTriangles;
+        previewButton.setBackground(Color.BLACK);
+        previewButton.setForeground(Color.WHITE);
+        previewButton.setBorder(new LineBorder(Color.WHITE));
     }
 
     /**
@@ -896,6 +1179,33 @@ public class MorphController implements ActionListener, ChangeListener, MouseLis
         return color;
     }
 
+    /**
+     * Gets the refresh rate of the display a component is on.
+     * @param component The component.
+     * @return The refresh rate in Hz, or 60 if it cannot be determined.
+     */
+    private int getRefreshRate(Component component) {
+        GraphicsConfiguration configuration = component.getGraphicsConfiguration();
+
+        if (configuration != null) {
+            int refreshRate = configuration.getDevice().getDisplayMode().getRefreshRate();
+
+            if (refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN)
+                return refreshRate;
+        }
+
+        return 60;
+    }
+
+    /**
+     * Helper function that repaints the region around a control point in both panels.
+     * @param indices The indices of the control point
+     */
+    private void repaintControlPointRegions(int[] indices) {
+        leftPanel.repaint(leftPanel.getControlPointRegion(indices));
+        rightPanel.repaint(rightPanel.getControlPointRegion(indices));
+    }
+
     /**
      * Helper function that repaints both panels.
      */
@@ -0,0 +1,493 @@
+/*
+ * File:       MorphPlayer.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Plays a morph preview on a PlaybackCanvas at a fixed frame rate. Frames are rendered ahead on a
+ *             pool of threads and shown on schedule by a dedicated playback thread; frames that cannot be shown
+ *             in time are dropped so the preview always runs in real time. With a frame store, the whole morph
+ *             is rendered once before playing, so looping, ping-pong, and reverse playback only cost display.
+ *             With dynamic resolution, frames rendered while playing drop to a lower scale or sampling quality
+ *             when they cannot be rendered at the frame rate, and are scaled up when shown.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+public class MorphPlayer implements Runnable {
+    /**
+     * Receives updates from a MorphPlayer; all methods are called on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * Called after a frame has been shown.
+         * @param player The player showing the frame.
+         * @param frame The index of the frame.
+         */
+        void frameShown(MorphPlayer player, int frame);
+
+        /**
+         * Called as frames are rendered into the frame store before playback starts.
+         * @param player The player rendering the frames.
+         * @param framesRendered The number of frames rendered so far.
+         */
+        void prerenderProgress(MorphPlayer player, int framesRendered);
+
+        /**
+         * Called once playback has finished or been stopped.
+         * @param player The player that finished.
+         * @param lastFrame The last frame that was shown, or null if none was.
+         */
+        void playbackFinished(MorphPlayer player, BufferedImage lastFrame);
+    }
+
+    // ways the frames can be played: start to end once, start to end repeatedly,
+    // start to end and back repeatedly, or end to start once
+    public static final int PLAY_ONCE = 0;
+    public static final int LOOP = 1;
+    public static final int PING_PONG = 2;
+    public static final int REVERSE = 3;
+
+    // render scale and sampling quality of each dynamic resolution level, from best to fastest
+    private static final double[] LEVEL_SCALES = { 1.0, 0.75, 0.5, 0.5, 0.25 };
+    private static final int[] LEVEL_QUALITIES = { MorphRenderer.QUALITY_BEST, MorphRenderer.QUALITY_BEST,
+                                                   MorphRenderer.QUALITY_BEST, MorphRenderer.QUALITY_FAST,
+                                                   MorphRenderer.QUALITY_FAST };
+
+    // renders the frames and the surface they are shown on
+    private MorphRenderer renderer;
+    private PlaybackCanvas canvas;
+
+    // t of each frame, the same as in exports so frames cached by either are shared, and the number of frames
+    private double[] frameTimes;
+    private int frameCount;
+
+    // rate the frames are shown at
+    private int framesPerSecond;
+
+    private Listener listener;
+
+    // how the frames are played
+    private int playbackMode;
+
+    // off-heap store the frames are rendered into before playback, or null to render frames while playing
+    private FrameRingBuffer frameStore;
+
+    // thread showing the frames and the threads rendering them ahead
+    private Thread playbackThread;
+    private ExecutorService renderPool;
+
+    private volatile boolean stopped;
+
+    // time between frames being shown, and how far from their scheduled time they were shown
+    private TimingStats frameIntervals, pacingError;
+
+    // number of frames skipped because they were not ready in time
+    private volatile int droppedFrames;
+
+    // whether the render scale follows how fast frames can be rendered, and the level frames are rendered at
+    private boolean dynamicResolution;
+    private volatile int level;
+
+    // average nanoseconds to render a frame at the current level, or -1 before one has been rendered
+    private double averageRenderTime = -1;
+
+    // frames played since the level last changed; frames already queued were rendered at the old level
+    private int framesSinceLevelChange;
+
+    /**
+     * Constructor for MorphPlayer.
+     * @param renderer Renders the frames of the morph.
+     * @param canvas The surface the frames are shown on; its buffers must already be created.
+     * @param frameTimes t of each frame; see FrameExporter.getFrameTimes.
+     * @param framesPerSecond The rate the frames are shown at.
+     * @param listener Receives progress updates.
+     */
+    public MorphPlayer(MorphRenderer renderer, PlaybackCanvas canvas, double[] frameTimes, int framesPerSecond,
+                       Listener listener) {
+        this.renderer = renderer;
+        this.canvas = canvas;
+        this.frameTimes = frameTimes;
+        this.frameCount = frameTimes.length;
+        this.framesPerSecond = framesPerSecond;
+        this.listener = listener;
+
+        frameIntervals = new TimingStats();
+        pacingError = new TimingStats();
+    }
+
+    /**
+     * Sets how the frames are played.
+     * @param playbackMode PLAY_ONCE, LOOP, PING_PONG, or REVERSE.
+     */
+    public void setPlaybackMode(int playbackMode) { this.playbackMode = playbackMode; }
+
+    /**
+     * Sets a store that all frames are rendered into before playback starts. Frames that do not fit in the
+     * store are rendered again when they are played.
+     * @param frameStore The store, or null to render frames while playing.
+     */
+    public void setFrameStore(FrameRingBuffer frameStore) { this.frameStore = frameStore; }
+
+    /**
+     * Sets whether frames are rendered at a lower scale or quality when they cannot be rendered at the
+     * frame rate. Prerendered frames are always full quality.
+     * @param dynamicResolution Whether the render scale is adjusted while playing.
+     */
+    public void setDynamicResolution(boolean dynamicResolution) { this.dynamicResolution = dynamicResolution; }
+
+    /**
+     * @return The scale frames are being rendered at, e.g. 0.5 for half the width and height.
+     */
+    public double getRenderScale() { return LEVEL_SCALES[level]; }
+
+    /**
+     * @return int frameCount
+     */
+    public int getFrameCount() { return frameCount; }
+
+    /**
+     * @return number of frames dropped so far
+     */
+    public int getDroppedFrames() { return droppedFrames; }
+
+    /**
+     * @return TimingStats for the time between frames being shown
+     */
+    public TimingStats getFrameIntervals() { return frameIntervals; }
+
+    /**
+     * @return TimingStats for how far from their scheduled time frames were shown
+     */
+    public TimingStats getPacingError() { return pacingError; }
+
+    /**
+     * @return Summary of the playback statistics, e.g. "29.9 fps, 0 dropped, jitter 0.4 ms"
+     */
+    public String getStatistics() {
+        double averageInterval = frameIntervals.getAverageMillis();
+        double fps = averageInterval > 0 ? 1000.0 / averageInterval : 0;
+
+        String statistics = String.format("%.1f fps, %d dropped, jitter %.1f ms", fps, droppedFrames,
+                                          pacingError.getAverageMillis());
+
+        // make it clear when the preview is not full quality
+        if (dynamicResolution) {
+            int currentLevel = level;
+
+            statistics += String.format(", %d%% scale", Math.round(LEVEL_SCALES[currentLevel] * 100));
+            if (LEVEL_QUALITIES[currentLevel] == MorphRenderer.QUALITY_FAST)
+                statistics += " fast";
+        }
+
+        return statistics;
+    }
+
+    /**
+     * Starts playback on a new thread.
+     */
+    public void start() {
+        playbackThread = new Thread(this, "Morph Playback");
+        playbackThread.setDaemon(true);
+        playbackThread.start();
+    }
+
+    /**
+     * Stops playback; the listener is still told that playback finished.
+     */
+    public void stop() {
+        stopped = true;
+
+        if (playbackThread != null)
+            playbackThread.interrupt();
+    }
+
+    /**
+     * Renders the frames into the frame store if there is one, then shows them on schedule; runs on the
+     * playback thread.
+     */
+    @Override
+    public void run() {
+        // leave one core for the playback thread and the event dispatch thread
+        int renderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        renderPool = Executors.newFixedThreadPool(renderThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Morph Render");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        BufferedImage lastFrame = null;
+
+        try {
+            if (frameStore != null)
+                prerender();
+
+            lastFrame = play(renderThreads * 2, renderThreads);
+        } catch (InterruptedException e) {
+            // stopped while waiting for a frame
+        } catch (ExecutionException e) {
+            System.err.println(e.getCause());
+        } finally {
+            renderPool.shutdownNow();
+            notifyPlaybackFinished(lastFrame);
+        }
+    }
+
+    /**
+     * Renders every frame into the frame store.
+     * @throws InterruptedException If playback is stopped.
+     * @throws ExecutionException If a frame fails to render.
+     */
+    private void prerender() throws InterruptedException, ExecutionException {
+        ExecutorCompletionService<Void> completionService = new ExecutorCompletionService<>(renderPool);
+
+        frameStore.clear();
+
+        // frames are rendered and compressed on the render threads
+        for (int frame = 0; frame < frameCount; frame++) {
+            final int index = frame;
+
+            completionService.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    frameStore.put(index, renderer.renderFrame(frameTimes[index]));
+                    return null;
+                }
+            });
+        }
+
+        for (int framesRendered = 1; framesRendered <= frameCount; framesRendered++) {
+            completionService.take().get();
+
+            if (stopped)
+                throw new InterruptedException();
+
+            notifyPrerenderProgress(framesRendered);
+        }
+    }
+
+    /**
+     * Shows the frames on schedule in the order given by the playback mode.
+     * @param lookahead The number of frames to get ready ahead of the one being shown.
+     * @param renderThreads The number of threads rendering frames.
+     * @return The last frame shown.
+     * @throws InterruptedException If playback is stopped while waiting for a frame.
+     * @throws ExecutionException If a frame fails to render.
+     */
+    private BufferedImage play(int lookahead, int renderThreads) throws InterruptedException, ExecutionException {
+        // time each frame is on screen
+        long period = 1000000000L / framesPerSecond;
+
+        // number of frames to show; looping modes continue until stopped
+        int positions = (playbackMode == PLAY_ONCE || playbackMode == REVERSE) ? frameCount : Integer.MAX_VALUE;
+
+        // frames being prepared, in the order they will be shown
+        ArrayDeque<Future<BufferedImage>> pending = new ArrayDeque<>();
+
+        BufferedImage lastFrame = null;
+        int lastFrameIndex = 0;
+        int submitted = 0;
+        int position = 0;
+
+        // time the first frame was shown, which all other frames are scheduled from, and the last frame was shown
+        long startTime = -1;
+        long lastShownTime = -1;
+
+        while (!stopped && position < positions) {
+            // keep the render threads busy with the frames coming up
+            while (submitted < positions && submitted < position + lookahead) {
+                final int frame = getFrameAt(submitted);
+
+                pending.addLast(renderPool.submit(new Callable<BufferedImage>() {
+                    @Override
+                    public BufferedImage call() {
+                        BufferedImage image = null;
+
+                        if (frameStore != null)
+                            image = frameStore.get(frame);
+                        if (image == null) {
+                            int frameLevel = level;
+                            long renderStart = System.nanoTime();
+
+                            image = renderer.renderFrame(frameTimes[frame], LEVEL_SCALES[frameLevel],
+                                                         LEVEL_QUALITIES[frameLevel]);
+
+                            recordRenderTime(frameLevel, System.nanoTime() - renderStart);
+                        }
+
+                        return image;
+                    }
+                }));
+                submitted++;
+            }
+
+            BufferedImage image = pending.pollFirst().get();
+
+            if (dynamicResolution)
+                adjustLevel(period, renderThreads, lookahead);
+
+            long now = System.nanoTime();
+            if (startTime < 0)
+                startTime = now;
+
+            // drop the frame if a later frame is already due; the last frame is always shown
+            if ((now - startTime) / period > position && position < positions - 1) {
+                droppedFrames++;
+                position++;
+                continue;
+            }
+
+            // wait for the frame's scheduled time
+            long scheduledTime = startTime + position * period;
+            while ((now = System.nanoTime()) < scheduledTime && !stopped)
+                LockSupport.parkNanos(scheduledTime - now);
+
+            canvas.showFrame(image);
+
+            // record how regularly frames are being shown
+            now = System.nanoTime();
+            pacingError.record(Math.abs(now - scheduledTime));
+            if (lastShownTime >= 0)
+                frameIntervals.record(now - lastShownTime);
+            lastShownTime = now;
+
+            lastFrame = image;
+            lastFrameIndex = getFrameAt(position);
+            notifyFrameShown(lastFrameIndex);
+
+            position++;
+        }
+
+        // the frame left on screen after playback is always full size
+        if (lastFrame != null && lastFrame.getWidth() != renderer.getWidth())
+            lastFrame = renderer.renderFrame(frameTimes[lastFrameIndex]);
+
+        return lastFrame;
+    }
+
+    /**
+     * Adds the time taken to render a frame to the average for the current level.
+     * @param frameLevel The level the frame was rendered at.
+     * @param renderTime Nanoseconds taken to render the frame.
+     */
+    private synchronized void recordRenderTime(int frameLevel, long renderTime) {
+        // frames started before the last level change say nothing about the current level
+        if (frameLevel != level)
+            return;
+
+        if (averageRenderTime < 0)
+            averageRenderTime = renderTime;
+        else
+            averageRenderTime = 0.8 * averageRenderTime + 0.2 * renderTime;
+    }
+
+    /**
+     * Moves to a faster level if frames are taking too long to render for the frame rate, or to a better
+     * level if there is enough time to spare that frames at that level would still be on time.
+     * @param period Nanoseconds between frames.
+     * @param renderThreads The number of threads rendering frames.
+     * @param lookahead The number of frames queued ahead of the one being shown.
+     */
+    private synchronized void adjustLevel(long period, int renderThreads, int lookahead) {
+        // wait for the frames queued at the old level to be played before judging the new one
+        if (averageRenderTime < 0 || ++framesSinceLevelChange < lookahead + renderThreads)
+            return;
+
+        // the render threads work in parallel, so each can take this long per frame and keep up
+        double load = averageRenderTime / ((double) period * renderThreads);
+
+        if (load > 0.9 && level < LEVEL_SCALES.length - 1) {
+            setLevel(level + 1);
+        } else if (level > 0) {
+            // render time grows with the number of pixels, and bicubic sampling costs about twice nearest neighbour
+            double scaleRatio = LEVEL_SCALES[level - 1] / LEVEL_SCALES[level];
+            double cost = scaleRatio * scaleRatio;
+            if (LEVEL_QUALITIES[level - 1] != LEVEL_QUALITIES[level])
+                cost *= 2;
+
+            // leave headroom so the level does not flip back and forth
+            if (load * cost < 0.7)
+                setLevel(level - 1);
+        }
+    }
+
+    /**
+     * Changes the level frames are rendered at.
+     * @param newLevel The new level.
+     */
+    private synchronized void setLevel(int newLevel) {
+        level = newLevel;
+        averageRenderTime = -1;
+        framesSinceLevelChange = 0;
+    }
+
+    /**
+     * Gets the frame shown at a position in playback, based on the playback mode.
+     * @param position The number of frames shown before this one.
+     * @return The index of the frame.
+     */
+    private int getFrameAt(int position) {
+        switch (playbackMode) {
+            case LOOP:
+                return position % frameCount;
+            case PING_PONG:
+                // the first and last frames are not repeated when changing direction
+                if (frameCount < 2)
+                    return 0;
+
+                int cycle = 2 * frameCount - 2;
+                int offset = position % cycle;
+
+                return offset < frameCount ? offset : cycle - offset;
+            case REVERSE:
+                return frameCount - 1 - position;
+            default:
+                return position;
+        }
+    }
+
+    /**
+     * Tells the listener on the event dispatch thread that a frame was shown.
+     * @param frame The index of the frame.
+     */
+    private void notifyFrameShown(int frame) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                listener.frameShown(MorphPlayer.this, frame);
+            }
+        });
+    }
+
+    /**
+     * Tells the listener on the event dispatch thread how many frames have been prerendered.
+     * @param framesRendered The number of frames rendered so far.
+     */
+    private void notifyPrerenderProgress(int framesRendered) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                listener.prerenderProgress(MorphPlayer.this, framesRendered);
+            }
+        });
+    }
+
+    /**
+     * Tells the listener on the event dispatch thread that playback finished.
+     * @param lastFrame The last frame shown.
+     */
+    private void notifyPlaybackFinished(BufferedImage lastFrame) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                listener.playbackFinished(MorphPlayer.this, lastFrame);
+            }
+        });
+    }
+}
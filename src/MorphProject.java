@@ -0,0 +1,115 @@
+/*
+ * File:       MorphProject.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Reads the parts of a .morph file needed to render it without a window: both images, scaled the
+ *             way the image panels scale them, both lattices, and the duration. Used by export worker processes.
+ *
+ */
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class MorphProject {
+    // the start and end images, as they are shown in the image panels
+    private BufferedImage startImage, endImage;
+
+    // coordinates of the control points in the start and end images
+    private int[][] startXCoords, startYCoords, endXCoords, endYCoords;
+
+    // morph duration in seconds
+    private int morphDuration;
+
+    /**
+     * Reads a project file; see MorphProjectFile for the layout.
+     * @param file The .morph file.
+     * @throws IOException If the file or one of its images cannot be read, or it has no start or end image.
+     */
+    public MorphProject(File file) throws IOException {
+        MorphProjectFile projectFile;
+        try {
+            projectFile = new MorphProjectFile(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Not a project file: " + file, e);
+        }
+
+        // the panel size, visibility settings, and colors are not needed
+        startXCoords = projectFile.getStartXCoords();
+        startYCoords = projectFile.getStartYCoords();
+        endXCoords = projectFile.getEndXCoords();
+        endYCoords = projectFile.getEndYCoords();
+        morphDuration = projectFile.getMorphDuration();
+
+        loadImages(projectFile.getImagePathLeft(), projectFile.getImagePathRight());
+    }
+
+    /**
+     * @return Morph duration in seconds.
+     */
+    public int getMorphDuration() { return morphDuration; }
+
+    /**
+     * @return The number of frames an export of the project should have, 30 per second.
+     */
+    public int getFrameCount() { return 30 * morphDuration; }
+
+    /**
+     * Creates a renderer for the project. Brightness is not saved in project files, so the frames are the
+     * ones the window exports with both brightness sliders at 0.
+     * @return The renderer.
+     */
+    public MorphRenderer createRenderer() {
+        MorphRenderer renderer = new MorphRenderer(startImage, endImage, startXCoords, startYCoords,
+                                                   endXCoords, endYCoords);
+        renderer.setSettings("brightness 0 0");
+
+        return renderer;
+    }
+
+    /**
+     * Loads both images and scales them the same way loading the project in the window would.
+     * @param imagePathLeft Path of the start image.
+     * @param imagePathRight Path of the end image.
+     * @throws IOException If either image is missing or cannot be read.
+     */
+    private void loadImages(String imagePathLeft, String imagePathRight) throws IOException {
+        BufferedImage leftImage = readImage(imagePathLeft);
+        BufferedImage rightImage = readImage(imagePathRight);
+
+        // the left panel is sized for its image first, and the right image is scaled to the left panel
+        ImagePanel leftPanel = new ImagePanel(0, 0);
+        int width = leftPanel.getAdjustedWidth(leftImage);
+        int height = leftPanel.getAdjustedHeight(leftImage);
+
+        leftPanel.setWidth(width);
+        leftPanel.setHeight(height);
+        leftPanel.setImage(leftImage, true);
+
+        ImagePanel rightPanel = new ImagePanel(width, height);
+        rightPanel.setImage(rightImage, false);
+
+        startImage = leftPanel.getImage();
+        endImage = rightPanel.getImage();
+    }
+
+    /**
+     * @param path Path of an image in a project file.
+     * @return The image.
+     * @throws IOException If there is no image or it cannot be read.
+     */
+    private static BufferedImage readImage(String path) throws IOException {
+        if (path.equals("none"))
+            throw new IOException("The project needs both a start and an end image");
+
+        BufferedImage image = ImageIO.read(new File(path));
+
+        if (image == null)
+            throw new IOException("Not an image: " + path);
+
+        return image;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * File:       MorphProjectFile.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Parses the lines of a .morph file, as written by ImageMorphIO, into their values. The file is one
+ *             value per line: the panel width and height, whether the editor settings, control points, and
+ *             lattice are shown, the four lattice and control point colors, the number of control points in
+ *             each row and column, the start image path followed by its x and then y coordinates row by row,
+ *             the end image path followed by its coordinates, and the morph duration in seconds. Both the
+ *             window and export workers read projects through this class, so the layout is defined only here.
+ *
+ */
+
+import java.util.List;
+
+public class MorphProjectFile {
+    // width and height of the image panels
+    private int panelWidth, panelHeight;
+
+    // whether the editor settings, the control points, and the lattice are shown
+    private boolean showEditorSettings, showControlPoints, showLattice;
+
+    // names of the control point and lattice colors, e.g. "Orange"
+    private String primaryCPColor, highlightCPColor, primaryLColor, highlightLColor;
+
+    // number of control points in each row and column
+    private int numberControlPoints;
+
+    // paths of the start and end images, or "none"
+    private String imagePathLeft, imagePathRight;
+
+    // coordinates of the control points in the start and end images
+    private int[][] startXCoords, startYCoords, endXCoords, endYCoords;
+
+    // morph duration in seconds
+    private int morphDuration;
+
+    /**
+     * Parses the lines of a project file.
+     * @param fileLines The lines of the file.
+     * @throws IllegalArgumentException If the lines are not a project file.
+     */
+    public MorphProjectFile(List<String> fileLines) {
+        try {
+            // current index into fileLines
+            int currIndex = 0;
+
+            panelWidth = Integer.parseInt(fileLines.get(currIndex++));
+            panelHeight = Integer.parseInt(fileLines.get(currIndex++));
+
+            showEditorSettings = fileLines.get(currIndex++).equals("true");
+            showControlPoints = fileLines.get(currIndex++).equals("true");
+            showLattice = fileLines.get(currIndex++).equals("true");
+
+            primaryCPColor = fileLines.get(currIndex++);
+            highlightCPColor = fileLines.get(currIndex++);
+            primaryLColor = fileLines.get(currIndex++);
+            highlightLColor = fileLines.get(currIndex++);
+
+            numberControlPoints = Integer.parseInt(fileLines.get(currIndex++));
+
+            imagePathLeft = fileLines.get(currIndex++);
+            startXCoords = readCoords(fileLines, currIndex, numberControlPoints);
+            currIndex += numberControlPoints * numberControlPoints;
+            startYCoords = readCoords(fileLines, currIndex, numberControlPoints);
+            currIndex += numberControlPoints * numberControlPoints;
+
+            imagePathRight = fileLines.get(currIndex++);
+            endXCoords = readCoords(fileLines, currIndex, numberControlPoints);
+            currIndex += numberControlPoints * numberControlPoints;
+            endYCoords = readCoords(fileLines, currIndex, numberControlPoints);
+            currIndex += numberControlPoints * numberControlPoints;
+
+            morphDuration = Integer.parseInt(fileLines.get(currIndex));
+        } catch (IndexOutOfBoundsException | NumberFormatException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Not a project file", e);
+        }
+    }
+
+    /**
+     * @return Width of the image panels.
+     */
+    public int getPanelWidth() { return panelWidth; }
+
+    /**
+     * @return Height of the image panels.
+     */
+    public int getPanelHeight() { return panelHeight; }
+
+    /**
+     * @return Whether the editor settings are shown.
+     */
+    public boolean getShowEditorSettings() { return showEditorSettings; }
+
+    /**
+     * @return Whether the control points are shown.
+     */
+    public boolean getShowControlPoints() { return showControlPoints; }
+
+    /**
+     * @return Whether the lattice is shown.
+     */
+    public boolean getShowLattice() { return showLattice; }
+
+    /**
+     * @return Name of the primary control point color.
+     */
+    public String getPrimaryCPColor() { return primaryCPColor; }
+
+    /**
+     * @return Name of the highlighted control point color.
+     */
+    public String getHighlightCPColor() { return highlightCPColor; }
+
+    /**
+     * @return Name of the primary lattice color.
+     */
+    public String getPrimaryLColor() { return primaryLColor; }
+
+    /**
+     * @return Name of the highlighted lattice color.
+     */
+    public String getHighlightLColor() { return highlightLColor; }
+
+    /**
+     * @return Number of control points in each row and column.
+     */
+    public int getNumberControlPoints() { return numberControlPoints; }
+
+    /**
+     * @return Path of the start image, or "none".
+     */
+    public String getImagePathLeft() { return imagePathLeft; }
+
+    /**
+     * @return Path of the end image, or "none".
+     */
+    public String getImagePathRight() { return imagePathRight; }
+
+    /**
+     * @return x coordinates of the control points in the start image.
+     */
+    public int[][] getStartXCoords() { return startXCoords; }
+
+    /**
+     * @return y coordinates of the control points in the start image.
+     */
+    public int[][] getStartYCoords() { return startYCoords; }
+
+    /**
+     * @return x coordinates of the control points in the end image.
+     */
+    public int[][] getEndXCoords() { return endXCoords; }
+
+    /**
+     * @return y coordinates of the control points in the end image.
+     */
+    public int[][] getEndYCoords() { return endYCoords; }
+
+    /**
+     * @return Morph duration in seconds.
+     */
+    public int getMorphDuration() { return morphDuration; }
+
+    /**
+     * Reads one lattice's x or y coordinates, stored one per line row by row.
+     * @param fileLines Lines of the project file.
+     * @param start Index of the first coordinate.
+     * @param numberControlPoints Number of control points in each row and column.
+     * @return The coordinates.
+     */
+    private static int[][] readCoords(List<String> fileLines, int start, int numberControlPoints) {
+        int[][] coords = new int[numberControlPoints][numberControlPoints];
+
+        for (int i = 0; i < numberControlPoints; i++)
+            for (int j = 0; j < numberControlPoints; j++)
+                coords[i][j] = Integer.parseInt(fileLines.get(start + i * numberControlPoints + j));
+
+        return coords;
+    }
+}
@@ -0,0 +1,1444 @@
+/*
+ * File:       MorphRenderer.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Renders frames of a morph between two images for any t. Holds its own copy of the lattices so
+ *             frames can be rendered on any thread while the user keeps editing. The geometry of a frame can be
+ *             computed once as a Warp and rendered at several sizes, each sampled from the source mip level
+ *             nearest its scale. With a warp map cache, the source pixel of every frame pixel is computed once
+ *             per lattice pair and t, in fixed point stepped along each row, and frames are rendered from it by
+ *             gathering and blending pixels with integer kernels, so they are the same on every platform.
+ *             Triangles that are the same in both lattices never move, so they are copied into a layer once and
+ *             every frame starts from it instead of warping them again. Triangles that are only moved by
+ *             whole pixels are copied without interpolation.
+ *
+ */
+
+import Jama.Matrix;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class MorphRenderer {
+    // sampling quality: nearest neighbour without antialiasing for fast previews, bicubic with
+    // antialiasing for everything else
+    public static final int QUALITY_FAST = 0;
+    public static final int QUALITY_BEST = 1;
+
+    // largest part of a frame getChangedRegion returns; re-rendering more than this saves too little to be worth it
+    private static final double MAX_REGION_FRACTION = 0.5;
+
+    // fractional bits of the source coordinates in warp maps; x and y are packed into 16 bits each, so frames
+    // wider or taller than MAX_MAP_SIZE are always rendered through Java2D
+    private static final int MAP_FRACTION_BITS = PixelKernels.SUBPIXEL_BITS;
+    private static final int MAX_MAP_SIZE = 1 << (16 - MAP_FRACTION_BITS);
+
+    // kinds of triangle in a frame: the same in both lattices and so in every frame, or anything else; moved
+    // triangles that are whole pixel translations are found from their transforms when they are drawn
+    private static final int TRIANGLE_STATIC = 0;
+    private static final int TRIANGLE_AFFINE = 1;
+
+    // furthest, in pixels, a transform may move any point of the image from a whole pixel translation and
+    // still be drawn as one; well under what changes an 8 bit colour when interpolating
+    private static final double TRANSLATION_TOLERANCE = 1.0 / 512;
+
+    // the start and end images of the morph
+    private BufferedImage startImage, endImage;
+
+    // x and y coordinates of the control points in the start and end images
+    private int[][] startXCoords, startYCoords, endXCoords, endYCoords;
+
+    // the triangles of the start and end lattices
+    private Polygon[][] startUpperTriangles, startLowerTriangles, endUpperTriangles, endLowerTriangles;
+
+    // whether each triangle, lower triangles then upper ones, is the same in the start and end lattices
+    private boolean[] staticTriangles;
+
+    // the static triangles of the start image, and those of the end image that differ from the start image,
+    // drawn where they are in every frame; created the first time they are needed
+    private BufferedImage staticStartLayer, staticEndLayer;
+
+    // whether each static triangle has the same pixels in both images, so it is never blended
+    private boolean[] identicalTriangles;
+
+    // number of control points in each row and column of the lattice
+    private int dimension;
+
+    // width and height of the images, and the spacing of the lattice along the border
+    private int width, height;
+    private double widthOffset, heightOffset;
+
+    // cache rendered frames are kept in, or null to always render
+    private FrameCache frameCache;
+
+    // cache warp maps are kept in, or null to render frames through Java2D
+    private WarpMapCache warpMapCache;
+
+    // settings that change the frames but are not visible in the images or lattices, e.g. brightness
+    private String settings = "";
+
+    // hash of everything the frames depend on other than t, and of everything other than t and the lattices;
+    // computed the first time they are needed
+    private String fingerprint, imageFingerprint;
+
+    // hash of the lattices and the frame size, which is all a warp map depends on other than t
+    private String latticeFingerprint;
+
+    // the pixels of the images as premultiplied ARGB, for rendering from warp maps; created the first time
+    // they are needed
+    private int[] startPixels, endPixels;
+
+    // renderers for smaller versions of this morph, keyed by scale; created the first time they are needed
+    private HashMap<Double, MorphRenderer> scaledRenderers = new HashMap<>();
+
+    // the images halved again and again, starting with the images themselves; created as they are needed
+    private ArrayList<BufferedImage> startMipLevels = new ArrayList<>(), endMipLevels = new ArrayList<>();
+
+    /**
+     * The geometry of one frame: for each triangle, lower triangles then upper ones, the transforms from the
+     * start and end images into the frame and the triangle they fill. It does not depend on the size the frame
+     * is rendered at, so it is computed once for every size.
+     */
+    public static class Warp {
+        // t of the frame
+        private double t;
+
+        // the kind of each triangle; one of the TRIANGLE constants
+        private int[] kinds;
+
+        // transforms from the start and end images into the frame
+        private AffineTransform[] startTransforms, endTransforms;
+
+        // the triangles in the frame, as polygons and paths, and their bounds grown for antialiased edges
+        private Polygon[] triangles;
+        private GeneralPath[] paths;
+        private Rectangle[] bounds;
+    }
+
+    /**
+     * The source pixel of every pixel of one frame, for rendering the frame by gathering pixels from the start
+     * and end images instead of drawing each triangle. Source coordinates are fixed point with
+     * MAP_FRACTION_BITS fractional bits, x in the high 16 bits and y in the low 16 bits.
+     */
+    public static class WarpMap {
+        // index of the triangle each pixel is in, row by row; -1 for pixels outside every triangle
+        private short[] triangles;
+
+        // the point each pixel samples in the start and end images
+        private int[] startCoords, endCoords;
+
+        /**
+         * @return The bytes the map takes.
+         */
+        public long getSize() {
+            return (long) triangles.length * 2 + (long) startCoords.length * 4 + (long) endCoords.length * 4;
+        }
+    }
+
+    /**
+     * Constructor for MorphRenderer. The coordinates are copied, so later edits to the lattices do not change
+     * the frames this renderer produces.
+     * @param startImage The start image.
+     * @param endImage The end image; must be the same size as the start image.
+     * @param startXCoords x coordinates of the control points in the start image.
+     * @param startYCoords y coordinates of the control points in the start image.
+     * @param endXCoords x coordinates of the control points in the end image.
+     * @param endYCoords y coordinates of the control points in the end image.
+     */
+    public MorphRenderer(BufferedImage startImage, BufferedImage endImage,
+                         int[][] startXCoords, int[][] startYCoords,
+                         int[][] endXCoords, int[][] endYCoords) {
+        this.startImage = startImage;
+        this.endImage = endImage;
+
+        this.startXCoords = copyCoords(startXCoords);
+        this.startYCoords = copyCoords(startYCoords);
+        this.endXCoords = copyCoords(endXCoords);
+        this.endYCoords = copyCoords(endYCoords);
+
+        dimension = startXCoords.length;
+
+        // the lattice spans the whole image
+        width = startImage.getWidth();
+        height = startImage.getHeight();
+        widthOffset = width / (dimension+1.0);
+        heightOffset = height / (dimension+1.0);
+
+        startLowerTriangles = getLowerTriangles(this.startXCoords, this.startYCoords);
+        startUpperTriangles = getUpperTriangles(this.startXCoords, this.startYCoords);
+        endLowerTriangles = getLowerTriangles(this.endXCoords, this.endYCoords);
+        endUpperTriangles = getUpperTriangles(this.endXCoords, this.endYCoords);
+
+        staticTriangles = new boolean[2 * (dimension+1) * (dimension+1)];
+        int index = 0;
+        for (Polygon[][][] triangles : new Polygon[][][][]{{startLowerTriangles, endLowerTriangles},
+                                                           {startUpperTriangles, endUpperTriangles}})
+            for (int i = 0; i < dimension+1; i++)
+                for (int j = 0; j < dimension+1; j++, index++)
+                    staticTriangles[index] = samePolygon(triangles[0][i][j], triangles[1][i][j]);
+    }
+
+    /**
+     * @return The start image.
+     */
+    public BufferedImage getStartImage() { return startImage; }
+
+    /**
+     * @return The end image.
+     */
+    public BufferedImage getEndImage() { return endImage; }
+
+    /**
+     * @return x coordinates of the control points in the start image.
+     */
+    public int[][] getStartXCoords() { return copyCoords(startXCoords); }
+
+    /**
+     * @return y coordinates of the control points in the start image.
+     */
+    public int[][] getStartYCoords() { return copyCoords(startYCoords); }
+
+    /**
+     * @return x coordinates of the control points in the end image.
+     */
+    public int[][] getEndXCoords() { return copyCoords(endXCoords); }
+
+    /**
+     * @return y coordinates of the control points in the end image.
+     */
+    public int[][] getEndYCoords() { return copyCoords(endYCoords); }
+
+    /**
+     * @return The settings that are part of the fingerprint.
+     */
+    public synchronized String getSettings() { return settings; }
+
+    /**
+     * @return Width of the rendered frames.
+     */
+    public int getWidth() { return width; }
+
+    /**
+     * @return Height of the rendered frames.
+     */
+    public int getHeight() { return height; }
+
+    /**
+     * Sets a cache that rendered frames are looked up in and added to. Frames from the cache are shared
+     * between renderers with the same fingerprint, so they must not be drawn on.
+     * @param frameCache The cache, or null to always render.
+     */
+    public synchronized void setFrameCache(FrameCache frameCache) { this.frameCache = frameCache; }
+
+    /**
+     * Sets a cache that warp maps are looked up in and added to. Frames rendered from warp maps are sampled
+     * by PixelKernels rather than drawn by Java2D, so whether one is set is part of the fingerprint.
+     * @param warpMapCache The cache, or null to render frames through Java2D.
+     */
+    public synchronized void setWarpMapCache(WarpMapCache warpMapCache) {
+        if ((warpMapCache == null) != (this.warpMapCache == null)) {
+            fingerprint = null;
+            imageFingerprint = null;
+        }
+
+        this.warpMapCache = warpMapCache;
+    }
+
+    /**
+     * @return The warp map cache; null if frames are rendered through Java2D.
+     */
+    public synchronized WarpMapCache getWarpMapCache() { return warpMapCache; }
+
+    /**
+     * Sets the settings that change the frames but are not visible in the images or lattices; they are
+     * part of the fingerprint.
+     * @param settings The settings, e.g. "brightness 10 0".
+     */
+    public synchronized void setSettings(String settings) {
+        this.settings = settings;
+        fingerprint = null;
+        imageFingerprint = null;
+    }
+
+    /**
+     * Gets a renderer for a smaller version of this morph, with the images and lattices scaled down. Its
+     * frames are much faster to render and are meant to be shown scaled up while a better frame is rendered.
+     * Scaled renderers do not use the frame cache.
+     * @param scale The scale, e.g. 0.25 for a quarter of the width and height.
+     * @return The scaled renderer.
+     */
+    public synchronized MorphRenderer getScaled(double scale) {
+        MorphRenderer scaled = scaledRenderers.get(scale);
+
+        if (scaled == null) {
+            scaled = new MorphRenderer(scaleImage(startImage, scale), scaleImage(endImage, scale),
+                                       scaleCoords(startXCoords, scale), scaleCoords(startYCoords, scale),
+                                       scaleCoords(endXCoords, scale), scaleCoords(endYCoords, scale));
+            scaledRenderers.put(scale, scaled);
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Gets a SHA-256 hash of both images, both lattices, the frame size, and the settings; two renderers
+     * with the same fingerprint render the same frames.
+     * @return The fingerprint as a hex string.
+     */
+    public synchronized String getFingerprint() {
+        if (fingerprint != null)
+            return fingerprint;
+
+        MessageDigest digest = createImageDigest();
+        updateDigest(digest, new int[]{dimension});
+
+        for (int[][] coords : new int[][][]{startXCoords, startYCoords, endXCoords, endYCoords})
+            for (int[] row : coords)
+                updateDigest(digest, row);
+
+        fingerprint = DigestUtils.toHex(digest.digest());
+
+        return fingerprint;
+    }
+
+    /**
+     * Gets a SHA-256 hash of both images, the frame size, and the settings, but not the lattices; two
+     * renderers with the same image fingerprint differ only in where their control points are.
+     * @return The image fingerprint as a hex string.
+     */
+    public synchronized String getImageFingerprint() {
+        if (imageFingerprint == null)
+            imageFingerprint = DigestUtils.toHex(createImageDigest().digest());
+
+        return imageFingerprint;
+    }
+
+    /**
+     * Gets a SHA-256 hash of both lattices and the frame size, but not the images or settings; two renderers
+     * with the same lattice fingerprint have the same warp maps.
+     * @return The lattice fingerprint as a hex string.
+     */
+    public synchronized String getLatticeFingerprint() {
+        if (latticeFingerprint != null)
+            return latticeFingerprint;
+
+        MessageDigest digest = DigestUtils.createSha256();
+        updateDigest(digest, new int[]{width, height, dimension});
+
+        for (int[][] coords : new int[][][]{startXCoords, startYCoords, endXCoords, endYCoords})
+            for (int[] row : coords)
+                updateDigest(digest, row);
+
+        latticeFingerprint = DigestUtils.toHex(digest.digest());
+
+        return latticeFingerprint;
+    }
+
+    /**
+     * Gets the frame of the morph at t, from the frame cache if it is there.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @return The frame; must not be drawn on if a frame cache is set.
+     */
+    public BufferedImage renderFrame(double t) {
+        FrameCache cache;
+        String key = null;
+
+        synchronized (this) {
+            cache = frameCache;
+        }
+
+        if (cache != null) {
+            key = FrameCache.getKey(getFingerprint(), t);
+
+            BufferedImage frame = cache.get(key);
+            if (frame != null)
+                return frame;
+        }
+
+        WarpMap map = getWarpMap(t);
+        BufferedImage frame = map != null ? render(map, t, new Rectangle(0, 0, width, height), true)
+                                          : render(t, QUALITY_BEST);
+
+        if (cache != null)
+            cache.put(key, frame);
+
+        return frame;
+    }
+
+    /**
+     * Renders the frame of the morph at t at a reduced scale or quality, for previews that need a frame quickly.
+     * Full scale, best quality frames come from renderFrame(t) and the frame cache.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @param scale The scale of the frame, e.g. 0.25 for a quarter of the width and height.
+     * @param quality QUALITY_FAST or QUALITY_BEST.
+     * @return The rendered frame.
+     */
+    public BufferedImage renderFrame(double t, double scale, int quality) {
+        if (scale == 1.0 && quality == QUALITY_BEST)
+            return renderFrame(t);
+
+        // fast frames use a warp map only if one is already cached, since making one is slower than drawing
+        WarpMap map = scale == 1.0 ? getWarpMap(t, false) : null;
+
+        if (map != null)
+            return render(map, t, new Rectangle(0, 0, width, height), false);
+        else if (scale == 1.0)
+            return render(t, quality);
+        else
+            return getScaled(scale).render(t, quality);
+    }
+
+    /**
+     * Computes the geometry of the frame at t, for rendering it at several sizes with renderWarp.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @return The geometry of the frame.
+     */
+    public Warp getWarp(double t) {
+        Polygon[][][] currentTriangles = getCurrentTriangles(t);
+        int triangleCount = 2 * (dimension+1) * (dimension+1);
+
+        Warp warp = new Warp();
+        warp.t = t;
+        warp.startTransforms = new AffineTransform[triangleCount];
+        warp.endTransforms = new AffineTransform[triangleCount];
+        warp.triangles = new Polygon[triangleCount];
+        warp.paths = new GeneralPath[triangleCount];
+        warp.bounds = new Rectangle[triangleCount];
+
+        calculateAffineTransforms(startLowerTriangles, currentTriangles[0], warp.startTransforms, warp, 0);
+        calculateAffineTransforms(startUpperTriangles, currentTriangles[1], warp.startTransforms, warp,
+                                  triangleCount / 2);
+        calculateAffineTransforms(endLowerTriangles, currentTriangles[0], warp.endTransforms, warp, 0);
+        calculateAffineTransforms(endUpperTriangles, currentTriangles[1], warp.endTransforms, warp,
+                                  triangleCount / 2);
+
+        warp.kinds = new int[triangleCount];
+        for (int index = 0; index < triangleCount; index++)
+            warp.kinds[index] = staticTriangles[index] ? TRIANGLE_STATIC : TRIANGLE_AFFINE;
+
+        return warp;
+    }
+
+    /**
+     * Renders a frame from its geometry at a scale, sampling the images from the mip level at or just above
+     * the scale so no more than every other pixel is skipped. At full scale the frame is the same as from
+     * renderFrame(t); it is not looked up in or added to the frame cache.
+     * @param warp The geometry of the frame, from getWarp.
+     * @param scale The scale of the frame, at most 1; e.g. 0.5 for half the width and height.
+     * @return The rendered frame, the width and height times the scale, rounded.
+     */
+    public BufferedImage renderWarp(Warp warp, double scale) {
+        // the level whose size is the scale or up to twice it
+        int level = 0;
+        while (Math.pow(0.5, level + 1) >= scale)
+            level++;
+
+        return render(warp, QUALITY_BEST, new Rectangle(0, 0, width, height), scale,
+                      getMipLevel(startMipLevels, startImage, level), getMipLevel(endMipLevels, endImage, level));
+    }
+
+    /**
+     * Finds the part of the frame at t that can differ from the same frame rendered by another renderer of
+     * the same images, e.g. one made before a control point was moved. Only triangles whose start, end, or
+     * current shape changed can change pixels, so the region is the area those triangles cover in either frame.
+     * @param other The other renderer.
+     * @param t t of the frame.
+     * @return The region, empty if the frames are the same, or null if the whole frame has to be rendered
+     *         or most of it changed.
+     */
+    public Rectangle getChangedRegion(MorphRenderer other, double t) {
+        if (other.startImage != startImage || other.endImage != endImage || other.width != width
+                || other.height != height || other.dimension != dimension || !other.settings.equals(settings))
+            return null;
+
+        Polygon[][][] currentTriangles = getCurrentTriangles(t);
+        Polygon[][][] otherCurrentTriangles = other.getCurrentTriangles(t);
+
+        Polygon[][][] startTriangles = { startLowerTriangles, startUpperTriangles };
+        Polygon[][][] otherStartTriangles = { other.startLowerTriangles, other.startUpperTriangles };
+        Polygon[][][] endTriangles = { endLowerTriangles, endUpperTriangles };
+        Polygon[][][] otherEndTriangles = { other.endLowerTriangles, other.endUpperTriangles };
+
+        Rectangle region = null;
+
+        for (int k = 0; k < 2; k++) {
+            for (int i = 0; i < dimension+1; i++) {
+                for (int j = 0; j < dimension+1; j++) {
+                    if (samePolygon(startTriangles[k][i][j], otherStartTriangles[k][i][j])
+                            && samePolygon(endTriangles[k][i][j], otherEndTriangles[k][i][j])
+                            && samePolygon(currentTriangles[k][i][j], otherCurrentTriangles[k][i][j]))
+                        continue;
+
+                    Rectangle bounds = currentTriangles[k][i][j].getBounds()
+                            .union(otherCurrentTriangles[k][i][j].getBounds());
+                    region = region == null ? bounds : region.union(bounds);
+                }
+            }
+        }
+
+        if (region == null)
+            return new Rectangle();
+
+        // antialiased edges and bicubic sampling reach a pixel or two past the triangles
+        region.grow(2, 2);
+
+        region = region.intersection(new Rectangle(0, 0, width, height));
+
+        if ((double) region.width * region.height > MAX_REGION_FRACTION * width * height)
+            return null;
+
+        return region;
+    }
+
+    /**
+     * Renders the frame of the morph at t by re-rendering only part of a previous frame.
+     * @param t t of the frame.
+     * @param previousFrame The same frame rendered before the change; not modified, and returned as is if
+     *                      nothing changed.
+     * @param region The region to re-render, from getChangedRegion.
+     * @return The frame. It is not added to the frame cache, since the previous frame may be an approximation,
+     *         e.g. decoded from an exported JPEG.
+     */
+    public BufferedImage renderRegion(double t, BufferedImage previousFrame, Rectangle region) {
+        if (region.isEmpty())
+            return previousFrame;
+
+        WarpMap map = getWarpMap(t);
+        BufferedImage patch = map != null ? render(map, t, region, true) : render(t, QUALITY_BEST, region);
+
+        BufferedImage frame = ImageUtils.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+
+        // copy the pixels of both as they are rather than blending them
+        Graphics2D g2 = frame.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(previousFrame, 0, 0, null);
+        g2.drawImage(patch, region.x, region.y, null);
+        g2.dispose();
+
+        return frame;
+    }
+
+    /**
+     * Renders the frame of the morph at t.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @param quality QUALITY_FAST or QUALITY_BEST.
+     * @return The rendered frame.
+     */
+    private BufferedImage render(double t, int quality) {
+        return render(t, quality, new Rectangle(0, 0, width, height));
+    }
+
+    /**
+     * Renders part of the frame of the morph at t.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @param quality QUALITY_FAST or QUALITY_BEST.
+     * @param region The part of the frame to render.
+     * @return The rendered part of the frame, the size of the region.
+     */
+    private BufferedImage render(double t, int quality, Rectangle region) {
+        return render(getWarp(t), quality, region, 1.0, startImage, endImage);
+    }
+
+    /**
+     * Renders part of a frame from its geometry.
+     * @param warp The geometry of the frame.
+     * @param quality QUALITY_FAST or QUALITY_BEST.
+     * @param region The part of the frame to render, at full scale.
+     * @param scale The scale of the frame; regions other than the whole frame are only rendered at full scale.
+     * @param start The start image or one of its mip levels.
+     * @param end The end image or one of its mip levels.
+     * @return The rendered part of the frame, the size of the region times the scale.
+     */
+    private BufferedImage render(Warp warp, int quality, Rectangle region, double scale, BufferedImage start,
+                                 BufferedImage end) {
+        int destWidth = scale == 1.0 ? region.width : Math.max(1, (int) Math.round(region.width * scale));
+        int destHeight = scale == 1.0 ? region.height : Math.max(1, (int) Math.round(region.height * scale));
+
+        // Image where the warped start image is placed and the warped end image is blended over
+        BufferedImage destImage = ImageUtils.createCompatibleImage(destWidth, destHeight, Transparency.TRANSLUCENT);
+
+        // Image where warped endImage will be placed
+        BufferedImage destImage2 = ImageUtils.createCompatibleImage(destWidth, destHeight, Transparency.TRANSLUCENT);
+
+        // static triangles are copied from the layers at full scale rather than warped
+        boolean copyStatic = scale == 1.0;
+        if (copyStatic) {
+            BufferedImage[] layers = getStaticLayers();
+
+            for (int i = 0; i < 2; i++) {
+                if (layers[i] == null)
+                    continue;
+
+                // both images are empty, so the layers are copied as they are
+                Graphics2D g2 = (i == 0 ? destImage : destImage2).createGraphics();
+                g2.setComposite(AlphaComposite.Src);
+                g2.drawImage(layers[i], -region.x, -region.y, null);
+                g2.dispose();
+            }
+        }
+
+        // Warp the images according the to triangles
+        applyAffineTransforms(start, destImage, warp.startTransforms, warp, quality, region, scale, copyStatic);
+        applyAffineTransforms(end, destImage2, warp.endTransforms, warp, quality, region, scale, copyStatic);
+
+        // set the alpha for the images
+        float alpha;
+        if (warp.t <= 1.0)
+            alpha = (float) warp.t;
+        else
+            alpha = 1.f;
+
+        // blend the warped end image over the warped start image; both are premultiplied, so this
+        // runs in Java2D's native SrcOver loop and gives (1 - alpha) * start + alpha * end
+        Graphics2D g2 = destImage.createGraphics();
+        g2.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+
+        // only the part of the frame that has any of the end image is blended
+        if (copyStatic) {
+            Rectangle blended = null;
+
+            for (int index = 0; index < warp.bounds.length; index++) {
+                if (warp.kinds[index] == TRIANGLE_STATIC && identicalTriangles[index])
+                    continue;
+
+                blended = blended == null ? new Rectangle(warp.bounds[index]) : blended.union(warp.bounds[index]);
+            }
+
+            if (blended == null) {
+                g2.dispose();
+                return destImage;
+            }
+
+            blended.translate(-region.x, -region.y);
+            g2.clip(blended);
+        }
+
+        g2.drawImage(destImage2, 0, 0, null);
+        g2.dispose();
+
+        return destImage;
+    }
+
+    /**
+     * Gets the layers of static triangles, copying them from the images the first time. The static triangles
+     * of the start image are in the first layer, and those of the end image that are not the same as in the
+     * start image in the second.
+     * @return The start and end layers; either is null if it has no triangles.
+     */
+    private synchronized BufferedImage[] getStaticLayers() {
+        if (identicalTriangles != null)
+            return new BufferedImage[]{ staticStartLayer, staticEndLayer };
+
+        // static triangles are in the same place in every frame, including the first
+        Warp warp = getWarp(0.0);
+        Rectangle frame = new Rectangle(0, 0, width, height);
+
+        identicalTriangles = new boolean[staticTriangles.length];
+        Graphics2D startGraphics = null, endGraphics = null;
+
+        for (int index = 0; index < staticTriangles.length; index++) {
+            if (!staticTriangles[index])
+                continue;
+
+            if (startGraphics == null) {
+                staticStartLayer = ImageUtils.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+                startGraphics = staticStartLayer.createGraphics();
+            }
+
+            startGraphics.setClip(warp.paths[index]);
+            startGraphics.drawImage(startImage, 0, 0, null);
+
+            // the whole of the grown bounds is compared, so no pixel of the triangle can be missed
+            identicalTriangles[index] = samePixels(startImage, endImage, warp.bounds[index].intersection(frame));
+            if (identicalTriangles[index])
+                continue;
+
+            if (endGraphics == null) {
+                staticEndLayer = ImageUtils.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+                endGraphics = staticEndLayer.createGraphics();
+            }
+
+            endGraphics.setClip(warp.paths[index]);
+            endGraphics.drawImage(endImage, 0, 0, null);
+        }
+
+        if (startGraphics != null)
+            startGraphics.dispose();
+        if (endGraphics != null)
+            endGraphics.dispose();
+
+        return new BufferedImage[]{ staticStartLayer, staticEndLayer };
+    }
+
+    /**
+     * Gets the warp map of the frame at t from the warp map cache, making it if it is not there.
+     * @param t t of the frame.
+     * @return The warp map, or null if no warp map cache is set or the frames are too large for warp maps.
+     */
+    private WarpMap getWarpMap(double t) {
+        return getWarpMap(t, true);
+    }
+
+    /**
+     * Gets the warp map of the frame at t from the warp map cache.
+     * @param t t of the frame.
+     * @param create Whether to make the map if it is not cached.
+     * @return The warp map, or null if there is none.
+     */
+    private WarpMap getWarpMap(double t, boolean create) {
+        WarpMapCache cache;
+
+        synchronized (this) {
+            cache = warpMapCache;
+        }
+
+        if (cache == null || width > MAX_MAP_SIZE || height > MAX_MAP_SIZE)
+            return null;
+
+        String key = WarpMapCache.getKey(getLatticeFingerprint(), t);
+
+        WarpMap map = cache.get(key);
+        if (map == null && create) {
+            map = createWarpMap(getWarp(t));
+            cache.put(key, map);
+        }
+
+        return map;
+    }
+
+    /**
+     * Makes the warp map of a frame. Each pixel belongs to the last triangle that contains its centre, and
+     * samples the images where the inverse of the triangle's transforms takes its centre. Insideness is
+     * decided exactly with integer edge functions, with pixel centres on an edge going to just one of the two
+     * triangles that share it, and the points sampled are stepped along each row in 16.16 fixed point.
+     * @param warp The geometry of the frame.
+     * @return The warp map.
+     */
+    private WarpMap createWarpMap(Warp warp) {
+        WarpMap map = new WarpMap();
+        map.triangles = new short[width * height];
+        map.startCoords = new int[width * height];
+        map.endCoords = new int[width * height];
+
+        Arrays.fill(map.triangles, (short) -1);
+
+        Rectangle frame = new Rectangle(0, 0, width, height);
+
+        // edge functions of the triangle at the first pixel of a row, how much they change from one pixel to the
+        // next, and 1 for edges that own the pixel centres on them
+        long[] edges = new long[3], edgeSteps = new long[3];
+        int[] edgeBias = new int[3];
+
+        for (int index = 0; index < warp.triangles.length; index++) {
+            AffineTransform startInverse, endInverse;
+            try {
+                startInverse = warp.startTransforms[index].createInverse();
+                endInverse = warp.endTransforms[index].createInverse();
+            } catch (NoninvertibleTransformException e) {
+                // the triangle has collapsed and covers no pixels
+                continue;
+            }
+
+            Polygon triangle = warp.triangles[index];
+            Rectangle bounds = triangle.getBounds().intersection(frame);
+            if (bounds.isEmpty())
+                continue;
+
+            // corners in twice pixel coordinates, so pixel centres are whole numbers too; wound so that the
+            // inside is on the positive side of every edge
+            int[] cornerX = new int[3], cornerY = new int[3];
+            int[] xpoints = triangle.xpoints, ypoints = triangle.ypoints;
+            long area = (long) (xpoints[1] - xpoints[0]) * (ypoints[2] - ypoints[0])
+                        - (long) (ypoints[1] - ypoints[0]) * (xpoints[2] - xpoints[0]);
+            for (int i = 0; i < 3; i++) {
+                int corner = area >= 0 ? i : (3 - i) % 3;
+                cornerX[i] = 2 * triangle.xpoints[corner];
+                cornerY[i] = 2 * triangle.ypoints[corner];
+            }
+
+            for (int i = 0; i < 3; i++) {
+                int dx = cornerX[(i + 1) % 3] - cornerX[i], dy = cornerY[(i + 1) % 3] - cornerY[i];
+
+                // of the two triangles sharing an edge, which run along it in opposite directions, only one
+                // owns its pixel centres
+                edgeBias[i] = dy > 0 || (dy == 0 && dx > 0) ? 1 : 0;
+                edgeSteps[i] = -2L * dy;
+            }
+
+            // 16.16 fixed point steps of the points sampled from one pixel to the next
+            long startStepX = Math.round(startInverse.getScaleX() * 65536);
+            long startStepY = Math.round(startInverse.getShearY() * 65536);
+            long endStepX = Math.round(endInverse.getScaleX() * 65536);
+            long endStepY = Math.round(endInverse.getShearY() * 65536);
+
+            for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+                int centreY = 2 * y + 1, centreX = 2 * bounds.x + 1;
+
+                for (int i = 0; i < 3; i++) {
+                    int next = (i + 1) % 3;
+                    edges[i] = (long) (cornerX[next] - cornerX[i]) * (centreY - cornerY[i])
+                               - (long) (cornerY[next] - cornerY[i]) * (centreX - cornerX[i]);
+                }
+
+                // the points the first pixel of the row samples, in 16.16 fixed point
+                long startX = getFixedPoint(startInverse, bounds.x, y, true);
+                long startY = getFixedPoint(startInverse, bounds.x, y, false);
+                long endX = getFixedPoint(endInverse, bounds.x, y, true);
+                long endY = getFixedPoint(endInverse, bounds.x, y, false);
+
+                int pixel = y * width + bounds.x;
+
+                for (int x = bounds.x; x < bounds.x + bounds.width; x++, pixel++) {
+                    if (edges[0] + edgeBias[0] > 0 && edges[1] + edgeBias[1] > 0 && edges[2] + edgeBias[2] > 0) {
+                        map.triangles[pixel] = (short) index;
+                        map.startCoords[pixel] = packMapCoords(startX, startY);
+                        map.endCoords[pixel] = packMapCoords(endX, endY);
+                    }
+
+                    edges[0] += edgeSteps[0];
+                    edges[1] += edgeSteps[1];
+                    edges[2] += edgeSteps[2];
+                    startX += startStepX;
+                    startY += startStepY;
+                    endX += endStepX;
+                    endY += endStepY;
+                }
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * Finds where a frame pixel samples an image, in 16.16 fixed point.
+     * @param inverse The transform from the frame into the image.
+     * @param x x of the pixel.
+     * @param y y of the pixel.
+     * @param horizontal Whether to find x rather than y.
+     * @return x or y of the point, times 65536.
+     */
+    private static long getFixedPoint(AffineTransform inverse, int x, int y, boolean horizontal) {
+        double centreX = x + 0.5, centreY = y + 0.5;
+
+        // pixel centres are half a pixel from the pixel's coordinates, in the image as in the frame
+        double point;
+        if (horizontal)
+            point = inverse.getScaleX() * centreX + inverse.getShearX() * centreY + inverse.getTranslateX() - 0.5;
+        else
+            point = inverse.getShearY() * centreX + inverse.getScaleY() * centreY + inverse.getTranslateY() - 0.5;
+
+        return Math.round(point * 65536);
+    }
+
+    /**
+     * Rounds a 16.16 fixed point point to the precision of warp maps and packs it.
+     * @param x x of the point, times 65536.
+     * @param y y of the point, times 65536.
+     * @return The point as packed fixed point coordinates; see WarpMap.
+     */
+    private int packMapCoords(long x, long y) {
+        int shift = 16 - MAP_FRACTION_BITS, rounding = 1 << (shift - 1);
+
+        // points past the edge sample the edge, like Java2D
+        long fixedX = Math.max(0, Math.min((long) (width - 1) << MAP_FRACTION_BITS, (x + rounding) >> shift));
+        long fixedY = Math.max(0, Math.min((long) (height - 1) << MAP_FRACTION_BITS, (y + rounding) >> shift));
+
+        return (int) ((fixedX << 16) | fixedY);
+    }
+
+    /**
+     * Renders part of the frame of the morph at t from its warp map, sampling each image at the points in the
+     * map and blending them.
+     * @param map The warp map of the frame.
+     * @param t t of the frame.
+     * @param region The part of the frame to render.
+     * @param bicubic Whether to sample bicubically, for the best frames, rather than bilinearly.
+     * @return The rendered part of the frame, the size of the region.
+     */
+    private BufferedImage render(WarpMap map, double t, Rectangle region, boolean bicubic) {
+        int[] start, end;
+
+        synchronized (this) {
+            if (startPixels == null) {
+                startPixels = getPremultipliedPixels(startImage);
+                endPixels = getPremultipliedPixels(endImage);
+            }
+
+            start = startPixels;
+            end = endPixels;
+        }
+
+        // weight of the end image, out of 256
+        int endWeight = (int) Math.round(Math.min(t, 1.0) * 256);
+
+        int[] pixels = new int[region.width * region.height];
+
+        for (int y = region.y; y < region.y + region.height; y++)
+            PixelKernels.gatherRow(start, end, width, height, map.triangles, map.startCoords, map.endCoords,
+                                   y * width + region.x, pixels, (y - region.y) * region.width, region.width,
+                                   endWeight, bicubic);
+
+        BufferedImage frame = ImageUtils.createCompatibleImage(region.width, region.height, Transparency.TRANSLUCENT);
+
+        // copied in rather than wrapping the array, so the image can still be cached on the graphics card
+        frame.getRaster().setDataElements(0, 0, region.width, region.height, pixels);
+
+        return frame;
+    }
+
+    /**
+     * Calculates the lattice at t.
+     * @param t t in equation X(t) = ((1-t) * X_start) + (t * X_end)
+     * @return The lower triangles and the upper triangles of the lattice.
+     */
+    private Polygon[][][] getCurrentTriangles(double t) {
+        // temporary x and y coordinates
+        int[][] currentXCoords = new int[dimension][dimension];
+        int[][] currentYCoords = new int[dimension][dimension];
+
+        // Calculate the next positions to draw
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < dimension; j++) {
+                // Coordinates that are the same at the start and end stay exactly where they are
+                // Prevents shakiness in fixed points that results from rounding
+                if (startXCoords[i][j] == endXCoords[i][j])
+                    currentXCoords[i][j] = startXCoords[i][j];
+                else
+                    currentXCoords[i][j] = (int) ((1 - t)*startXCoords[i][j] + t*endXCoords[i][j]);
+
+                if (startYCoords[i][j] == endYCoords[i][j])
+                    currentYCoords[i][j] = startYCoords[i][j];
+                else
+                    currentYCoords[i][j] = (int) ((1 - t)*startYCoords[i][j] + t*endYCoords[i][j]);
+            }
+        }
+
+        return new Polygon[][][]{ getLowerTriangles(currentXCoords, currentYCoords),
+                                  getUpperTriangles(currentXCoords, currentYCoords) };
+    }
+
+    /**
+     * Calculates the affine transforms that map each source triangle onto its destination triangle, and
+     * records the destination triangles in the warp.
+     * @param srcTriangles Source triangles.
+     * @param destTriangles The destination triangles where the source triangles will be mapped.
+     * @param transforms The transforms, written from offset on.
+     * @param warp The warp the destination triangles are written to, from offset on.
+     * @param offset Index of the first triangle.
+     */
+    private void calculateAffineTransforms(Polygon[][] srcTriangles,
+                                           Polygon[][] destTriangles,
+                                           AffineTransform[] transforms,
+                                           Warp warp,
+                                           int offset) {
+
+        /*
+         * The following two matrix equations will be solved:
+         *
+         *     A * x1 = bX
+         *     A * x2 = bY
+         *
+         * where A is a 3x3 matrix composed of the (x, y) coordinates of the source triangles (and a row of ones in the
+         * third column), bX is a 3x1 matrix consisting of the x-coordinates of the destination triangles, and
+         * bY is a 3x1 matrix consisting of the y-coordinates of the destination triangles.
+         *
+         * x1 and x2 are used to create the affine transform to be applied to create the destination image.
+         */
+        Matrix A;
+        Matrix x1;
+        Matrix x2;
+        Matrix bX;
+        Matrix bY;
+
+        double[][] AVals;
+        double[][] bXVals;
+        double[][] bYVals;
+
+        int index = offset;
+
+        for (int i = 0; i < dimension+1; i++) {
+            for (int j = 0; j < dimension+1; j++, index++) {
+                AVals = new double[][]{
+                        {(double) srcTriangles[i][j].xpoints[0], (double) srcTriangles[i][j].ypoints[0], 1.d},
+                        {(double) srcTriangles[i][j].xpoints[1], (double) srcTriangles[i][j].ypoints[1], 1.d},
+                        {(double) srcTriangles[i][j].xpoints[2], (double) srcTriangles[i][j].ypoints[2], 1.d}
+                };
+
+                bXVals = new double[][] {
+                        {(double) destTriangles[i][j].xpoints[0]},
+                        {(double) destTriangles[i][j].xpoints[1]},
+                        {(double) destTriangles[i][j].xpoints[2]}
+                };
+
+                bYVals = new double[][] {
+                        {(double) destTriangles[i][j].ypoints[0]},
+                        {(double) destTriangles[i][j].ypoints[1]},
+                        {(double) destTriangles[i][j].ypoints[2]}
+                };
+
+                A = new Matrix(AVals);
+                bX = new Matrix(bXVals);
+                bY = new Matrix(bYVals);
+
+                x1 = A.solve(bX);
+                x2 = A.solve(bY);
+
+                // everything below in this function is based on the code from Dr. Seales' slides on morphing
+                AffineTransform affineTransform = new AffineTransform(x1.get(0, 0), x2.get(0,0),
+                                                                      x1.get(1, 0), x2.get(1 , 0),
+                                                                      x1.get(2, 0), x2.get(2, 0));
+
+                GeneralPath destPath = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+
+                destPath.moveTo((float) bX.get(0, 0), (float) bY.get(0, 0));
+                destPath.lineTo((float) bX.get(1, 0), (float) bY.get(1, 0));
+                destPath.lineTo((float) bX.get(2, 0), (float) bY.get(2, 0));
+                destPath.lineTo((float) bX.get(0, 0), (float) bY.get(0, 0));
+
+                transforms[index] = affineTransform;
+                warp.triangles[index] = destTriangles[i][j];
+                warp.paths[index] = destPath;
+
+                // grown for antialiased edges
+                warp.bounds[index] = destTriangles[i][j].getBounds();
+                warp.bounds[index].grow(1, 1);
+            }
+        }
+    }
+
+    /**
+     * Draws the source image into each triangle of a frame through its affine transform.
+     * @param src Source image, or one of its mip levels.
+     * @param dest Destination image.
+     * @param transforms The transforms from the source image into the frame, one for each triangle.
+     * @param warp The geometry of the frame.
+     * @param quality QUALITY_FAST or QUALITY_BEST.
+     * @param region The part of the frame dest holds, at full scale; triangles outside of it are skipped.
+     * @param scale The scale of dest.
+     * @param skipStatic Whether to skip static triangles, which are already in dest.
+     */
+    private void applyAffineTransforms(BufferedImage src,
+                                       BufferedImage dest,
+                                       AffineTransform[] transforms,
+                                       Warp warp,
+                                       int quality,
+                                       Rectangle region,
+                                       double scale,
+                                       boolean skipStatic) {
+        // one graphics context for all of the triangles; the clip is set in frame space for each one, and
+        // frame space is shifted so the region lands at the corner of dest
+        Graphics2D g2 = dest.createGraphics();
+        if (scale != 1.0)
+            g2.scale(scale, scale);
+        g2.translate(-region.x, -region.y);
+        AffineTransform identity = g2.getTransform();
+
+        if (quality == QUALITY_BEST) {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        } else {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        }
+
+        // a mip level is drawn scaled back up to the size of the image the transforms map from
+        boolean mipLevel = src.getWidth() != width || src.getHeight() != height;
+
+        // at full scale, whole pixel translations are copied by Java2D's blit loops, which copy the
+        // source a row at a time without interpolating, through the same clip as every other triangle
+        boolean copyTranslations = scale == 1.0 && !mipLevel;
+
+        for (int index = 0; index < transforms.length; index++) {
+            // triangles outside the region do not touch dest
+            if (!warp.bounds[index].intersects(region))
+                continue;
+
+            if (skipStatic && warp.kinds[index] == TRIANGLE_STATIC)
+                continue;
+
+            // draw the source through the transform, clipped to the destination triangle
+            g2.setTransform(identity);
+            g2.setClip(warp.paths[index]);
+
+            Point translation = copyTranslations ? getTranslation(transforms[index]) : null;
+            if (translation != null) {
+                g2.drawImage(src, translation.x, translation.y, null);
+                continue;
+            }
+
+            g2.transform(transforms[index]);
+            if (mipLevel)
+                g2.scale((double) width / src.getWidth(), (double) height / src.getHeight());
+            g2.drawImage(src, 0, 0, null);
+        }
+
+        g2.dispose();
+    }
+
+    /**
+     * Calculates upperTriangles for a lattice.
+     * @param xCoords x coordinates of the control points
+     * @param yCoords y coordinates of the control points
+     * @return 2D polygon array consisting of upper triangles of the lattice
+     */
+    private Polygon[][] getUpperTriangles(int[][] xCoords, int[][] yCoords) {
+        Polygon[][] upperTriangles = new Polygon[dimension+1][dimension+1];
+
+        for (int i = 0; i < dimension+1; i++) {
+            for (int j = 0; j < dimension+1; j++) {
+                // coordinates for the triangle
+                int[] triangleXCoords;
+                int[] triangleYCoords;
+
+                // coordinates for each corner of the triangle
+                int aX, aY, bX, bY, cX, cY;
+
+                // get coordinates for first corner
+                if (i == 0 && j == 0) {
+                    aX = 0;
+                    aY = 0;
+                } else if (i == 0) {
+                    aX = (int) widthOffset * j;
+                    aY = 0;
+                } else if (j == 0) {
+                    aX = 0;
+                    aY =(int) heightOffset * i;
+                } else {
+                    aX = xCoords[i-1][j-1];
+                    aY = yCoords[i-1][j-1];
+                }
+
+                // get coordinates for second corner
+                if (i == 0 && j == dimension) {
+                    bX = width;
+                    bY = 0;
+                } else if (j == dimension) {
+                    bX = width;
+                    bY = (int) heightOffset * i;
+                } else if (i == 0) {
+                    bX = (int) widthOffset * (j+1);
+                    bY = 0;
+                } else {
+                    bX = xCoords[i-1][j];
+                    bY = yCoords[i-1][j];
+                }
+
+                // get coordinates for third corner
+                if (j == 0 && i == dimension) {
+                    cX = 0;
+                    cY = height;
+                } else if (j == 0) {
+                    cX = 0;
+                    cY = (int) heightOffset * (i+1);
+                } else if (i == dimension) {
+                    cX = (int) widthOffset * j;
+                    cY = height;
+                } else {
+                    cX = xCoords[i][j-1];
+                    cY = yCoords[i][j-1];
+                }
+
+                // initialize coordinate arrays for this triangle
+                triangleXCoords = new int[]{aX, bX, cX};
+                triangleYCoords = new int[]{aY, bY, cY};
+
+                upperTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
+            }
+        }
+
+        return upperTriangles;
+    }
+
+    /**
+     * Calculates lowerTriangles for a lattice.
+     * @param xCoords x coordinates of the control points
+     * @param yCoords y coordinates of the control points
+     * @return 2D polygon array consisting of lower triangles of the lattice
+     */
+    private Polygon[][] getLowerTriangles(int[][] xCoords, int[][] yCoords) {
+        Polygon[][] lowerTriangles = new Polygon[dimension+1][dimension+1];
+
+        for (int i = 0; i < dimension+1; i++) {
+            for (int j = 0; j < dimension+1; j++) {
+                // coordinates for the triangle
+                int[] triangleXCoords;
+                int[] triangleYCoords;
+
+                // coordinates for each corner of the triangle
+                int aX, aY, bX, bY, cX, cY;
+
+                // set the coordinates of first corner
+                if (i == 0 && j == dimension) {
+                    aX = width;
+                    aY = 0;
+                } else if (i == 0) {
+                    aX = (int) widthOffset * (j + 1);
+                    aY = 0;
+                } else if (j == dimension) {
+                    aX = width;
+                    aY = (int) heightOffset * i;
+                } else {
+                    aX = xCoords[i-1][j];
+                    aY = yCoords[i-1][j];
+                }
+
+                // set coordinates of second corner
+                if (i == dimension && j == dimension) {
+                    bX = width;
+                    bY = height;
+                } else if (j == dimension) {
+                    bX = width;
+                    bY = (int) heightOffset * (i+1);
+                } else if (i == dimension) {
+                    bX = (int) widthOffset * (j+1);
+                    bY = height;
+                } else {
+                    bX = xCoords[i][j];
+                    bY = yCoords[i][j];
+                }
+
+                // set coordinates of third corner
+                if (j == 0 && i == dimension) {
+                    cX = 0;
+                    cY = height;
+                } else if (j == 0) {
+                    cX = 0;
+                    cY = (int) heightOffset * (i+1);
+                } else if (i == dimension) {
+                    cX = (int) widthOffset * j;
+                    cY = height;
+                } else {
+                    cX = xCoords[i][j-1];
+                    cY = yCoords[i][j-1];
+                }
+
+                // create coordinate arrays
+                triangleXCoords = new int[]{aX, bX, cX};
+                triangleYCoords = new int[]{aY, bY, cY};
+
+                lowerTriangles[i][j] = new Polygon(triangleXCoords, triangleYCoords, 3);
+            }
+        }
+
+        return lowerTriangles;
+    }
+
+    /**
+     * Starts a SHA-256 digest of the settings, the frame size, and both images.
+     * @return The digest.
+     */
+    private MessageDigest createImageDigest() {
+        MessageDigest digest = DigestUtils.createSha256();
+
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+        // frames rendered from warp maps are sampled differently
+        if (warpMapCache != null)
+            digest.update("warp maps bicubic".getBytes(StandardCharsets.UTF_8));
+
+        updateDigest(digest, new int[]{width, height});
+        updateDigest(digest, startImage);
+        updateDigest(digest, endImage);
+
+        return digest;
+    }
+
+    /**
+     * @param a A polygon.
+     * @param b Another polygon.
+     * @return Whether the polygons have the same points.
+     */
+    private static boolean samePolygon(Polygon a, Polygon b) {
+        return a.npoints == b.npoints
+                && Arrays.equals(Arrays.copyOf(a.xpoints, a.npoints), Arrays.copyOf(b.xpoints, b.npoints))
+                && Arrays.equals(Arrays.copyOf(a.ypoints, a.npoints), Arrays.copyOf(b.ypoints, b.npoints));
+    }
+
+    /**
+     * Checks whether a transform is the identity or a translation by whole pixels, within
+     * TRANSLATION_TOLERANCE anywhere in the image.
+     * @param transform A transform from an image into the frame.
+     * @return The translation, or null if the transform is not one.
+     */
+    private Point getTranslation(AffineTransform transform) {
+        double dx = Math.rint(transform.getTranslateX()), dy = Math.rint(transform.getTranslateY());
+
+        // the most any point of the image is moved away from where the translation puts it
+        double errorX = Math.abs(transform.getScaleX() - 1) * width + Math.abs(transform.getShearX()) * height
+                        + Math.abs(transform.getTranslateX() - dx);
+        double errorY = Math.abs(transform.getShearY()) * width + Math.abs(transform.getScaleY() - 1) * height
+                        + Math.abs(transform.getTranslateY() - dy);
+
+        if (errorX > TRANSLATION_TOLERANCE || errorY > TRANSLATION_TOLERANCE)
+            return null;
+
+        return new Point((int) dx, (int) dy);
+    }
+
+    /**
+     * @param a An image.
+     * @param b Another image the same size.
+     * @param area The part of the images to compare.
+     * @return Whether the images have the same pixels in the area.
+     */
+    private static boolean samePixels(BufferedImage a, BufferedImage b, Rectangle area) {
+        int[] rowA = new int[Math.max(0, area.width)], rowB = new int[Math.max(0, area.width)];
+
+        for (int y = area.y; y < area.y + area.height; y++) {
+            a.getRGB(area.x, y, area.width, 1, rowA, 0, area.width);
+            b.getRGB(area.x, y, area.width, 1, rowB, 0, area.width);
+
+            if (!Arrays.equals(rowA, rowB))
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets a mip level of an image, halving the level above it as many times as needed.
+     * @param levels The levels made so far, starting with the image itself.
+     * @param image The image.
+     * @param level The level; 0 for the image, 1 for half its width and height, and so on.
+     * @return The level in the canonical layout.
+     */
+    private static BufferedImage getMipLevel(ArrayList<BufferedImage> levels, BufferedImage image, int level) {
+        synchronized (levels) {
+            if (levels.isEmpty())
+                levels.add(image);
+
+            while (levels.size() <= level) {
+                BufferedImage above = levels.get(levels.size() - 1);
+                int levelWidth = Math.max(1, (above.getWidth() + 1) / 2);
+                int levelHeight = Math.max(1, (above.getHeight() + 1) / 2);
+
+                // bilinear sampling at half size averages each 2x2 block
+                BufferedImage halved = ImageUtils.createCompatibleImage(levelWidth, levelHeight,
+                                                                        above.getTransparency());
+                Graphics2D g2 = halved.createGraphics();
+                g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2.drawImage(above, 0, 0, levelWidth, levelHeight, null);
+                g2.dispose();
+
+                levels.add(halved);
+            }
+
+            return levels.get(level);
+        }
+    }
+
+    /**
+     * Reads the pixels of an image as premultiplied ARGB.
+     * @param image The image.
+     * @return The pixels, row by row.
+     */
+    private static int[] getPremultipliedPixels(BufferedImage image) {
+        int imageWidth = image.getWidth(), imageHeight = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, imageWidth, imageHeight, null, 0, imageWidth);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int alpha = pixels[i] >>> 24;
+
+            if (alpha == 255)
+                continue;
+
+            int red = ((pixels[i] >> 16) & 0xff) * alpha / 255;
+            int green = ((pixels[i] >> 8) & 0xff) * alpha / 255;
+            int blue = (pixels[i] & 0xff) * alpha / 255;
+
+            pixels[i] = (alpha << 24) | (red << 16) | (green << 8) | blue;
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Scales an image down.
+     * @param image The image.
+     * @param scale The scale.
+     * @return The scaled image in the canonical layout.
+     */
+    private static BufferedImage scaleImage(BufferedImage image, double scale) {
+        int scaledWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int scaledHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        BufferedImage scaled = ImageUtils.createCompatibleImage(scaledWidth, scaledHeight, image.getTransparency());
+
+        Graphics2D g2 = scaled.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(image, 0, 0, scaledWidth, scaledHeight, null);
+        g2.dispose();
+
+        return scaled;
+    }
+
+    /**
+     * Scales a 2D coordinate array.
+     * @param coords The coordinates.
+     * @param scale The scale.
+     * @return The scaled coordinates.
+     */
+    private static int[][] scaleCoords(int[][] coords, double scale) {
+        int[][] scaled = new int[coords.length][];
+
+        for (int i = 0; i < coords.length; i++) {
+            scaled[i] = new int[coords[i].length];
+
+            for (int j = 0; j < coords[i].length; j++)
+                scaled[i][j] = (int) Math.round(coords[i][j] * scale);
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Adds the pixels of an image to a digest.
+     * @param digest The digest.
+     * @param image The image.
+     */
+    private static void updateDigest(MessageDigest digest, BufferedImage image) {
+        int imageWidth = image.getWidth();
+        int[] row = new int[imageWidth];
+
+        updateDigest(digest, new int[]{imageWidth, image.getHeight()});
+
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, imageWidth, 1, row, 0, imageWidth);
+            updateDigest(digest, row);
+        }
+    }
+
+    /**
+     * Adds an array of ints to a digest.
+     * @param digest The digest.
+     * @param values The ints.
+     */
+    private static void updateDigest(MessageDigest digest, int[] values) {
+        ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+        bytes.asIntBuffer().put(values);
+
+        digest.update(bytes);
+    }
+
+    /**
+     * Copies a 2D coordinate array.
+     * @param coords The coordinates to copy.
+     * @return A copy of the coordinates.
+     */
+    private static int[][] copyCoords(int[][] coords) {
+        int[][] copy = new int[coords.length][];
+
+        for (int i = 0; i < coords.length; i++)
+            copy[i] = coords[i].clone();
+
+        return copy;
+    }
+}
@@ -0,0 +1,495 @@
+/*
+ * File:       PixelKernels.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    The inner loops of rendering frames from warp maps: sampling premultiplied ARGB pixels bilinearly
+ *             or bicubically and cross-dissolving the start and end images. Everything is integer arithmetic,
+ *             with the weights for each sub-pixel fraction worked out exactly in integers once, so frames are
+ *             the same to the bit on every JVM and CPU. The packed kernels work on two channels at once, red
+ *             and blue in one word and alpha and green in another. Bilinear sampling and blending use 16 bit
+ *             lanes of an int; the weights always add up to a power of two, so no lane can overflow into the
+ *             next. Bicubic weights can be negative, so it uses 32 bit lanes of a long, and a lane that goes
+ *             negative borrows from the one above, which is given back when the lanes are taken apart. The
+ *             per-channel kernels give exactly the same results and are used when the system property
+ *             imagemorph.kernels is "scalar". There is no runtime detection: both are plain Java that the JIT
+ *             compiles for the CPU it runs on, and Java 8 has no portable way to ask which vector instructions
+ *             the CPU has, so the property alone selects them. KernelCheck compares the two bit for bit and
+ *             measures their speed; on one core with OpenJDK 17 the packed kernels take about 0.7 of the time
+ *             of the per-channel ones for bilinear sampling and blending, and 0.9 for bicubic sampling, well
+ *             short of twice as fast but faster in every case, so they are the default.
+ *
+ */
+
+public class PixelKernels {
+    // fractional bits of sample coordinates, and the weight of a whole pixel. Sample points are rounded to the
+    // nearest 1/16 of a pixel, so they are at most 1/32 of a pixel from where Java2D samples in floating point;
+    // bicubic frames from warp maps are about 48 dB PSNR from Java2D's (see KernelCheck). More bits would bring
+    // them closer, but warp maps pack each coordinate into 16 bits, so every bit added halves the largest
+    // frame they can be used for, from 4096 pixels now
+    public static final int SUBPIXEL_BITS = 4;
+    private static final int ONE = 1 << SUBPIXEL_BITS;
+
+    // the bits of an 8 bit channel lost when dividing by the weights, and half of them for rounding
+    private static final int SAMPLE_SHIFT = 2 * SUBPIXEL_BITS;
+    private static final int SAMPLE_ROUNDING = 1 << (SAMPLE_SHIFT - 1);
+
+    // fractional bits of the bicubic weights, the bits lost when dividing by them in both directions, and half
+    // of those bits for rounding
+    private static final int BICUBIC_BITS = 8;
+    private static final int BICUBIC_SHIFT = 2 * BICUBIC_BITS;
+    private static final int BICUBIC_ROUNDING = 1 << (BICUBIC_SHIFT - 1);
+
+    // weights of the pixel at and after the point for each sub-pixel fraction, out of ONE
+    private static final int[][] BILINEAR_WEIGHTS = createBilinearWeights();
+
+    // weights of the top left, top right, bottom left and bottom right pixels for each pair of sub-pixel
+    // fractions, four at (fractionY * ONE + fractionX) * 4, out of ONE * ONE
+    private static final int[] CORNER_WEIGHTS = createCornerWeights();
+
+    // weights of the pixels one before, at, one after and two after the point for each sub-pixel fraction,
+    // out of 1 << BICUBIC_BITS
+    private static final int[][] BICUBIC_WEIGHTS = createBicubicWeights();
+
+    // weight of the whole end image when blending
+    private static final int BLEND_ONE = 256;
+
+    // red and blue, or alpha and green once shifted down 8 bits, each in the low byte of a 16 bit lane
+    private static final int LOW_BYTES = 0x00ff00ff;
+
+    // whether the packed kernels are used
+    private static final boolean PACKED = !"scalar".equals(System.getProperty("imagemorph.kernels"));
+
+    /**
+     * @return Whether the packed kernels are used rather than the per-channel ones.
+     */
+    public static boolean isPacked() { return PACKED; }
+
+    /**
+     * Renders a row of a frame from its warp map, sampling each image where the map says and blending the
+     * samples.
+     * @param start Premultiplied ARGB pixels of the start image, row by row.
+     * @param end Premultiplied ARGB pixels of the end image, the same size.
+     * @param width Width of the images.
+     * @param height Height of the images.
+     * @param triangles Triangle index of each pixel of the frame; negative for pixels left transparent.
+     * @param startCoords Packed fixed point point each pixel samples in the start image; see MorphRenderer.
+     * @param endCoords Packed fixed point point each pixel samples in the end image.
+     * @param mapOffset Index of the first pixel of the row in the map.
+     * @param dest Where the row is written.
+     * @param destOffset Index of the first pixel of the row in dest.
+     * @param length The number of pixels in the row.
+     * @param endWeight Weight of the end image, out of 256.
+     * @param bicubic Whether to sample bicubically rather than bilinearly.
+     */
+    public static void gatherRow(int[] start, int[] end, int width, int height, short[] triangles,
+                                 int[] startCoords, int[] endCoords, int mapOffset, int[] dest, int destOffset,
+                                 int length, int endWeight, boolean bicubic) {
+        for (int i = 0; i < length; i++) {
+            int pixel = mapOffset + i;
+
+            // pixels outside every triangle are left transparent
+            if (triangles[pixel] < 0)
+                continue;
+
+            int startColor, endColor;
+            if (bicubic) {
+                startColor = sampleBicubic(start, width, height, startCoords[pixel]);
+                endColor = sampleBicubic(end, width, height, endCoords[pixel]);
+            } else {
+                startColor = sample(start, width, height, startCoords[pixel]);
+                endColor = sample(end, width, height, endCoords[pixel]);
+            }
+
+            dest[destOffset + i] = blend(startColor, endColor, endWeight);
+        }
+    }
+
+    /**
+     * Samples premultiplied pixels bilinearly.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param coords The point, x in the high 16 bits and y in the low 16 bits, with SUBPIXEL_BITS fractional bits.
+     * @return The premultiplied ARGB colour at the point.
+     */
+    public static int sample(int[] pixels, int width, int height, int coords) {
+        return sample(pixels, width, height, coords, PACKED);
+    }
+
+    /**
+     * Samples premultiplied pixels bilinearly with the packed or the per-channel kernel.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param coords The point, x in the high 16 bits and y in the low 16 bits, with SUBPIXEL_BITS fractional bits.
+     * @param packed Whether to use the packed kernel.
+     * @return The premultiplied ARGB colour at the point.
+     */
+    static int sample(int[] pixels, int width, int height, int coords, boolean packed) {
+        int fixedX = coords >>> 16, fixedY = coords & 0xffff;
+        int x0 = fixedX >> SUBPIXEL_BITS, y0 = fixedY >> SUBPIXEL_BITS;
+        int fractionX = fixedX & (ONE - 1), fractionY = fixedY & (ONE - 1);
+
+        // the next pixel right and down, or the same pixel at the edge
+        int x1 = Math.min(x0 + 1, width - 1), y1 = Math.min(y0 + 1, height - 1);
+
+        int topLeft = pixels[y0 * width + x0], topRight = pixels[y0 * width + x1];
+        int bottomLeft = pixels[y1 * width + x0], bottomRight = pixels[y1 * width + x1];
+
+        if (packed)
+            return samplePacked(topLeft, topRight, bottomLeft, bottomRight,
+                                ((fractionY << SUBPIXEL_BITS) | fractionX) << 2);
+        else
+            return sampleScalar(topLeft, topRight, bottomLeft, bottomRight, BILINEAR_WEIGHTS[fractionX],
+                                BILINEAR_WEIGHTS[fractionY]);
+    }
+
+    /**
+     * Samples premultiplied pixels bicubically, with the same cubic as Java2D (a = -0.5). Channels that
+     * overshoot are clamped to 0..255, and colours to at most alpha so the result is still premultiplied.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param coords The point, x in the high 16 bits and y in the low 16 bits, with SUBPIXEL_BITS fractional bits.
+     * @return The premultiplied ARGB colour at the point.
+     */
+    public static int sampleBicubic(int[] pixels, int width, int height, int coords) {
+        return sampleBicubic(pixels, width, height, coords, PACKED);
+    }
+
+    /**
+     * Samples premultiplied pixels bicubically with the packed or the per-channel kernel.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param coords The point, x in the high 16 bits and y in the low 16 bits, with SUBPIXEL_BITS fractional bits.
+     * @param packed Whether to use the packed kernel.
+     * @return The premultiplied ARGB colour at the point.
+     */
+    static int sampleBicubic(int[] pixels, int width, int height, int coords, boolean packed) {
+        int fixedX = coords >>> 16, fixedY = coords & 0xffff;
+        int x = fixedX >> SUBPIXEL_BITS, y = fixedY >> SUBPIXEL_BITS;
+        int fractionX = fixedX & (ONE - 1), fractionY = fixedY & (ONE - 1);
+
+        // whole pixels, e.g. in triangles that do not move, are the pixel itself
+        if (fractionX == 0 && fractionY == 0)
+            return pixels[y * width + x];
+
+        if (packed)
+            return sampleBicubicPacked(pixels, width, height, x, y, BICUBIC_WEIGHTS[fractionX],
+                                       BICUBIC_WEIGHTS[fractionY]);
+        else
+            return sampleBicubicScalar(pixels, width, height, x, y, BICUBIC_WEIGHTS[fractionX],
+                                       BICUBIC_WEIGHTS[fractionY]);
+    }
+
+    /**
+     * Blends two premultiplied colours.
+     * @param start The start colour.
+     * @param end The end colour.
+     * @param endWeight The weight of the end colour, out of 256.
+     * @return (1 - endWeight) * start + endWeight * end, for each channel, rounded.
+     */
+    public static int blend(int start, int end, int endWeight) {
+        return blend(start, end, endWeight, PACKED);
+    }
+
+    /**
+     * Blends two premultiplied colours with the packed or the per-channel kernel.
+     * @param start The start colour.
+     * @param end The end colour.
+     * @param endWeight The weight of the end colour, out of 256.
+     * @param packed Whether to use the packed kernel.
+     * @return (1 - endWeight) * start + endWeight * end, for each channel, rounded.
+     */
+    static int blend(int start, int end, int endWeight, boolean packed) {
+        if (packed)
+            return blendPacked(start, end, endWeight);
+        else
+            return blendScalar(start, end, endWeight);
+    }
+
+    /**
+     * Bilinear interpolation of four colours, two channels at a time, with one weight for each colour so
+     * each lane is divided only once.
+     * @param topLeft The colour at the point's pixel.
+     * @param topRight The colour right of it.
+     * @param bottomLeft The colour below it.
+     * @param bottomRight The colour below and right of it.
+     * @param weightIndex Index of the four weights in CORNER_WEIGHTS.
+     * @return The interpolated colour.
+     */
+    private static int samplePacked(int topLeft, int topRight, int bottomLeft, int bottomRight, int weightIndex) {
+        int topLeftWeight = CORNER_WEIGHTS[weightIndex], topRightWeight = CORNER_WEIGHTS[weightIndex + 1];
+        int bottomLeftWeight = CORNER_WEIGHTS[weightIndex + 2], bottomRightWeight = CORNER_WEIGHTS[weightIndex + 3];
+
+        // the weights add up to ONE * ONE = 256, so each lane is at most 255 * 256 plus the rounding
+        int rounding = SAMPLE_ROUNDING | (SAMPLE_ROUNDING << 16);
+        int low = (topLeft & LOW_BYTES) * topLeftWeight + (topRight & LOW_BYTES) * topRightWeight
+                  + (bottomLeft & LOW_BYTES) * bottomLeftWeight + (bottomRight & LOW_BYTES) * bottomRightWeight;
+        int high = ((topLeft >>> 8) & LOW_BYTES) * topLeftWeight + ((topRight >>> 8) & LOW_BYTES) * topRightWeight
+                   + ((bottomLeft >>> 8) & LOW_BYTES) * bottomLeftWeight
+                   + ((bottomRight >>> 8) & LOW_BYTES) * bottomRightWeight;
+
+        // SAMPLE_SHIFT is 8, so alpha and green end up in place just by dropping the low byte of each lane
+        return (((low + rounding) >>> SAMPLE_SHIFT) & LOW_BYTES) | ((high + rounding) & ~LOW_BYTES);
+    }
+
+    /**
+     * Bilinear interpolation of four colours, one channel at a time.
+     * @param topLeft The colour at the point's pixel.
+     * @param topRight The colour right of it.
+     * @param bottomLeft The colour below it.
+     * @param bottomRight The colour below and right of it.
+     * @param weightsX Weights of the left and right columns, out of ONE.
+     * @param weightsY Weights of the top and bottom rows, out of ONE.
+     * @return The interpolated colour.
+     */
+    private static int sampleScalar(int topLeft, int topRight, int bottomLeft, int bottomRight, int[] weightsX,
+                                    int[] weightsY) {
+        int color = 0;
+
+        for (int shift = 0; shift < 32; shift += 8) {
+            int top = ((topLeft >>> shift) & 0xff) * weightsX[0] + ((topRight >>> shift) & 0xff) * weightsX[1];
+            int bottom = ((bottomLeft >>> shift) & 0xff) * weightsX[0] + ((bottomRight >>> shift) & 0xff) * weightsX[1];
+            int channel = (top * weightsY[0] + bottom * weightsY[1] + SAMPLE_ROUNDING) >> SAMPLE_SHIFT;
+
+            color |= channel << shift;
+        }
+
+        return color;
+    }
+
+    /**
+     * Bicubic interpolation of the 4x4 pixels around a point, two channels at a time.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param x Column of the pixel at the point.
+     * @param y Row of the pixel at the point.
+     * @param weightsX Weights of the four columns, out of 1 << BICUBIC_BITS.
+     * @param weightsY Weights of the four rows, out of 1 << BICUBIC_BITS.
+     * @return The interpolated colour.
+     */
+    private static int sampleBicubicPacked(int[] pixels, int width, int height, int x, int y, int[] weightsX,
+                                           int[] weightsY) {
+        // the four columns sampled, repeating the edge pixels past the edge
+        int column0 = Math.max(0, x - 1), column1 = x;
+        int column2 = Math.min(width - 1, x + 1), column3 = Math.min(width - 1, x + 2);
+        long weight0 = weightsX[0], weight1 = weightsX[1], weight2 = weightsX[2], weight3 = weightsX[3];
+
+        // red and blue, and alpha and green, each in a 32 bit lane; a lane is at most 255 * 320 * 320 either
+        // way, since no set of weights adds up to more than 1.25 in absolute value
+        long low = 0, high = 0;
+
+        for (int j = 0; j < 4; j++) {
+            // rows a whole number of pixels from the point have no weight
+            int rowWeight = weightsY[j];
+            if (rowWeight == 0)
+                continue;
+
+            int rowStart = Math.max(0, Math.min(height - 1, y - 1 + j)) * width;
+            int color0 = pixels[rowStart + column0], color1 = pixels[rowStart + column1];
+            int color2 = pixels[rowStart + column2], color3 = pixels[rowStart + column3];
+
+            low += (spread(color0) * weight0 + spread(color1) * weight1 + spread(color2) * weight2
+                    + spread(color3) * weight3) * rowWeight;
+            high += (spread(color0 >>> 8) * weight0 + spread(color1 >>> 8) * weight1
+                     + spread(color2 >>> 8) * weight2 + spread(color3 >>> 8) * weight3) * rowWeight;
+        }
+
+        // the low lane is a signed int; taking it off first gives back what it borrowed from the high lane
+        int blue = (int) low, green = (int) high;
+        int red = (int) ((low - blue) >> 32), alpha = (int) ((high - green) >> 32);
+
+        return packBicubic(alpha, red, green, blue);
+    }
+
+    /**
+     * Bicubic interpolation of the 4x4 pixels around a point, one channel at a time.
+     * @param pixels The pixels, row by row.
+     * @param width Width of the image.
+     * @param height Height of the image.
+     * @param x Column of the pixel at the point.
+     * @param y Row of the pixel at the point.
+     * @param weightsX Weights of the four columns, out of 1 << BICUBIC_BITS.
+     * @param weightsY Weights of the four rows, out of 1 << BICUBIC_BITS.
+     * @return The interpolated colour.
+     */
+    private static int sampleBicubicScalar(int[] pixels, int width, int height, int x, int y, int[] weightsX,
+                                           int[] weightsY) {
+        // the four columns sampled, repeating the edge pixels past the edge
+        int column0 = Math.max(0, x - 1), column1 = x;
+        int column2 = Math.min(width - 1, x + 1), column3 = Math.min(width - 1, x + 2);
+        int weight0 = weightsX[0], weight1 = weightsX[1], weight2 = weightsX[2], weight3 = weightsX[3];
+
+        int alpha = 0, red = 0, green = 0, blue = 0;
+
+        for (int j = 0; j < 4; j++) {
+            // rows a whole number of pixels from the point have no weight
+            int rowWeight = weightsY[j];
+            if (rowWeight == 0)
+                continue;
+
+            int rowStart = Math.max(0, Math.min(height - 1, y - 1 + j)) * width;
+            int color0 = pixels[rowStart + column0], color1 = pixels[rowStart + column1];
+            int color2 = pixels[rowStart + column2], color3 = pixels[rowStart + column3];
+
+            alpha += ((color0 >>> 24) * weight0 + (color1 >>> 24) * weight1 + (color2 >>> 24) * weight2
+                      + (color3 >>> 24) * weight3) * rowWeight;
+            red += (((color0 >> 16) & 0xff) * weight0 + ((color1 >> 16) & 0xff) * weight1
+                    + ((color2 >> 16) & 0xff) * weight2 + ((color3 >> 16) & 0xff) * weight3) * rowWeight;
+            green += (((color0 >> 8) & 0xff) * weight0 + ((color1 >> 8) & 0xff) * weight1
+                      + ((color2 >> 8) & 0xff) * weight2 + ((color3 >> 8) & 0xff) * weight3) * rowWeight;
+            blue += ((color0 & 0xff) * weight0 + (color1 & 0xff) * weight1 + (color2 & 0xff) * weight2
+                     + (color3 & 0xff) * weight3) * rowWeight;
+        }
+
+        return packBicubic(alpha, red, green, blue);
+    }
+
+    /**
+     * @param color A colour, or a colour shifted down 8 bits.
+     * @return Its lowest channel in the low 32 bit lane and its third lowest in the high lane.
+     */
+    private static long spread(int color) {
+        return ((color & 0xff0000L) << 16) | (color & 0xffL);
+    }
+
+    /**
+     * Rounds bicubic sums to 8 bit channels and packs them. Channels that overshoot are clamped to 0..255,
+     * and colours to at most alpha so the result is still premultiplied.
+     * @param alpha Sum of the alpha channel, with BICUBIC_SHIFT fractional bits.
+     * @param red Sum of the red channel.
+     * @param green Sum of the green channel.
+     * @param blue Sum of the blue channel.
+     * @return The premultiplied ARGB colour.
+     */
+    private static int packBicubic(int alpha, int red, int green, int blue) {
+        alpha = clamp((alpha + BICUBIC_ROUNDING) >> BICUBIC_SHIFT, 255);
+        red = clamp((red + BICUBIC_ROUNDING) >> BICUBIC_SHIFT, alpha);
+        green = clamp((green + BICUBIC_ROUNDING) >> BICUBIC_SHIFT, alpha);
+        blue = clamp((blue + BICUBIC_ROUNDING) >> BICUBIC_SHIFT, alpha);
+
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * Blends two colours, two channels at a time.
+     * @param start The start colour.
+     * @param end The end colour.
+     * @param endWeight The weight of the end colour, out of 256.
+     * @return The blended colour.
+     */
+    private static int blendPacked(int start, int end, int endWeight) {
+        int startWeight = BLEND_ONE - endWeight;
+        int rounding = 0x00800080;
+
+        // each lane is at most 255 * 256 + 128, so the sums stay in their lanes
+        int low = (((start & LOW_BYTES) * startWeight + (end & LOW_BYTES) * endWeight + rounding) >>> 8) & LOW_BYTES;
+        int high = (((start >>> 8) & LOW_BYTES) * startWeight + ((end >>> 8) & LOW_BYTES) * endWeight + rounding)
+                   & ~LOW_BYTES;
+
+        return low | high;
+    }
+
+    /**
+     * Blends two colours, one channel at a time.
+     * @param start The start colour.
+     * @param end The end colour.
+     * @param endWeight The weight of the end colour, out of 256.
+     * @return The blended colour.
+     */
+    private static int blendScalar(int start, int end, int endWeight) {
+        int color = 0;
+
+        for (int shift = 0; shift < 32; shift += 8) {
+            int channel = (((start >>> shift) & 0xff) * (BLEND_ONE - endWeight) + ((end >>> shift) & 0xff) * endWeight
+                           + 128) >> 8;
+            color |= channel << shift;
+        }
+
+        return color;
+    }
+
+    /**
+     * @return For each sub-pixel fraction, the weights of the pixels at and after the point, out of ONE.
+     */
+    private static int[][] createBilinearWeights() {
+        int[][] weights = new int[ONE][];
+
+        for (int fraction = 0; fraction < ONE; fraction++)
+            weights[fraction] = new int[]{ ONE - fraction, fraction };
+
+        return weights;
+    }
+
+    /**
+     * @return For each pair of sub-pixel fractions, the weights of the four pixels around the point, the
+     *         products of their column and row weights; the sum they give is the one the per-channel kernel
+     *         gets by interpolating across and then down.
+     */
+    private static int[] createCornerWeights() {
+        int[] weights = new int[ONE * ONE * 4];
+
+        for (int fractionY = 0; fractionY < ONE; fractionY++) {
+            for (int fractionX = 0; fractionX < ONE; fractionX++) {
+                int index = ((fractionY << SUBPIXEL_BITS) | fractionX) << 2;
+                int[] weightsX = BILINEAR_WEIGHTS[fractionX], weightsY = BILINEAR_WEIGHTS[fractionY];
+
+                weights[index] = weightsX[0] * weightsY[0];
+                weights[index + 1] = weightsX[1] * weightsY[0];
+                weights[index + 2] = weightsX[0] * weightsY[1];
+                weights[index + 3] = weightsX[1] * weightsY[1];
+            }
+        }
+
+        return weights;
+    }
+
+    /**
+     * Works out the weights of the cubic with a = -0.5 for each sub-pixel fraction f = k / ONE. Scaled by
+     * 2 * ONE^3 they are whole numbers, so they are found exactly in integers and then rounded, with the
+     * rounding error given to the largest weight so every set adds up to exactly 1 << BICUBIC_BITS.
+     * @return For each sub-pixel fraction, the weights of the pixels one before, at, one after and two after
+     *         the point.
+     */
+    private static int[][] createBicubicWeights() {
+        int[][] weights = new int[ONE][];
+        int n = ONE, scale = 2 * n * n * n;
+
+        for (int k = 0; k < ONE; k++) {
+            int[] exact = {
+                    -k*k*k + 2*k*k*n - k*n*n,
+                    3*k*k*k - 5*k*k*n + 2*n*n*n,
+                    -3*k*k*k + 4*k*k*n + k*n*n,
+                    k*k*k - k*k*n
+            };
+
+            weights[k] = new int[4];
+            int sum = 0, largest = 0;
+
+            for (int i = 0; i < 4; i++) {
+                // rounded to nearest; >> rounds down for negative weights too
+                weights[k][i] = (exact[i] * (1 << BICUBIC_BITS) + scale / 2) >> Integer.numberOfTrailingZeros(scale);
+                sum += weights[k][i];
+
+                if (weights[k][i] > weights[k][largest])
+                    largest = i;
+            }
+
+            weights[k][largest] += (1 << BICUBIC_BITS) - sum;
+        }
+
+        return weights;
+    }
+
+    /**
+     * @param value A channel.
+     * @param max The most it can be.
+     * @return The channel clamped to 0..max.
+     */
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * File:       PlaybackCanvas.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Surface that morph previews are actively rendered to. Frames are drawn straight into a
+ *             BufferStrategy from the playback thread instead of going through Swing's repaint manager.
+ *
+ */
+
+import java.awt.*;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+
+public class PlaybackCanvas extends Canvas {
+    // the buffers frames are drawn to and flipped onto the screen
+    private BufferStrategy bufferStrategy;
+
+    /**
+     * Constructor for PlaybackCanvas.
+     * @param width Width of the canvas.
+     * @param height Height of the canvas.
+     */
+    public PlaybackCanvas(int width, int height) {
+        this.setBackground(Color.DARK_GRAY);
+        this.setPreferredSize(new Dimension(width, height));
+
+        // frames are drawn by the playback thread, never by AWT repaints
+        this.setIgnoreRepaint(true);
+    }
+
+    /**
+     * Creates the buffer strategy; must be called on the event dispatch thread once the canvas is displayable.
+     */
+    public void createBuffers() {
+        createBufferStrategy(2);
+        bufferStrategy = getBufferStrategy();
+    }
+
+    /**
+     * Draws a frame and shows it on the screen. Called from the playback thread.
+     * @param frame The frame to show; drawn scaled to fill the canvas.
+     */
+    public void showFrame(BufferedImage frame) {
+        if (bufferStrategy == null)
+            return;
+
+        // the contents of the buffers can be lost at any time, in which case the frame is drawn again
+        do {
+            do {
+                Graphics2D g2 = (Graphics2D) bufferStrategy.getDrawGraphics();
+
+                // frames can have transparent edges, so clear to the panel background first
+                g2.setColor(getBackground());
+                g2.fillRect(0, 0, getWidth(), getHeight());
+                g2.drawImage(frame, 0, 0, getWidth(), getHeight(), null);
+                g2.dispose();
+            } while (bufferStrategy.contentsRestored());
+
+            bufferStrategy.show();
+        } while (bufferStrategy.contentsLost());
+
+        // flush the frame to the screen now rather than whenever the window system gets to it
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Releases the buffers; called when playback is finished.
+     */
+    public void disposeBuffers() {
+        if (bufferStrategy != null) {
+            bufferStrategy.dispose();
+            bufferStrategy = null;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+/*
+ * File:       PngEncoder.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Encodes frames as PNG on several threads, for lossless export. The image is split into bands of
+ *             rows; each band is filtered and deflated on its own thread, with the data before it as the deflate
+ *             dictionary, and ended on a byte boundary so the compressed bands join into one zlib stream, as
+ *             pigz does. The checksum of the whole stream is combined from the checksums of the bands.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class PngEncoder {
+    // the bytes every PNG file starts with
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    // filtered bytes in a band; smaller bands compress slightly worse, larger ones leave threads idle
+    private static final int BAND_SIZE = 128 * 1024;
+
+    // the most data a deflate dictionary can hold
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    // modulus of the Adler-32 checksum zlib streams end with
+    private static final int ADLER_BASE = 65521;
+
+    // threads bands are encoded on, shared by every encode
+    private static ExecutorService encodePool;
+
+    /**
+     * Encodes an image as an 8 bit RGB PNG; alpha is dropped, as it is for JPEG frames.
+     * @param image The image to be encoded.
+     * @return The PNG file contents.
+     * @throws IOException If a band cannot be encoded.
+     */
+    public static byte[] encode(BufferedImage image) throws IOException {
+        final int width = image.getWidth();
+        final int height = image.getHeight();
+
+        // each row is a filter type byte and three bytes per pixel
+        final int rowSize = 1 + 3 * width;
+        final byte[] filtered = new byte[rowSize * height];
+
+        // bands of whole rows, at least one for each thread
+        int threads = ExportCoordinator.getEncodeThreads();
+        int rowsPerBand = Math.max(1, Math.min(BAND_SIZE / rowSize, (height + threads - 1) / threads));
+
+        ArrayList<int[]> bands = new ArrayList<>();
+        for (int first = 0; first < height; first += rowsPerBand)
+            bands.add(new int[]{first, Math.min(first + rowsPerBand, height)});
+
+        ExecutorService pool = getEncodePool();
+
+        // filter every band first, since each band's dictionary is the filtered data before it
+        ArrayList<Future<Void>> filters = new ArrayList<>();
+        for (final int[] band : bands) {
+            filters.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    filterRows(image, band[0], band[1], filtered);
+                    return null;
+                }
+            }));
+        }
+
+        for (Future<Void> filter : filters)
+            waitFor(filter);
+
+        ArrayList<Future<byte[]>> deflates = new ArrayList<>();
+        ArrayList<Future<Integer>> checksums = new ArrayList<>();
+        for (int i = 0; i < bands.size(); i++) {
+            final int start = bands.get(i)[0] * rowSize;
+            final int end = bands.get(i)[1] * rowSize;
+            final boolean last = i == bands.size() - 1;
+
+            deflates.add(pool.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return deflate(filtered, start, end, last);
+                }
+            }));
+
+            checksums.add(pool.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    Adler32 adler = new Adler32();
+                    adler.update(filtered, start, end - start);
+                    return (int) adler.getValue();
+                }
+            }));
+        }
+
+        // the zlib stream: a header, the bands, and the checksum of all of the data
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream(filtered.length / 2);
+        zlib.write(0x78);
+        zlib.write(0x9c);
+
+        int adler = 1;
+        for (int i = 0; i < bands.size(); i++) {
+            byte[] compressed = waitFor(deflates.get(i));
+            zlib.write(compressed, 0, compressed.length);
+
+            adler = combineAdler(adler, waitFor(checksums.get(i)),
+                                 (bands.get(i)[1] - bands.get(i)[0]) * (long) rowSize);
+        }
+
+        DataOutputStream trailer = new DataOutputStream(zlib);
+        trailer.writeInt(adler);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8);  // bits per channel
+        headerData.writeByte(2);  // RGB
+        headerData.writeByte(0);  // deflate
+        headerData.writeByte(0);  // adaptive filtering
+        headerData.writeByte(0);  // not interlaced
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(zlib.size() + 64);
+        png.write(SIGNATURE, 0, SIGNATURE.length);
+        writeChunk(png, "IHDR", header.toByteArray());
+        writeChunk(png, "IDAT", zlib.toByteArray());
+        writeChunk(png, "IEND", new byte[0]);
+
+        return png.toByteArray();
+    }
+
+    /**
+     * Filters rows of an image, choosing for each row the filter whose output has the smallest sum of absolute
+     * values, the usual guess at what compresses best.
+     * @param image The image.
+     * @param first The first row.
+     * @param end The row after the last.
+     * @param filtered Filtered rows of the whole image, written for these rows.
+     */
+    private static void filterRows(BufferedImage image, int first, int end, byte[] filtered) {
+        int width = image.getWidth();
+        int rowSize = 1 + 3 * width;
+
+        // the rows as RGB bytes; the row above the first is needed by the filters that look up
+        byte[] previous = new byte[3 * width];
+        byte[] current = new byte[3 * width];
+        int[] pixels = new int[width];
+
+        if (first > 0)
+            readRow(image, first - 1, pixels, previous);
+
+        byte[][] candidates = new byte[5][3 * width];
+
+        for (int y = first; y < end; y++) {
+            readRow(image, y, pixels, current);
+
+            int best = 0;
+            long bestSum = Long.MAX_VALUE;
+
+            for (int type = 0; type < 5; type++) {
+                byte[] candidate = candidates[type];
+                long sum = 0;
+
+                for (int i = 0; i < current.length; i++) {
+                    int left = i >= 3 ? current[i - 3] & 0xff : 0;
+                    int up = previous[i] & 0xff;
+                    int upLeft = i >= 3 ? previous[i - 3] & 0xff : 0;
+
+                    int predicted;
+                    if (type == 0)
+                        predicted = 0;
+                    else if (type == 1)
+                        predicted = left;
+                    else if (type == 2)
+                        predicted = up;
+                    else if (type == 3)
+                        predicted = (left + up) >> 1;
+                    else
+                        predicted = paeth(left, up, upLeft);
+
+                    byte value = (byte) (current[i] - predicted);
+                    candidate[i] = value;
+                    sum += Math.abs(value);
+                }
+
+                if (sum < bestSum) {
+                    best = type;
+                    bestSum = sum;
+                }
+            }
+
+            filtered[y * rowSize] = (byte) best;
+            System.arraycopy(candidates[best], 0, filtered, y * rowSize + 1, current.length);
+
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+    }
+
+    /**
+     * Reads a row of an image as RGB bytes.
+     * @param image The image.
+     * @param y The row.
+     * @param pixels Space for the row's pixels.
+     * @param row The row's bytes, written.
+     */
+    private static void readRow(BufferedImage image, int y, int[] pixels, byte[] row) {
+        image.getRGB(0, y, pixels.length, 1, pixels, 0, pixels.length);
+
+        for (int x = 0; x < pixels.length; x++) {
+            row[3 * x] = (byte) (pixels[x] >> 16);
+            row[3 * x + 1] = (byte) (pixels[x] >> 8);
+            row[3 * x + 2] = (byte) pixels[x];
+        }
+    }
+
+    /**
+     * @param left The byte to the left.
+     * @param up The byte above.
+     * @param upLeft The byte above and to the left.
+     * @return Whichever of the three is nearest left + up - upLeft, as the PNG Paeth filter defines.
+     */
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int leftDistance = Math.abs(estimate - left);
+        int upDistance = Math.abs(estimate - up);
+        int upLeftDistance = Math.abs(estimate - upLeft);
+
+        if (leftDistance <= upDistance && leftDistance <= upLeftDistance)
+            return left;
+        else if (upDistance <= upLeftDistance)
+            return up;
+        else
+            return upLeft;
+    }
+
+    /**
+     * Deflates a band of filtered data without a zlib header, using the data before it as the dictionary. Every
+     * band but the last ends with a sync flush, which ends on a byte boundary without ending the stream.
+     * @param data Filtered data of the whole image.
+     * @param start Start of the band.
+     * @param end End of the band.
+     * @param last Whether it is the last band.
+     * @return The compressed band.
+     */
+    private static byte[] deflate(byte[] data, int start, int end, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((end - start) / 2);
+        byte[] buffer = new byte[64 * 1024];
+
+        try {
+            if (start > 0) {
+                int dictionaryStart = Math.max(0, start - DICTIONARY_SIZE);
+                deflater.setDictionary(data, dictionaryStart, start - dictionaryStart);
+            }
+
+            deflater.setInput(data, start, end - start);
+
+            if (last) {
+                deflater.finish();
+
+                while (!deflater.finished()) {
+                    int length = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, length);
+                }
+            } else {
+                // a full buffer may mean more output is waiting
+                int length;
+                do {
+                    length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    compressed.write(buffer, 0, length);
+                } while (length == buffer.length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two pieces of data into the checksum of the two joined, the way zlib's
+     * adler32_combine does.
+     * @param first Checksum of the first piece.
+     * @param second Checksum of the second piece.
+     * @param secondLength Length of the second piece.
+     * @return Checksum of the joined data.
+     */
+    private static int combineAdler(int first, int second, long secondLength) {
+        long remainder = secondLength % ADLER_BASE;
+
+        long sum1 = first & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (second & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((first >>> 16) & 0xffff) + ((second >>> 16) & 0xffff) + ADLER_BASE - remainder;
+
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+
+        return (int) (sum1 | (sum2 << 16));
+    }
+
+    /**
+     * Writes a PNG chunk: its length, type, data and CRC.
+     * @param png The file being written.
+     * @param type The chunk type.
+     * @param data The chunk data.
+     * @throws IOException Never, for a byte array.
+     */
+    private static void writeChunk(ByteArrayOutputStream png, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+
+        DataOutputStream output = new DataOutputStream(png);
+        output.writeInt(data.length);
+        output.write(typeBytes);
+        output.write(data);
+        output.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * @return The threads bands are encoded on, started the first time they are needed.
+     */
+    private static synchronized ExecutorService getEncodePool() {
+        if (encodePool == null) {
+            encodePool = Executors.newFixedThreadPool(ExportCoordinator.getEncodeThreads(),
+                                                      new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "PNG Encode");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return encodePool;
+    }
+
+    /**
+     * Waits for a band to be encoded.
+     * @param future The task.
+     * @return Its result.
+     * @throws IOException If the task failed or the wait was interrupted.
+     */
+    private static <T> T waitFor(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding a PNG");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot encode a PNG: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
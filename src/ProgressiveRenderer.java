@@ -0,0 +1,219 @@
+/*
+ * File:       ProgressiveRenderer.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Renders preview frames coarse to fine while the user is interacting. Each request is answered
+ *             first with quarter and half scale nearest neighbour frames, which are far quicker to render, and
+ *             then, once no new request has arrived for a short time, with the full quality frame. Passes for
+ *             requests that have been superseded are skipped. When a request only differs from the last full
+ *             frame by a few moved control points, only the part of that frame the edit can change is rendered
+ *             again, which is quick enough to show the full quality frame right away.
+ *
+ */
+
+import javax.swing.*;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class ProgressiveRenderer {
+    /**
+     * Receives the frames; called on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * Called when a pass for the latest request has been rendered.
+         * @param renderer The progressive renderer.
+         * @param frame The frame; smaller than full size for the coarse passes.
+         * @param scale The scale the frame was rendered at.
+         */
+        void frameRendered(ProgressiveRenderer renderer, BufferedImage frame, double scale);
+    }
+
+    // scales of the coarse passes, rendered in order with nearest neighbour sampling
+    private static final double[] COARSE_SCALES = { 0.25, 0.5 };
+
+    private Listener listener;
+
+    // renders the passes one at a time in the order they were requested
+    private ExecutorService executor;
+
+    // starts the full quality pass once requests stop arriving
+    private Timer idleTimer;
+
+    // the latest request; passes for older requests are skipped
+    private volatile int generation;
+    private MorphRenderer latestRenderer;
+    private double latestT;
+
+    // whether the full quality pass has been queued for the latest request
+    private boolean refined;
+
+    // the last full quality frame and what rendered it, so the next one can be patched instead of rendered;
+    // only used on the render thread
+    private MorphRenderer lastRenderer;
+    private double lastT;
+    private BufferedImage lastFrame;
+
+    /**
+     * Constructor for ProgressiveRenderer.
+     * @param idleDelay Milliseconds without a new request before the full quality frame is rendered.
+     * @param listener Receives the frames.
+     */
+    public ProgressiveRenderer(int idleDelay, Listener listener) {
+        this.listener = listener;
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Progressive Render");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        idleTimer = new Timer(idleDelay, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refine();
+            }
+        });
+        idleTimer.setRepeats(false);
+    }
+
+    /**
+     * Requests the frame of a morph at t; must be called on the event dispatch thread. Coarse frames are
+     * rendered right away and the full frame once no new request has arrived for the idle delay.
+     * @param renderer Renders the morph.
+     * @param t t of the frame.
+     */
+    public void request(MorphRenderer renderer, double t) {
+        latestRenderer = renderer;
+        latestT = t;
+        refined = false;
+
+        final int requestGeneration = ++generation;
+        final MorphRenderer requestRenderer = renderer;
+        final double requestT = t;
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration != generation)
+                    return;
+
+                // a small edit is patched into the last full frame, which needs no coarse passes
+                BufferedImage frame = renderIncrementally(requestRenderer, requestT);
+                if (frame != null) {
+                    publish(frame, 1.0, requestGeneration);
+                    return;
+                }
+
+                for (double scale : COARSE_SCALES) {
+                    if (requestGeneration != generation)
+                        return;
+
+                    publish(requestRenderer.renderFrame(requestT, scale, MorphRenderer.QUALITY_FAST), scale,
+                            requestGeneration);
+                }
+            }
+        });
+
+        idleTimer.restart();
+    }
+
+    /**
+     * Renders the full quality frame for the latest request now instead of waiting for the idle delay, e.g.
+     * when the user has let go of a slider. Must be called on the event dispatch thread.
+     */
+    public void refine() {
+        idleTimer.stop();
+
+        if (latestRenderer != null && !refined) {
+            refined = true;
+
+            final int requestGeneration = generation;
+            final MorphRenderer requestRenderer = latestRenderer;
+            final double requestT = latestT;
+
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (requestGeneration != generation)
+                        return;
+
+                    BufferedImage frame = renderIncrementally(requestRenderer, requestT);
+                    if (frame == null) {
+                        frame = requestRenderer.renderFrame(requestT);
+                        remember(requestRenderer, requestT, frame);
+                    }
+
+                    publish(frame, 1.0, requestGeneration);
+                }
+            });
+        }
+    }
+
+    /**
+     * Skips every pass that has not been rendered yet; must be called on the event dispatch thread.
+     */
+    public void cancel() {
+        generation++;
+        idleTimer.stop();
+
+        latestRenderer = null;
+    }
+
+    /**
+     * Renders a full quality frame by patching the last one, if it is of the same t and the morph changed
+     * in only a small part of it. Called on the render thread.
+     * @param renderer Renders the morph.
+     * @param t t of the frame.
+     * @return The frame, or null if it has to be rendered in full.
+     */
+    private BufferedImage renderIncrementally(MorphRenderer renderer, double t) {
+        if (lastFrame == null || lastT != t)
+            return null;
+
+        Rectangle region = renderer.getChangedRegion(lastRenderer, t);
+        if (region == null)
+            return null;
+
+        BufferedImage frame = renderer.renderRegion(t, lastFrame, region);
+        remember(renderer, t, frame);
+
+        return frame;
+    }
+
+    /**
+     * Keeps a full quality frame to patch later. Called on the render thread.
+     * @param renderer The renderer of the frame.
+     * @param t t of the frame.
+     * @param frame The frame.
+     */
+    private void remember(MorphRenderer renderer, double t, BufferedImage frame) {
+        lastRenderer = renderer;
+        lastT = t;
+        lastFrame = frame;
+    }
+
+    /**
+     * Hands a frame to the listener on the event dispatch thread, unless a newer request has arrived by then.
+     * @param frame The frame.
+     * @param scale The scale the frame was rendered at.
+     * @param requestGeneration The request the frame belongs to.
+     */
+    private void publish(final BufferedImage frame, final double scale, final int requestGeneration) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (requestGeneration == generation)
+                    listener.frameRendered(ProgressiveRenderer.this, frame, scale);
+            }
+        });
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * File:       RenditionLadder.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Exports a morph at several sizes in one pass, e.g. full size, 1080p, 720p and a thumbnail, each
+ *             into its own subdirectory of the export directory. The geometry of each frame is computed once
+ *             and every rendition is rendered from it, sampled from the mip level of the images nearest its
+ *             size; the renditions of a frame are rendered and encoded at the same time on a pool of threads.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class RenditionLadder {
+    // height of the thumbnail rendition
+    private static final int THUMBNAIL_HEIGHT = 180;
+
+    // names of the renditions, which are also their subdirectories, and their heights; 0 for full size
+    private String[] names;
+    private int[] heights;
+
+    /**
+     * Constructor for RenditionLadder.
+     * @param names Names of the renditions.
+     * @param heights Heights of the renditions; 0 for full size.
+     */
+    private RenditionLadder(String[] names, int[] heights) {
+        this.names = names;
+        this.heights = heights;
+    }
+
+    /**
+     * Reads a list of renditions: "full", "thumbnail", or a height such as "720p", separated by commas.
+     * @param list The list, e.g. "full,1080p,720p,thumbnail".
+     * @return The ladder, or null if a rendition is not one of these.
+     */
+    public static RenditionLadder parse(String list) {
+        String[] names = list.split(",");
+        int[] heights = new int[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim().toLowerCase();
+
+            if (names[i].equals("full")) {
+                heights[i] = 0;
+            } else if (names[i].equals("thumbnail")) {
+                heights[i] = THUMBNAIL_HEIGHT;
+            } else {
+                try {
+                    if (!names[i].endsWith("p"))
+                        throw new NumberFormatException();
+
+                    heights[i] = Integer.parseInt(names[i].substring(0, names[i].length() - 1));
+
+                    if (heights[i] <= 0)
+                        throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    System.err.println("Unknown rendition: " + names[i]);
+                    return null;
+                }
+            }
+        }
+
+        return new RenditionLadder(names, heights);
+    }
+
+    /**
+     * Exports every frame of a morph at every rendition no larger than the frames.
+     * @param renderer Renders the frames of the morph.
+     * @param frameTimes t of each frame, in order.
+     * @param directory The export directory; each rendition is written to a subdirectory named after it.
+     * @param format The format of the frames; one of the FrameExporter formats.
+     * @return The exit status: 0 if every frame was written.
+     */
+    public int export(final MorphRenderer renderer, double[] frameTimes, File directory, final String format) {
+        // the scale and directory of each rendition that is not larger than the frames
+        ArrayList<Double> scales = new ArrayList<>();
+        ArrayList<File> directories = new ArrayList<>();
+
+        for (int i = 0; i < names.length; i++) {
+            double scale = heights[i] == 0 ? 1.0 : (double) heights[i] / renderer.getHeight();
+
+            if (scale > 1.0) {
+                System.err.println(names[i] + " is larger than the " + renderer.getWidth() + "x"
+                                   + renderer.getHeight() + " frames; skipped");
+                continue;
+            }
+
+            File renditionDirectory = new File(directory, names[i]);
+            if (!renditionDirectory.isDirectory() && !renditionDirectory.mkdirs()) {
+                System.err.println("Cannot create " + renditionDirectory);
+                return 1;
+            }
+
+            scales.add(scale);
+            directories.add(renditionDirectory);
+        }
+
+        ExecutorService renditionPool = Executors.newFixedThreadPool(Math.max(1, scales.size()),
+                                                                     new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Rendition");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            for (int imageNumber = 1; imageNumber <= frameTimes.length; imageNumber++) {
+                // the geometry is shared by every rendition of the frame
+                final MorphRenderer.Warp warp = renderer.getWarp(frameTimes[imageNumber - 1]);
+
+                ArrayList<Future<Void>> renditions = new ArrayList<>();
+                for (int i = 0; i < scales.size(); i++) {
+                    final double scale = scales.get(i);
+                    final File output = FrameExporter.getFrameFile(directories.get(i), imageNumber, format);
+
+                    renditions.add(renditionPool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            BufferedImage frame = renderer.renderWarp(warp, scale);
+                            byte[] encoded = format.equals(FrameExporter.FORMAT_PNG) ? PngEncoder.encode(frame)
+                                                                                       : JpegEncoder.encode(frame);
+
+                            FileUtils.writeAtomically(output, encoded);
+                            return null;
+                        }
+                    }));
+                }
+
+                for (Future<Void> rendition : renditions)
+                    rendition.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } catch (ExecutionException e) {
+            System.err.println("Export failed: " + e.getCause());
+            return 1;
+        } finally {
+            renditionPool.shutdownNow();
+        }
+
+        System.out.println("Exported " + frameTimes.length + " frames at " + scales.size() + " sizes to "
+                           + directory);
+        return 0;
+    }
+}
@@ -5,7 +5,13 @@ public class SettingsPanel extends JTabbedPane {
     // check boxes allowing user to specify whether to show or hide control points and lattice
     private JCheckBox showControlPoints, showLattice;
 
-    private JPanel morphSettingsPanel, imageSettingsPanel;
+    // check boxes for rendering all frames before a preview plays and compressing the stored frames
+    private JCheckBox prerenderFrames, compressFrames, dynamicResolution;
+
+    // check box for dithering exported GIFs
+    private JCheckBox gifDither;
+
+    private JPanel morphSettingsPanel, imageSettingsPanel, previewSettingsPanel, exportSettingsPanel;
 
     // labels for the combo boxes
     private JLabel primaryCPColor, highlightCPColor,
@@ -14,7 +20,9 @@ public class SettingsPanel extends JTabbedPane {
     // selectors for colors and the morph duration
     private JComboBox<String> primaryCPColorSelector, highlightCPColorSelector,
                               primaryLColorSelector,  highlightLColorSelector,
-                              latticeResolutionSelector, durationSelector;
+                              latticeResolutionSelector, durationSelector,
+                              playbackModeSelector, frameMemorySelector, frameCacheSelector, warpMapCacheSelector,
+                              exportFormatSelector, gifPaletteSelector;
 
     // colors the user can choose from
     private String[] colors = { "Orange", "Green", "Blue", "Red", "Yellow", "Black", "White" };
@@ -22,6 +30,24 @@ public class SettingsPanel extends JTabbedPane {
     // lattice resolutions
     private String[] resolutions = { "5x5", "10x10", "20x20" };
 
+    // ways a preview can be played; in the order of the MorphPlayer playback mode constants
+    private String[] playbackModes = { "Once", "Loop", "Ping-Pong", "Reverse" };
+
+    // amounts of memory that prerendered frames can be stored in
+    private String[] frameMemorySizes = { "128 MB", "256 MB", "512 MB", "1024 MB" };
+
+    // amounts of memory rendered frames can be cached in
+    private String[] frameCacheSizes = { "Off", "128 MB", "256 MB", "512 MB" };
+
+    // amounts of memory warp maps can be cached in
+    private String[] warpMapCacheSizes = { "Off", "256 MB", "512 MB", "1024 MB" };
+
+    // formats a morph can be exported in; in the order of the MorphController export format constants
+    private String[] exportFormats = { "JPEG Images", "MJPEG AVI", "Y4M Video", "Animated GIF", "PNG Images" };
+
+    // whether an exported GIF has a palette for each frame or one for all of them
+    private String[] gifPalettes = { "Per Frame", "Global" };
+
     // fonts used in the panel
     private Font sectionLabelFont = new Font(Font.SANS_SERIF, Font.BOLD, 16);
     private Font subSectionLabelFont = new Font(Font.SANS_SERIF, Font.PLAIN, 11);
@@ -65,6 +91,12 @@ public class SettingsPanel extends JTabbedPane {
         this.addTab("Morph", null, morphSettingsPanel, "Settings for the morph and lattice");
         this.addTab("Images", null, imageSettingsPanel, "Settings for the images");
 
+        setupPreviewSettingsPanels(listener);
+        this.addTab("Preview", null, previewSettingsPanel, "Settings for playing the morph preview");
+
+        setupExportSettingsPanels(listener);
+        this.addTab("Export", null, exportSettingsPanel, "Settings for exporting the morph");
+
         // morph sub-panel setup
         setupMorphPanel(listener);
     }
@@ -108,6 +140,56 @@ public class SettingsPanel extends JTabbedPane {
      */
     public JComboBox<String> getDurationSelector() { return durationSelector; }
 
+    /**
+     * @return playbackModeSelector JComboBox
+     */
+    public JComboBox<String> getPlaybackModeSelector() { return playbackModeSelector; }
+
+    /**
+     * @return frameMemorySelector JComboBox
+     */
+    public JComboBox<String> getFrameMemorySelector() { return frameMemorySelector; }
+
+    /**
+     * @return frameCacheSelector JComboBox
+     */
+    public JComboBox<String> getFrameCacheSelector() { return frameCacheSelector; }
+
+    /**
+     * @return warpMapCacheSelector JComboBox
+     */
+    public JComboBox<String> getWarpMapCacheSelector() { return warpMapCacheSelector; }
+
+    /**
+     * @return exportFormatSelector JComboBox
+     */
+    public JComboBox<String> getExportFormatSelector() { return exportFormatSelector; }
+
+    /**
+     * @return gifPaletteSelector JComboBox
+     */
+    public JComboBox<String> getGifPaletteSelector() { return gifPaletteSelector; }
+
+    /**
+     * @return gifDither JCheckBox
+     */
+    public JCheckBox getGifDither() { return gifDither; }
+
+    /**
+     * @return prerenderFrames JCheckBox
+     */
+    public JCheckBox getPrerenderFrames() { return prerenderFrames; }
+
+    /**
+     * @return compressFrames JCheckBox
+     */
+    public JCheckBox getCompressFrames() { return compressFrames; }
+
+    /**
+     * @return dynamicResolution JCheckBox
+     */
+    public JCheckBox getDynamicResolution() { return dynamicResolution; }
+
     /**
      * @return the morphSettingsPanel
      */
@@ -134,6 +216,18 @@ public class SettingsPanel extends JTabbedPane {
         imageSettingsPanel.setOpaque(true);
         imageSettingsPanel.setPreferredSize(new Dimension(width, height));
         imageSettingsPanel.setLayout(new GridLayout(7, 1, 0, 0));
+
+        previewSettingsPanel = new JPanel();
+        previewSettingsPanel.setBackground(Color.BLACK);
+        previewSettingsPanel.setOpaque(true);
+        previewSettingsPanel.setPreferredSize(new Dimension(width, height));
+        previewSettingsPanel.setLayout(new GridLayout(12, 1, 0, 0));
+
+        exportSettingsPanel = new JPanel();
+        exportSettingsPanel.setBackground(Color.BLACK);
+        exportSettingsPanel.setOpaque(true);
+        exportSettingsPanel.setPreferredSize(new Dimension(width, height));
+        exportSettingsPanel.setLayout(new GridLayout(11, 1, 0, 0));
     }
 
     /**
@@ -534,4 +628,235 @@ public class SettingsPanel extends JTabbedPane {
         imageSettingsPanel.add(brightnessPanel);
         imageSettingsPanel.add(brightnessLabelPanel);
     }
+
+    /**
+     * Settings for how the morph preview is played; part of previewSettingsPanel
+     * @param listener The MorphController that serves as the ActionListener
+     */
+    private void setupPreviewSettingsPanels(MorphController listener) {
+        JPanel titlePanel = new JPanel();
+        JLabel title = new JLabel("Playback");
+        JPanel playbackModePanel = new JPanel();
+        JPanel playbackModeLabelPanel = new JPanel();
+        JLabel playbackModeLabel = new JLabel("Play Preview");
+        JPanel prerenderPanel = new JPanel();
+        JPanel compressPanel = new JPanel();
+        JPanel dynamicResolutionPanel = new JPanel();
+        JPanel frameMemoryPanel = new JPanel();
+        JPanel frameMemoryLabelPanel = new JPanel();
+        JLabel frameMemoryLabel = new JLabel("Frame Memory");
+        JPanel frameCachePanel = new JPanel();
+        JPanel frameCacheLabelPanel = new JPanel();
+        JLabel frameCacheLabel = new JLabel("Frame Cache");
+        JPanel warpMapCachePanel = new JPanel();
+        JPanel warpMapCacheLabelPanel = new JPanel();
+        JLabel warpMapCacheLabel = new JLabel("Warp Map Cache");
+
+        titlePanel.setBackground(Color.BLACK);
+        titlePanel.setOpaque(true);
+
+        title.setForeground(Color.WHITE);
+        title.setFont(sectionLabelFont);
+
+        titlePanel.add(title);
+
+        // combo box for the playback mode
+        playbackModePanel.setBackground(Color.BLACK);
+        playbackModePanel.setOpaque(true);
+
+        playbackModeSelector = new JComboBox<>(playbackModes);
+        playbackModeSelector.setSelectedIndex(0);
+        playbackModeSelector.setPreferredSize(comboBoxDimension);
+        playbackModeSelector.setName("playbackMode");
+        playbackModeSelector.addActionListener(listener);
+        playbackModePanel.add(playbackModeSelector);
+
+        playbackModeLabelPanel.setBackground(Color.BLACK);
+        playbackModeLabelPanel.setOpaque(true);
+
+        playbackModeLabel.setForeground(Color.WHITE);
+        playbackModeLabel.setFont(subSectionLabelFont);
+        playbackModeLabelPanel.add(playbackModeLabel);
+
+        // check boxes for prerendering and compressing frames
+        prerenderPanel.setBackground(Color.BLACK);
+        prerenderPanel.setOpaque(true);
+
+        prerenderFrames = new JCheckBox("Prerender Frames");
+        prerenderFrames.setSelected(false);
+        prerenderFrames.setForeground(Color.WHITE);
+        prerenderFrames.setBackground(Color.BLACK);
+        prerenderFrames.addActionListener(listener);
+        prerenderFrames.setName("prerenderFrames");
+        prerenderPanel.add(prerenderFrames);
+
+        compressPanel.setBackground(Color.BLACK);
+        compressPanel.setOpaque(true);
+
+        compressFrames = new JCheckBox("Compress Frames");
+        compressFrames.setSelected(true);
+        compressFrames.setForeground(Color.WHITE);
+        compressFrames.setBackground(Color.BLACK);
+        compressFrames.addActionListener(listener);
+        compressFrames.setName("compressFrames");
+        compressPanel.add(compressFrames);
+
+        // check box for lowering the render scale when frames cannot be rendered at the frame rate
+        dynamicResolutionPanel.setBackground(Color.BLACK);
+        dynamicResolutionPanel.setOpaque(true);
+
+        dynamicResolution = new JCheckBox("Dynamic Resolution");
+        dynamicResolution.setSelected(true);
+        dynamicResolution.setForeground(Color.WHITE);
+        dynamicResolution.setBackground(Color.BLACK);
+        dynamicResolution.addActionListener(listener);
+        dynamicResolution.setName("dynamicResolution");
+        dynamicResolutionPanel.add(dynamicResolution);
+
+        // combo box for the memory prerendered frames are stored in; initialized to 256 MB
+        frameMemoryPanel.setBackground(Color.BLACK);
+        frameMemoryPanel.setOpaque(true);
+
+        frameMemorySelector = new JComboBox<>(frameMemorySizes);
+        frameMemorySelector.setSelectedIndex(1);
+        frameMemorySelector.setPreferredSize(comboBoxDimension);
+        frameMemorySelector.setName("frameMemory");
+        frameMemorySelector.addActionListener(listener);
+        frameMemoryPanel.add(frameMemorySelector);
+
+        frameMemoryLabelPanel.setBackground(Color.BLACK);
+        frameMemoryLabelPanel.setOpaque(true);
+
+        frameMemoryLabel.setForeground(Color.WHITE);
+        frameMemoryLabel.setFont(subSectionLabelFont);
+        frameMemoryLabelPanel.add(frameMemoryLabel);
+
+        // combo box for the memory rendered frames are cached in; initialized to 256 MB
+        frameCachePanel.setBackground(Color.BLACK);
+        frameCachePanel.setOpaque(true);
+
+        frameCacheSelector = new JComboBox<>(frameCacheSizes);
+        frameCacheSelector.setSelectedIndex(2);
+        frameCacheSelector.setPreferredSize(comboBoxDimension);
+        frameCacheSelector.setName("frameCache");
+        frameCacheSelector.addActionListener(listener);
+        frameCachePanel.add(frameCacheSelector);
+
+        frameCacheLabelPanel.setBackground(Color.BLACK);
+        frameCacheLabelPanel.setOpaque(true);
+
+        frameCacheLabel.setForeground(Color.WHITE);
+        frameCacheLabel.setFont(subSectionLabelFont);
+        frameCacheLabelPanel.add(frameCacheLabel);
+
+        // combo box for the memory warp maps are cached in; initialized to off
+        warpMapCachePanel.setBackground(Color.BLACK);
+        warpMapCachePanel.setOpaque(true);
+
+        warpMapCacheSelector = new JComboBox<>(warpMapCacheSizes);
+        warpMapCacheSelector.setSelectedIndex(0);
+        warpMapCacheSelector.setPreferredSize(comboBoxDimension);
+        warpMapCacheSelector.setName("warpMapCache");
+        warpMapCacheSelector.addActionListener(listener);
+        warpMapCachePanel.add(warpMapCacheSelector);
+
+        warpMapCacheLabelPanel.setBackground(Color.BLACK);
+        warpMapCacheLabelPanel.setOpaque(true);
+
+        warpMapCacheLabel.setForeground(Color.WHITE);
+        warpMapCacheLabel.setFont(subSectionLabelFont);
+        warpMapCacheLabelPanel.add(warpMapCacheLabel);
+
+        previewSettingsPanel.add(titlePanel);
+        previewSettingsPanel.add(playbackModePanel);
+        previewSettingsPanel.add(playbackModeLabelPanel);
+        previewSettingsPanel.add(prerenderPanel);
+        previewSettingsPanel.add(compressPanel);
+        previewSettingsPanel.add(dynamicResolutionPanel);
+        previewSettingsPanel.add(frameMemoryPanel);
+        previewSettingsPanel.add(frameMemoryLabelPanel);
+        previewSettingsPanel.add(frameCachePanel);
+        previewSettingsPanel.add(frameCacheLabelPanel);
+        previewSettingsPanel.add(warpMapCachePanel);
+        previewSettingsPanel.add(warpMapCacheLabelPanel);
+    }
+
+    /**
+     * Settings for how the morph is exported; part of exportSettingsPanel
+     * @param listener The MorphController that serves as the ActionListener
+     */
+    private void setupExportSettingsPanels(MorphController listener) {
+        JPanel titlePanel = new JPanel();
+        JLabel title = new JLabel("Export");
+        JPanel exportFormatPanel = new JPanel();
+        JPanel exportFormatLabelPanel = new JPanel();
+        JLabel exportFormatLabel = new JLabel("Export Format");
+        JPanel gifPalettePanel = new JPanel();
+        JPanel gifPaletteLabelPanel = new JPanel();
+        JLabel gifPaletteLabel = new JLabel("GIF Palette");
+        JPanel gifDitherPanel = new JPanel();
+
+        titlePanel.setBackground(Color.BLACK);
+        titlePanel.setOpaque(true);
+
+        title.setForeground(Color.WHITE);
+        title.setFont(sectionLabelFont);
+
+        titlePanel.add(title);
+
+        // combo box for the export format; initialized to a series of JPEG images
+        exportFormatPanel.setBackground(Color.BLACK);
+        exportFormatPanel.setOpaque(true);
+
+        exportFormatSelector = new JComboBox<>(exportFormats);
+        exportFormatSelector.setSelectedIndex(0);
+        exportFormatSelector.setPreferredSize(comboBoxDimension);
+        exportFormatSelector.setName("exportFormat");
+        exportFormatSelector.addActionListener(listener);
+        exportFormatPanel.add(exportFormatSelector);
+
+        exportFormatLabelPanel.setBackground(Color.BLACK);
+        exportFormatLabelPanel.setOpaque(true);
+
+        exportFormatLabel.setForeground(Color.WHITE);
+        exportFormatLabel.setFont(subSectionLabelFont);
+        exportFormatLabelPanel.add(exportFormatLabel);
+
+        // combo box for the palette of an animated GIF; initialized to a palette for each frame
+        gifPalettePanel.setBackground(Color.BLACK);
+        gifPalettePanel.setOpaque(true);
+
+        gifPaletteSelector = new JComboBox<>(gifPalettes);
+        gifPaletteSelector.setSelectedIndex(0);
+        gifPaletteSelector.setPreferredSize(comboBoxDimension);
+        gifPaletteSelector.setName("gifPalette");
+        gifPaletteSelector.addActionListener(listener);
+        gifPalettePanel.add(gifPaletteSelector);
+
+        gifPaletteLabelPanel.setBackground(Color.BLACK);
+        gifPaletteLabelPanel.setOpaque(true);
+
+        gifPaletteLabel.setForeground(Color.WHITE);
+        gifPaletteLabel.setFont(subSectionLabelFont);
+        gifPaletteLabelPanel.add(gifPaletteLabel);
+
+        // check box for dithering an animated GIF
+        gifDitherPanel.setBackground(Color.BLACK);
+        gifDitherPanel.setOpaque(true);
+
+        gifDither = new JCheckBox("Dither GIF");
+        gifDither.setSelected(true);
+        gifDither.setForeground(Color.WHITE);
+        gifDither.setBackground(Color.BLACK);
+        gifDither.addActionListener(listener);
+        gifDither.setName("gifDither");
+        gifDitherPanel.add(gifDither);
+
+        exportSettingsPanel.add(titlePanel);
+        exportSettingsPanel.add(exportFormatPanel);
+        exportSettingsPanel.add(exportFormatLabelPanel);
+        exportSettingsPanel.add(gifPalettePanel);
+        exportSettingsPanel.add(gifPaletteLabelPanel);
+        exportSettingsPanel.add(gifDitherPanel);
+    }
 }
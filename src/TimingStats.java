@@ -0,0 +1,52 @@
+/*
+ * File:       TimingStats.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Keeps running statistics for a repeated timing measurement, such as drag-to-paint latency.
+ *
+ */
+
+public class TimingStats {
+    // number of samples recorded
+    private long count;
+
+    // total and largest sample in nanoseconds
+    private long totalNanos, maxNanos;
+
+    /**
+     * Records a single sample.
+     * @param nanos The measured time in nanoseconds.
+     */
+    public synchronized void record(long nanos) {
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Clears all recorded samples.
+     */
+    public synchronized void reset() {
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+    }
+
+    /**
+     * @return the average of all samples in milliseconds
+     */
+    public synchronized double getAverageMillis() { return count == 0 ? 0 : totalNanos / 1e6 / count; }
+
+    /**
+     * @return the largest sample in milliseconds
+     */
+    public synchronized double getMaxMillis() { return maxNanos / 1e6; }
+
+    /**
+     * @return Summary of the statistics, e.g. "avg 4.2 ms, max 9.1 ms (120 samples)"
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("avg %.1f ms, max %.1f ms (%d samples)", getAverageMillis(), getMaxMillis(), count);
+    }
+}
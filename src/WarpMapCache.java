@@ -0,0 +1,49 @@
+/*
+ * File:       WarpMapCache.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Keeps the warp maps of frames in memory. A warp map depends only on the lattices, the frame size,
+ *             and t, so it is shared by every renderer of the same lattices: after a brightness change, or with
+ *             other images, frames are rendered from it by just gathering and blending pixels. Maps are evicted
+ *             least recently used first once the cache holds more than its byte budget.
+ *
+ */
+
+public class WarpMapCache extends ByteBudgetCache<MorphRenderer.WarpMap> {
+    /**
+     * Constructor for WarpMapCache.
+     * @param budget The most bytes of maps the cache holds.
+     */
+    public WarpMapCache(long budget) {
+        super("warp maps", budget);
+    }
+
+    /**
+     * Builds the key a map is cached under.
+     * @param latticeFingerprint Fingerprint of the lattices and frame size; see MorphRenderer.
+     * @param t t of the frame.
+     * @return The key.
+     */
+    public static String getKey(String latticeFingerprint, double t) {
+        return FrameCache.getKey(latticeFingerprint, t);
+    }
+
+    /**
+     * Gets a cached map. Maps are shared and never changed once made.
+     * @param key The key of the map.
+     * @return The map, or null if it is not cached.
+     */
+    @Override
+    public MorphRenderer.WarpMap get(String key) {
+        return super.get(key);
+    }
+
+    /**
+     * @param map A warp map.
+     * @return The bytes the map's arrays take.
+     */
+    @Override
+    protected long sizeOf(MorphRenderer.WarpMap map) {
+        return map.getSize();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * File:       Y4mFrameSink.java
+ * Author:     Taylor Ecton
+ *
+ * Purpose:    Writes frames as raw YUV4MPEG2 video, the uncompressed format video encoders read from a pipe. Each
+ *             frame is converted to 4:2:0 Y'CbCr with BT.601 studio range and written as soon as it arrives;
+ *             the format has no index, so it can be written to standard output as well as to a file.
+ *
+ */
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+public class Y4mFrameSink implements FrameSink {
+    // bytes gathered before they are written out; about one 600 * 400 frame
+    private static final int BUFFER_SIZE = 512 * 1024;
+
+    private ChannelOutput output;
+
+    // size of the frames, and of the subsampled chroma planes
+    private int width, height, chromaWidth, chromaHeight;
+
+    // the planes of a frame, reused for every frame: Y, then Cb, then Cr
+    private byte[] planes;
+
+    /**
+     * Constructor for Y4mFrameSink writing to a file.
+     * @param file The file to write; replaced if it exists.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param frameRate Frames per second.
+     * @throws IOException If the file cannot be created.
+     */
+    public Y4mFrameSink(File file, int width, int height, int frameRate) throws IOException {
+        this(FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE),
+             width, height, frameRate);
+    }
+
+    /**
+     * Constructor for Y4mFrameSink writing to a channel, e.g. standard output.
+     * @param channel The channel to write to; closed with the sink.
+     * @param width Width of the frames.
+     * @param height Height of the frames.
+     * @param frameRate Frames per second.
+     * @throws IOException If the channel cannot be written.
+     */
+    public Y4mFrameSink(WritableByteChannel channel, int width, int height, int frameRate) throws IOException {
+        this.width = width;
+        this.height = height;
+
+        // odd sizes round the chroma planes up
+        chromaWidth = (width + 1) / 2;
+        chromaHeight = (height + 1) / 2;
+
+        planes = new byte[width * height + 2 * chromaWidth * chromaHeight];
+
+        output = new ChannelOutput(channel, BUFFER_SIZE);
+        output.writeAscii("YUV4MPEG2 W" + width + " H" + height + " F" + frameRate + ":1 Ip A1:1 C420jpeg\n");
+    }
+
+    /**
+     * Converts a frame to Y'CbCr and writes it.
+     * @param frame The frame.
+     * @throws IOException If the frame cannot be written.
+     */
+    @Override
+    public void writeFrame(BufferedImage frame) throws IOException {
+        if (frame.getWidth() != width || frame.getHeight() != height)
+            throw new IOException("Frame is " + frame.getWidth() + "x" + frame.getHeight() + ", not "
+                                  + width + "x" + height);
+
+        int cbOffset = width * height;
+        int crOffset = cbOffset + chromaWidth * chromaHeight;
+
+        // two rows at a time, since each chroma sample covers a 2x2 block
+        int[] rows = new int[2 * width];
+
+        for (int y = 0; y < height; y += 2) {
+            int rowCount = Math.min(2, height - y);
+            frame.getRGB(0, y, width, rowCount, rows, 0, width);
+
+            // a missing last row repeats the one above it
+            if (rowCount == 1)
+                System.arraycopy(rows, 0, rows, width, width);
+
+            for (int row = 0; row < rowCount; row++)
+                for (int x = 0; x < width; x++)
+                    planes[(y + row) * width + x] = (byte) luma(rows[row * width + x]);
+
+            for (int cx = 0; cx < chromaWidth; cx++) {
+                int x0 = 2 * cx;
+                int x1 = Math.min(x0 + 1, width - 1);
+
+                int p0 = rows[x0], p1 = rows[x1], p2 = rows[width + x0], p3 = rows[width + x1];
+
+                // average the block, rounding
+                int r = (((p0 >> 16) & 0xff) + ((p1 >> 16) & 0xff) + ((p2 >> 16) & 0xff) + ((p3 >> 16) & 0xff) + 2) >> 2;
+                int g = (((p0 >> 8) & 0xff) + ((p1 >> 8) & 0xff) + ((p2 >> 8) & 0xff) + ((p3 >> 8) & 0xff) + 2) >> 2;
+                int b = ((p0 & 0xff) + (p1 & 0xff) + (p2 & 0xff) + (p3 & 0xff) + 2) >> 2;
+
+                int chromaIndex = (y / 2) * chromaWidth + cx;
+                planes[cbOffset + chromaIndex] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+                planes[crOffset + chromaIndex] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+            }
+        }
+
+        output.writeAscii("FRAME\n");
+        output.write(planes, 0, planes.length);
+    }
+
+    /**
+     * Flushes and closes the output.
+     * @throws IOException If the output cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        output.close();
+    }
+
+    /**
+     * @param pixel An RGB pixel.
+     * @return Its BT.601 studio range luma.
+     */
+    private static int luma(int pixel) {
+        int r = (pixel >> 16) & 0xff;
+        int g = (pixel >> 8) & 0xff;
+        int b = pixel & 0xff;
+
+        return ((66 * r + 129 * g + 25 * b + 128) >> 8) + 16;
+    }
+}